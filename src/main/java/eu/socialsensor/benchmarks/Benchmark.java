@@ -1,5 +1,11 @@
 package eu.socialsensor.benchmarks;
 
+import java.util.List;
+import java.util.SortedMap;
+
+import eu.socialsensor.main.GraphDatabaseType;
+import eu.socialsensor.utils.FlightRecording;
+
 /**
  * Represents the benchmarks
  * 
@@ -14,4 +20,14 @@ public interface Benchmark
      */
     public void startBenchmark();
 
+    /**
+     * @return the raw samples in milliseconds recorded by the benchmark, by database and operation
+     */
+    public SortedMap<GraphDatabaseType, SortedMap<String, List<Double>>> getSamples();
+
+    /**
+     * @return the summaries of the flight recordings made by the benchmark
+     */
+    public List<FlightRecording.Summary> getProfiles();
+
 }
@@ -1,6 +1,10 @@
 package eu.socialsensor.benchmarks;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -8,6 +12,7 @@ import org.apache.logging.log4j.Logger;
 import eu.socialsensor.main.BenchmarkConfiguration;
 import eu.socialsensor.main.BenchmarkType;
 import eu.socialsensor.main.GraphDatabaseType;
+import eu.socialsensor.utils.FlightRecording;
 import eu.socialsensor.utils.Utils;
 
 /**
@@ -21,6 +26,9 @@ public abstract class BenchmarkBase implements Benchmark
     protected final BenchmarkConfiguration bench;
     protected final File outputFile;
     protected final BenchmarkType type;
+    private final SortedMap<GraphDatabaseType, SortedMap<String, List<Double>>> samples =
+        new TreeMap<GraphDatabaseType, SortedMap<String, List<Double>>>();
+    private final List<FlightRecording.Summary> profiles = new ArrayList<FlightRecording.Summary>();
 
     protected BenchmarkBase(BenchmarkConfiguration bench, BenchmarkType type)
     {
@@ -37,6 +45,38 @@ public abstract class BenchmarkBase implements Benchmark
 
     public abstract void startBenchmarkInternal();
 
+    @Override
+    public SortedMap<GraphDatabaseType, SortedMap<String, List<Double>>> getSamples()
+    {
+        return samples;
+    }
+
+    @Override
+    public List<FlightRecording.Summary> getProfiles()
+    {
+        return profiles;
+    }
+
+    protected final void recordProfile(FlightRecording.Summary profile)
+    {
+        profiles.add(profile);
+    }
+
+    /**
+     * Records raw samples for the results document of the run.
+     *
+     * @param samplesMs
+     *            samples in milliseconds
+     */
+    protected final void recordSamples(GraphDatabaseType dbType, String operation, List<Double> samplesMs)
+    {
+        if (!samples.containsKey(dbType))
+        {
+            samples.put(dbType, new TreeMap<String, List<Double>>());
+        }
+        samples.get(dbType).put(operation, new ArrayList<Double>(samplesMs));
+    }
+
     protected final void createDatabases()
     {
         for (GraphDatabaseType type : bench.getSelectedDatabases())
@@ -1,10 +1,11 @@
 package eu.socialsensor.benchmarks;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
@@ -16,8 +17,10 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.cache.CacheStats;
 
 import eu.socialsensor.clustering.LouvainMethod;
+import eu.socialsensor.dataset.Communities;
 import eu.socialsensor.graphdatabases.GraphDatabase;
 import eu.socialsensor.main.BenchmarkConfiguration;
 import eu.socialsensor.main.BenchmarkType;
@@ -35,6 +38,9 @@ import eu.socialsensor.utils.Utils;
 public class ClusteringBenchmark extends BenchmarkBase implements RequiresGraphData
 {
     private static final Logger LOG = LogManager.getLogger();
+    private static final String CACHE_STATS_FILE_NAME = "ClusteringCacheStats.csv";
+    // one operation per cache percentage in the results document, like cache-25
+    public static final String CACHE_OPERATION_PREFIX = "cache-";
     private final List<Integer> cachePercentages;
 
     public ClusteringBenchmark(BenchmarkConfiguration config)
@@ -48,11 +54,20 @@ public class ClusteringBenchmark extends BenchmarkBase implements RequiresGraphD
     {
         LOG.info("Executing Clustering Benchmark . . . .");
         SortedMap<GraphDatabaseType, Map<Integer, Double>> typeTimesMap = new TreeMap<GraphDatabaseType, Map<Integer, Double>>();
+        SortedMap<GraphDatabaseType, SortedMap<Integer, SortedMap<String, CacheStats>>> typeCacheStatsMap =
+            new TreeMap<GraphDatabaseType, SortedMap<Integer, SortedMap<String, CacheStats>>>();
+        // parsed once and shared by all databases and cache sizes so that parsing is not part of any iteration
+        final Communities actualCommunities = new Communities(bench.getActualCommunitiesFile());
+        LOG.info(String.format("Read %d actual communities of %d nodes%s", actualCommunities.getNumberOfCommunities(),
+            actualCommunities.getNumberOfNodes(), actualCommunities.isOverlapping() ? ", overlapping" : ""));
         try
         {
             for (GraphDatabaseType type : bench.getSelectedDatabases())
             {
-                typeTimesMap.put(type, clusteringBenchmark(type));
+                final SortedMap<Integer, SortedMap<String, CacheStats>> cacheStatsMap =
+                    new TreeMap<Integer, SortedMap<String, CacheStats>>();
+                typeTimesMap.put(type, clusteringBenchmark(type, actualCommunities, cacheStatsMap));
+                typeCacheStatsMap.put(type, cacheStatsMap);
             }
         }
         catch (ExecutionException e)
@@ -76,10 +91,36 @@ public class ClusteringBenchmark extends BenchmarkBase implements RequiresGraphD
         {
             throw new BenchmarkingException("Unable to write clustering results to file");
         }
+
+        final File cacheStatsFile = new File(bench.getResultsPath(), CACHE_STATS_FILE_NAME);
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(cacheStatsFile)))
+        {
+            out.write("DB,Cache Size (measured in nodes),Cache,Hit Rate,Miss Count,Average Load Penalty (ms),"
+                + "Eviction Count\n");
+            for (GraphDatabaseType type : bench.getSelectedDatabases())
+            {
+                for (Map.Entry<Integer, SortedMap<String, CacheStats>> perCacheSize : typeCacheStatsMap.get(type)
+                    .entrySet())
+                {
+                    for (Map.Entry<String, CacheStats> cache : perCacheSize.getValue().entrySet())
+                    {
+                        final CacheStats stats = cache.getValue();
+                        out.write(String.format("%s,%d,%s,%f,%d,%f,%d\n", type.getShortname(), perCacheSize.getKey(),
+                            cache.getKey(), stats.hitRate(), stats.missCount(), stats.averageLoadPenalty() / 1000000.0,
+                            stats.evictionCount()));
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("Unable to write clustering cache statistics to file");
+        }
         LOG.info("Clustering Benchmark finished");
     }
 
-    private SortedMap<Integer, Double> clusteringBenchmark(GraphDatabaseType type) throws ExecutionException
+    private SortedMap<Integer, Double> clusteringBenchmark(GraphDatabaseType type, Communities actualCommunities,
+        SortedMap<Integer, SortedMap<String, CacheStats>> cacheStatsMap) throws ExecutionException
     {
         GraphDatabase<?,?,?,?> graphDatabase = Utils.createDatabaseInstance(bench, type, false /*batchLoading*/);
 
@@ -90,41 +131,35 @@ public class ClusteringBenchmark extends BenchmarkBase implements RequiresGraphD
                 + ", Cache Size: " + cachePercentage);
 
             Stopwatch watch = Stopwatch.createStarted();
-            LouvainMethod louvainMethodCache = new LouvainMethod(graphDatabase, cachePercentage,
-                    bench.randomizedClustering() ? bench.getRandom() : null);
-            louvainMethodCache.computeModularity();
-            timeMap.put(cachePercentage, watch.elapsed(TimeUnit.MILLISECONDS) / 1000.0);
+            // closed before the next cache size so that its off-heap neighbour cache is freed first
+            try (LouvainMethod louvainMethodCache = new LouvainMethod(graphDatabase, cachePercentage,
+                    bench.randomizedClustering() ? bench.getRandom() : null))
+            {
+                louvainMethodCache.computeModularity();
+                final long elapsedMs = watch.elapsed(TimeUnit.MILLISECONDS);
+                timeMap.put(cachePercentage, elapsedMs / 1000.0);
+                recordSamples(type, CACHE_OPERATION_PREFIX + cachePercentage,
+                    Collections.singletonList((double) elapsedMs));
+                cacheStatsMap.put(cachePercentage, louvainMethodCache.getCacheStats());
 
-            // evaluation with NMI
-            Map<Integer, List<Integer>> predictedCommunities = graphDatabase.mapCommunities(louvainMethodCache.getNodeCount());
-            Map<Integer, List<Integer>> actualCommunities = mapNodesToCommunities(Utils.readTabulatedLines(
-                bench.getActualCommunitiesFile(), 4 /* numberOfLinesToSkip */));
-            Metrics metrics = new Metrics();
-            double NMI = metrics.normalizedMutualInformation(louvainMethodCache.getNodeCount(), actualCommunities,
-                predictedCommunities);
-            LOG.info("NMI value: " + NMI);
+                // evaluation with NMI
+                Map<Integer, List<Integer>> predictedCommunities =
+                    graphDatabase.mapCommunities(louvainMethodCache.getCommunityCount());
+                int[] predictedLabels = actualCommunities.labelsOf(predictedCommunities);
+                Metrics metrics = new Metrics();
+                double NMI = metrics.normalizedMutualInformation(actualCommunities.getLabels(), predictedLabels);
+                LOG.info("NMI value: " + NMI);
+                if (actualCommunities.isOverlapping())
+                {
+                    double overlappingNMI = metrics.overlappingNormalizedMutualInformation(
+                        louvainMethodCache.getNodeCount(), actualCommunities.getMembershipOffsets(),
+                        actualCommunities.getMemberships(), Communities.offsetsOf(predictedLabels),
+                        Communities.membershipsOf(predictedLabels));
+                    LOG.info("Overlapping NMI value: " + overlappingNMI);
+                }
+            }
         }
         graphDatabase.shutdown();
         return timeMap;
     }
-
-    private static Map<Integer, List<Integer>> mapNodesToCommunities(List<List<String>> tabulatedLines)
-    {
-        Map<Integer, List<Integer>> communities = new HashMap<Integer, List<Integer>>();
-        // http://figshare.com/articles/Synthetic_Data_for_graphdb_benchmark/1221760
-        // the format of the communityNNNN.dat files have node and community
-        // number separated by a tab.
-        // community number starts at 1 and not zero.
-        for (List<String> line : tabulatedLines)
-        {
-            int node = Integer.valueOf(line.get(0));
-            int community = Integer.valueOf(line.get(1).trim()) - 1;
-            if (!communities.containsKey(community))
-            {
-                communities.put(community, new ArrayList<Integer>());
-            }
-            communities.get(community).add(node);
-        }
-        return communities;
-    }
 }
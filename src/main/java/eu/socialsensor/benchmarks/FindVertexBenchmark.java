@@ -0,0 +1,127 @@
+package eu.socialsensor.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+
+import eu.socialsensor.dataset.DatasetFactory;
+import eu.socialsensor.graphdatabases.GraphDatabase;
+import eu.socialsensor.main.BenchmarkConfiguration;
+import eu.socialsensor.main.BenchmarkType;
+import eu.socialsensor.main.BenchmarkingException;
+import eu.socialsensor.main.GraphDatabaseType;
+import eu.socialsensor.utils.Utils;
+
+/**
+ * Looks up vertexes by node id at random, vertex-lookup.lookups of them at each number of threads in
+ * vertex-lookup.threads, to measure the cost of the node id index alone. Every database looks up the same node ids,
+ * and each number of threads opens the database afresh, so that none starts with the node ids of another cached.
+ * Besides the total lookup time of each database, without opening and shutting it down, writes the time, throughput
+ * and mean latency at each number of threads to FindVertexConcurrency.csv.
+ */
+public class FindVertexBenchmark extends PermutingBenchmarkBase implements RequiresGraphData
+{
+    private static final String CONCURRENCY_FILE_QUALIFIER = "Concurrency";
+    private static final String COUNTER_PREFIX = "vertexLookup.threads-";
+    private static final String COUNTER_SUFFIX = ".nanos";
+
+    // the node ids each thread looks up, by number of threads
+    private final SortedMap<Integer, int[][]> nodeIds = new TreeMap<Integer, int[][]>();
+
+    public FindVertexBenchmark(BenchmarkConfiguration config)
+    {
+        super(config, BenchmarkType.FIND_VERTEX);
+        final int[] nodes = DatasetFactory.getInstance().getDataset(bench.getDataset()).getNodeIds();
+        for (int threads : bench.getVertexLookupThreads())
+        {
+            final SplittableRandom random = new SplittableRandom(bench.getTrialsSeed() + threads);
+            final int[][] perThread = new int[threads][];
+            for (int thread = 0; thread < threads; thread++)
+            {
+                // spread the remainder over the first threads
+                perThread[thread] = new int[bench.getVertexLookups() / threads
+                    + (thread < bench.getVertexLookups() % threads ? 1 : 0)];
+                for (int i = 0; i < perThread[thread].length; i++)
+                {
+                    perThread[thread][i] = nodes[random.nextInt(nodes.length)];
+                }
+            }
+            nodeIds.put(threads, perThread);
+        }
+    }
+
+    @Override
+    public void benchmarkOne(GraphDatabaseType type, int scenarioNumber)
+    {
+        final Map<String, Long> counters = new TreeMap<String, Long>();
+        final Stopwatch total = Stopwatch.createUnstarted();
+        for (Map.Entry<Integer, int[][]> level : nodeIds.entrySet())
+        {
+            // a fresh instance per level, so that no level finds node ids cached by the levels before it
+            GraphDatabase<?,?,?,?> graphDatabase = Utils.createDatabaseInstance(bench, type, false /*batchLoading*/);
+            final long before = total.elapsed(TimeUnit.NANOSECONDS);
+            total.start();
+            graphDatabase.findVertices(level.getValue());
+            total.stop();
+            counters.put(COUNTER_PREFIX + level.getKey() + COUNTER_SUFFIX,
+                total.elapsed(TimeUnit.NANOSECONDS) - before);
+            graphDatabase.shutdown();
+        }
+        times.get(type).add((double) total.elapsed(TimeUnit.MILLISECONDS));
+        recordCounters(type, scenarioNumber, counters);
+    }
+
+    @Override
+    public void post()
+    {
+        super.post();
+        final File concurrencyFile = new File(bench.getResultsPath(),
+            type.getResultsFileName(CONCURRENCY_FILE_QUALIFIER));
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(concurrencyFile)))
+        {
+            out.write("DB,Scenario,Threads,Lookups,Time (ms),Lookups per Second,Mean Latency (us)\n");
+            for (GraphDatabaseType dbType : bench.getSelectedDatabases())
+            {
+                final SortedMap<Integer, List<Double>> levelTimes = new TreeMap<Integer, List<Double>>();
+                for (Map.Entry<Integer, SortedMap<String, Long>> scenario : getTelemetry(dbType).entrySet())
+                {
+                    for (int threads : nodeIds.keySet())
+                    {
+                        final Long nanos = scenario.getValue().get(COUNTER_PREFIX + threads + COUNTER_SUFFIX);
+                        if (nanos == null)
+                        {
+                            continue;
+                        }
+                        final int lookups = bench.getVertexLookups();
+                        out.write(String.format("%s,%d,%d,%d,%f,%f,%f\n", dbType.getShortname(),
+                            scenario.getKey(), threads, lookups, nanos / 1e6, lookups * 1e9 / nanos,
+                            nanos / 1e3 * threads / lookups));
+                        if (!levelTimes.containsKey(threads))
+                        {
+                            levelTimes.put(threads, new ArrayList<Double>());
+                        }
+                        levelTimes.get(threads).add(nanos / 1e6);
+                    }
+                }
+                for (Map.Entry<Integer, List<Double>> level : levelTimes.entrySet())
+                {
+                    recordSamples(dbType, "threads-" + level.getKey(), level.getValue());
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("unable to write vertex lookup results to " + concurrencyFile, e);
+        }
+    }
+}
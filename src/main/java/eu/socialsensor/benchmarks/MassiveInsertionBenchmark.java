@@ -8,6 +8,8 @@ import org.apache.logging.log4j.Logger;
 import com.google.common.base.Stopwatch;
 
 import eu.socialsensor.graphdatabases.GraphDatabase;
+import eu.socialsensor.insert.InsertionTimeSeries;
+import eu.socialsensor.insert.StorageFootprint;
 import eu.socialsensor.main.BenchmarkConfiguration;
 import eu.socialsensor.main.BenchmarkType;
 import eu.socialsensor.main.GraphDatabaseType;
@@ -29,6 +31,13 @@ public class MassiveInsertionBenchmark extends PermutingBenchmarkBase implements
         super(config, BenchmarkType.MASSIVE_INSERTION);
     }
 
+    @Override
+    public void post()
+    {
+        super.post();
+        writeStorageFootprint();
+    }
+
     @Override
     public void benchmarkOne(GraphDatabaseType type, int scenarioNumber)
     {
@@ -36,10 +45,28 @@ public class MassiveInsertionBenchmark extends PermutingBenchmarkBase implements
         GraphDatabase<?,?,?,?> graphDatabase = Utils.createDatabaseInstance(bench, type, true /*batchLoading*/);
         logger.debug("Prepare database instance for type {} for massive loading", type.getShortname());
         logger.debug("Massive load graph in database type {}", type.getShortname());
-        Stopwatch watch = Stopwatch.createStarted();
-        graphDatabase.massiveModeLoading(bench.getDataset());
-        logger.debug("Shutdown massive graph in database type {}", type.getShortname());
-        graphDatabase.shutdownMassiveGraph();
-        times.get(type).add((double) watch.elapsed(TimeUnit.MILLISECONDS));
+        final StorageFootprint footprint = newStorageFootprint(type, false /*single*/);
+        final InsertionTimeSeries timeSeries = newInsertionTimeSeries(type, scenarioNumber, false /*single*/);
+        try
+        {
+            Stopwatch watch = Stopwatch.createStarted();
+            graphDatabase.massiveModeLoading(bench.getDataset());
+            // measuring the storage directory is not part of the load
+            watch.stop();
+            footprint.loaded();
+            watch.start();
+            logger.debug("Shutdown massive graph in database type {}", type.getShortname());
+            graphDatabase.shutdownMassiveGraph();
+            times.get(type).add((double) watch.elapsed(TimeUnit.MILLISECONDS));
+        }
+        finally
+        {
+            if (timeSeries != null)
+            {
+                timeSeries.close();
+            }
+        }
+        footprint.shutDown();
+        recordCounters(type, scenarioNumber, footprint.getCounters());
     }
 }
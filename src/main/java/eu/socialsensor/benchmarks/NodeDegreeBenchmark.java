@@ -0,0 +1,131 @@
+package eu.socialsensor.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+
+import eu.socialsensor.dataset.DatasetFactory;
+import eu.socialsensor.graphdatabases.GraphDatabase;
+import eu.socialsensor.main.BenchmarkConfiguration;
+import eu.socialsensor.main.BenchmarkType;
+import eu.socialsensor.main.BenchmarkingException;
+import eu.socialsensor.main.GraphDatabaseType;
+import eu.socialsensor.utils.Utils;
+
+/**
+ * Gets the degree that clustering uses as the node weight of every node, once by the degree mechanism of the
+ * database and once by counting the edges one by one, after an untimed pass of each way that brings the vertexes and
+ * edges into the cache. The two ways take turns going first from one scenario to the next. Fails if they do not sum
+ * to the same total. Besides the total time of each database, writes the time of each way to NodeDegreeMethods.csv.
+ */
+public class NodeDegreeBenchmark extends PermutingBenchmarkBase implements RequiresGraphData
+{
+    private static final String METHODS_FILE_QUALIFIER = "Methods";
+    private static final String NATIVE = "native";
+    private static final String ITERATE = "iterate";
+    private static final String COUNTER_PREFIX = "degree.";
+    private static final String COUNTER_SUFFIX = ".nanos";
+
+    private final int[] nodeIds;
+
+    public NodeDegreeBenchmark(BenchmarkConfiguration config)
+    {
+        super(config, BenchmarkType.NODE_DEGREE);
+        nodeIds = DatasetFactory.getInstance().getDataset(bench.getDataset()).getNodeIds();
+    }
+
+    @Override
+    public void benchmarkOne(GraphDatabaseType type, int scenarioNumber)
+    {
+        GraphDatabase<?,?,?,?> graphDatabase = Utils.createDatabaseInstance(bench, type, false /*batchLoading*/);
+        final Map<String, Long> counters = new TreeMap<String, Long>();
+        Stopwatch total = Stopwatch.createStarted();
+        sumDegrees(graphDatabase, false /* iterate */);
+        sumDegrees(graphDatabase, true /* iterate */);
+
+        // whichever way runs second finds the caches as the first left them, so the ways take turns going first
+        final boolean iterateFirst = scenarioNumber % 2 == 0;
+        final long firstSum = timeSumDegrees(graphDatabase, iterateFirst, counters);
+        final long secondSum = timeSumDegrees(graphDatabase, !iterateFirst, counters);
+        final long nativeSum = iterateFirst ? secondSum : firstSum;
+        final long iteratedSum = iterateFirst ? firstSum : secondSum;
+        graphDatabase.shutdown();
+        times.get(type).add((double) total.elapsed(TimeUnit.MILLISECONDS));
+
+        if (nativeSum != iteratedSum)
+        {
+            throw new BenchmarkingException(String.format("%s native degrees sum to %d but iterated degrees to %d",
+                type.getShortname(), nativeSum, iteratedSum));
+        }
+        recordCounters(type, scenarioNumber, counters);
+    }
+
+    private long timeSumDegrees(GraphDatabase<?,?,?,?> graphDatabase, boolean iterate, Map<String, Long> counters)
+    {
+        final Stopwatch watch = Stopwatch.createStarted();
+        final long sum = sumDegrees(graphDatabase, iterate);
+        counters.put(COUNTER_PREFIX + (iterate ? ITERATE : NATIVE) + COUNTER_SUFFIX,
+            watch.elapsed(TimeUnit.NANOSECONDS));
+        return sum;
+    }
+
+    private long sumDegrees(GraphDatabase<?,?,?,?> graphDatabase, boolean iterate)
+    {
+        long sum = 0;
+        for (int nodeId : nodeIds)
+        {
+            sum += graphDatabase.getNodeDegree(nodeId, iterate);
+        }
+        return sum;
+    }
+
+    @Override
+    public void post()
+    {
+        super.post();
+        final File methodsFile = new File(bench.getResultsPath(), type.getResultsFileName(METHODS_FILE_QUALIFIER));
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(methodsFile)))
+        {
+            out.write("DB,Scenario,Method,Nodes,Time (ms),Mean Latency (us)\n");
+            for (GraphDatabaseType dbType : bench.getSelectedDatabases())
+            {
+                final Map<String, List<Double>> methodTimes = new TreeMap<String, List<Double>>();
+                for (Map.Entry<Integer, SortedMap<String, Long>> scenario : getTelemetry(dbType).entrySet())
+                {
+                    for (String method : new String[] { NATIVE, ITERATE })
+                    {
+                        final Long nanos = scenario.getValue().get(COUNTER_PREFIX + method + COUNTER_SUFFIX);
+                        if (nanos == null)
+                        {
+                            continue;
+                        }
+                        out.write(String.format("%s,%d,%s,%d,%f,%f\n", dbType.getShortname(), scenario.getKey(),
+                            method, nodeIds.length, nanos / 1e6, nanos / 1e3 / nodeIds.length));
+                        if (!methodTimes.containsKey(method))
+                        {
+                            methodTimes.put(method, new ArrayList<Double>());
+                        }
+                        methodTimes.get(method).add(nanos / 1e6);
+                    }
+                }
+                for (Map.Entry<String, List<Double>> method : methodTimes.entrySet())
+                {
+                    recordSamples(dbType, method.getKey(), method.getValue());
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("unable to write node degree results to " + methodsFile, e);
+        }
+    }
+}
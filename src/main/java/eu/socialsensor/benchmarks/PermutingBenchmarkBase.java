@@ -1,18 +1,43 @@
 package eu.socialsensor.benchmarks;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.collections4.iterators.PermutationIterator;
+import org.apache.commons.math3.util.MathArrays;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
+import eu.socialsensor.dataset.DatasetFactory;
+import eu.socialsensor.insert.InsertionTimeSeries;
+import eu.socialsensor.insert.StorageFootprint;
 import eu.socialsensor.main.BenchmarkConfiguration;
 import eu.socialsensor.main.BenchmarkType;
+import eu.socialsensor.main.BenchmarkingException;
+import eu.socialsensor.main.ForkedBenchmark;
 import eu.socialsensor.main.GraphDatabaseType;
+import eu.socialsensor.utils.FlightRecording;
+import eu.socialsensor.utils.JvmTelemetry;
+import eu.socialsensor.utils.SampleStatistics;
+import eu.socialsensor.utils.SampleStatistics.Interval;
 import eu.socialsensor.utils.Utils;
 
 /**
@@ -23,22 +48,51 @@ import eu.socialsensor.utils.Utils;
 public abstract class PermutingBenchmarkBase extends BenchmarkBase
 {
     protected final Map<GraphDatabaseType, List<Double>> times;
+    // JVM telemetry and other counters of each benchmarkOne, by database and scenario
+    private final Map<GraphDatabaseType, SortedMap<Integer, SortedMap<String, Long>>> telemetry;
+    // scenarios that ran, fewer than bench.getScenarios() when trials stop early
+    protected int scenariosRun;
+    // jfr.enabled, on a JVM that has the flight recorder API
+    private final boolean flightRecording;
     private static final Logger LOG = LogManager.getLogger();
+    private static final String STATISTICS_FILE_QUALIFIER = "Statistics";
+    private static final String COMPARISONS_FILE_QUALIFIER = "Comparisons";
+    private static final String JVM_FILE_QUALIFIER = "Jvm";
+    private static final String STORAGE_FILE_QUALIFIER = "Storage";
+    private static final String JFR_DIRECTORY = "jfr";
+    // JVM telemetry counters in milliseconds that go to the results document next to the times
+    private static final String[] JVM_TIME_COUNTERS = { JvmTelemetry.GC_TIME_MS, JvmTelemetry.SAFEPOINT_TIME_MS,
+        JvmTelemetry.JIT_TIME_MS };
+    // the samples of permuting benchmarks time the whole workload
+    public static final String TOTAL_OPERATION = "total";
+    // the JVM time counters of permuting benchmarks, like jvm.gc.timeMs
+    public static final String JVM_OPERATION_PREFIX = "jvm.";
 
     protected PermutingBenchmarkBase(BenchmarkConfiguration bench, BenchmarkType typeIn)
     {
         super(bench, typeIn);
+        flightRecording = bench.isFlightRecording() && FlightRecording.isAvailable();
+        if (bench.isFlightRecording() && !flightRecording)
+        {
+            LOG.warn("jfr.enabled is set but this JVM has no flight recorder API, so nothing will be recorded");
+        }
         times = new HashMap<GraphDatabaseType, List<Double>>();
+        telemetry = new HashMap<GraphDatabaseType, SortedMap<Integer, SortedMap<String, Long>>>();
         for (GraphDatabaseType type : bench.getSelectedDatabases())
         {
             times.put(type, new ArrayList<Double>(bench.getScenarios()));
+            telemetry.put(type, new TreeMap<Integer, SortedMap<String, Long>>());
         }
     }
 
     @Override
     public void startBenchmarkInternal()
     {
-        if (bench.permuteBenchmarks())
+        if (bench.getMaxTrials() > 0)
+        {
+            runTrials();
+        }
+        else if (bench.permuteBenchmarks())
         {
             PermutationIterator<GraphDatabaseType> iter = new PermutationIterator<GraphDatabaseType>(
                 bench.getSelectedDatabases());
@@ -49,28 +103,370 @@ public abstract class PermutingBenchmarkBase extends BenchmarkBase
                 startBenchmarkInternalOnePermutation(iter.next(), cntPermutations);
                 cntPermutations++;
             }
+            scenariosRun = cntPermutations - 1;
         }
         else
         {
             startBenchmarkInternalOnePermutation(bench.getSelectedDatabases(), 1);
+            scenariosRun = 1;
         }
 
         LOG.info(String.format("%s Benchmark Finished", type.longname()));
         post();
     }
 
+    /**
+     * Runs up to trials.max trials, each in a database order drawn from the trials seed. After trials.min trials,
+     * stops as soon as the confidence interval of the median of every database is narrower than
+     * trials.target-relative-ci-width relative to the median.
+     */
+    private void runTrials()
+    {
+        final Random orderRandom = new Random(bench.getTrialsSeed());
+        final List<GraphDatabaseType> order = new ArrayList<GraphDatabaseType>(bench.getSelectedDatabases());
+        for (int trial = 1; trial <= bench.getMaxTrials(); trial++)
+        {
+            Collections.shuffle(order, orderRandom);
+            LOG.info(String.format("Trial %d in order %s", trial, order));
+            startBenchmarkInternalOnePermutation(order, trial);
+            scenariosRun = trial;
+            if (trial >= bench.getMinTrials() && bench.getTargetRelativeCiWidth() > 0 && converged())
+            {
+                LOG.info(String.format("Confidence intervals narrower than %f after %d trials",
+                    bench.getTargetRelativeCiWidth(), trial));
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return true if every database has samples and a relatively narrow confidence interval for their median.
+     *         Benchmarks that only collect their times in post never converge.
+     */
+    private boolean converged()
+    {
+        final Random bootstrapRandom = new Random(bench.getTrialsSeed());
+        for (GraphDatabaseType dbType : bench.getSelectedDatabases())
+        {
+            final List<Double> samples = times.get(dbType);
+            if (samples.isEmpty())
+            {
+                return false;
+            }
+            final Interval median = SampleStatistics.bootstrapMedian(Utils.convert(samples),
+                bench.getBootstrapResamples(), bench.getTrialsConfidence(), bootstrapRandom);
+            if (!(median.relativeWidth() <= bench.getTargetRelativeCiWidth()))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void startBenchmarkInternalOnePermutation(Collection<GraphDatabaseType> types, int cntPermutations)
     {
+        if (bench.isForkDatabases())
+        {
+            forkOnePermutation(types, cntPermutations);
+            return;
+        }
         for (GraphDatabaseType type : types)
         {
-            benchmarkOne(type, cntPermutations);
+            benchmarkOneWithTelemetry(type, cntPermutations);
+        }
+    }
+
+    /**
+     * Runs benchmarkOne between two snapshots of the JVM counters and keeps their difference next to the counters
+     * benchmarkOne recorded. With jfr.enabled, also
+     * records it with the flight recorder to results-path/jfr/&lt;BENCHMARK&gt;-&lt;db&gt;-&lt;scenario&gt;.jfr.
+     */
+    public final void benchmarkOneWithTelemetry(GraphDatabaseType dbType, int scenarioNumber)
+    {
+        final FlightRecording recording = flightRecording ? new FlightRecording(recordingName(dbType,
+            scenarioNumber), bench.getFlightRecordingSettings()) : null;
+        try
+        {
+            final SortedMap<String, Long> start = JvmTelemetry.snapshot();
+            benchmarkOne(dbType, scenarioNumber);
+            recordCounters(dbType, scenarioNumber, JvmTelemetry.difference(start, JvmTelemetry.snapshot()));
+        }
+        finally
+        {
+            if (recording != null)
+            {
+                recording.stop(recordingFile(dbType, scenarioNumber));
+            }
+        }
+    }
+
+    private String recordingName(GraphDatabaseType dbType, int scenarioNumber)
+    {
+        return String.format("%s-%s-%d", type.name(), dbType.getShortname(), scenarioNumber);
+    }
+
+    private File recordingFile(GraphDatabaseType dbType, int scenarioNumber)
+    {
+        final File directory = new File(bench.getResultsPath(), JFR_DIRECTORY);
+        if (!directory.exists() && !directory.mkdirs())
+        {
+            throw new BenchmarkingException("unable to create flight recording directory " + directory);
+        }
+        return new File(directory, recordingName(dbType, scenarioNumber) + ".jfr");
+    }
+
+    /**
+     * Adds counters to those of the scenario, which are written with the JVM telemetry and passed back from forked
+     * databases.
+     */
+    protected void recordCounters(GraphDatabaseType dbType, int scenarioNumber, Map<String, Long> counters)
+    {
+        final SortedMap<Integer, SortedMap<String, Long>> scenarios = telemetry.get(dbType);
+        if (!scenarios.containsKey(scenarioNumber))
+        {
+            scenarios.put(scenarioNumber, new TreeMap<String, Long>());
+        }
+        scenarios.get(scenarioNumber).putAll(counters);
+    }
+
+    /**
+     * @return the JVM telemetry and other counters of each scenario the database ran in
+     */
+    public SortedMap<Integer, SortedMap<String, Long>> getTelemetry(GraphDatabaseType dbType)
+    {
+        return telemetry.get(dbType);
+    }
+
+    /**
+     * Runs each database of the permutation in a child JVM, up to fork.parallelism of them at a time. Each running
+     * child holds one of the cpu sets, if any are configured, so that concurrent children never share cpus.
+     */
+    private void forkOnePermutation(Collection<GraphDatabaseType> types, int cntPermutations)
+    {
+        final ForkedBenchmark forked = new ForkedBenchmark(bench);
+        final int parallelism = bench.getForkParallelism();
+        final BlockingQueue<String> cpuSets = new ArrayBlockingQueue<String>(parallelism);
+        for (int i = 0; i < parallelism; i++)
+        {
+            // an empty cpu set leaves the child unpinned
+            cpuSets.add(bench.getForkCpuSets().isEmpty() ? "" : bench.getForkCpuSets().get(i));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        final Map<GraphDatabaseType, Future<ForkedBenchmark.Result>> results =
+            new LinkedHashMap<GraphDatabaseType, Future<ForkedBenchmark.Result>>();
+        try
+        {
+            for (final GraphDatabaseType dbType : types)
+            {
+                results.put(dbType, executor.submit(() -> {
+                    final String cpuSet = cpuSets.take();
+                    try
+                    {
+                        return forked.run(type, dbType, cntPermutations, cpuSet.isEmpty() ? null : cpuSet);
+                    }
+                    finally
+                    {
+                        cpuSets.add(cpuSet);
+                    }
+                }));
+            }
+            for (Map.Entry<GraphDatabaseType, Future<ForkedBenchmark.Result>> result : results.entrySet())
+            {
+                times.get(result.getKey()).addAll(result.getValue().get().getTimes());
+                telemetry.get(result.getKey()).put(cntPermutations, result.getValue().get().getTelemetry());
+            }
+        }
+        catch (ExecutionException e)
+        {
+            throw new BenchmarkingException("forked " + type.longname() + " failed: " + e.getCause().getMessage(),
+                e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new BenchmarkingException("interrupted while waiting for forked " + type.longname(), e);
+        }
+        finally
+        {
+            executor.shutdownNow();
         }
     }
 
     public abstract void benchmarkOne(GraphDatabaseType type, int scenarioNumber);
 
+    /**
+     * @return a time series of the insertion into the database, written to
+     *         &lt;Benchmark&gt;TimeSeries.&lt;db&gt;.&lt;scenario&gt;.csv, or null when insertion time series are off
+     */
+    protected InsertionTimeSeries newInsertionTimeSeries(GraphDatabaseType dbType, int scenarioNumber, boolean single)
+    {
+        if (bench.getInsertionTimeSeriesIntervalMs() == 0 && bench.getInsertionTimeSeriesEdges() == 0)
+        {
+            return null;
+        }
+        final File csv = new File(bench.getResultsPath(), type.getResultsFileName(String.format("TimeSeries.%s.%d",
+            dbType.getShortname(), scenarioNumber)));
+        return new InsertionTimeSeries(dbType, single, csv, Utils.generateStorageDirectory(dbType,
+            bench.getDbStorageDirectory()), bench.getInsertionTimeSeriesIntervalMs(),
+            bench.getInsertionTimeSeriesEdges(), bench.getInsertionTimeSeriesStorageIntervalMs());
+    }
+
+    /**
+     * @return the storage footprint of a load into the database, for benchmarkOne to record with recordCounters
+     */
+    protected StorageFootprint newStorageFootprint(GraphDatabaseType dbType, boolean single)
+    {
+        return new StorageFootprint(dbType, single, Utils.generateStorageDirectory(dbType,
+            bench.getDbStorageDirectory()));
+    }
+
+    /**
+     * Writes the storage footprint of the loads into each database to &lt;Benchmark&gt;Storage.csv.
+     */
+    protected void writeStorageFootprint()
+    {
+        StorageFootprint.write(new File(bench.getResultsPath(), type.getResultsFileName(STORAGE_FILE_QUALIFIER)),
+            telemetry, bench.getSelectedDatabases(), DatasetFactory.sizeOf(bench.getDataset()));
+    }
+
+    /**
+     * @return the times recorded for the database so far, one per scenario or per query depending on the benchmark
+     */
+    public List<Double> getTimes(GraphDatabaseType dbType)
+    {
+        return times.get(dbType);
+    }
+
     public void post()
     {
         Utils.writeResults(outputFile, times, type.longname());
+        for (GraphDatabaseType dbType : bench.getSelectedDatabases())
+        {
+            recordSamples(dbType, TOTAL_OPERATION, times.get(dbType));
+            for (String counter : JVM_TIME_COUNTERS)
+            {
+                final List<Double> values = new ArrayList<Double>();
+                for (SortedMap<String, Long> scenario : telemetry.get(dbType).values())
+                {
+                    if (scenario.containsKey(counter))
+                    {
+                        values.add(scenario.get(counter).doubleValue());
+                    }
+                }
+                if (!values.isEmpty())
+                {
+                    recordSamples(dbType, JVM_OPERATION_PREFIX + counter, values);
+                }
+            }
+        }
+        writeTelemetry();
+        if (flightRecording)
+        {
+            // recordings of forked databases were made by the children, so summarize from the files
+            for (GraphDatabaseType dbType : bench.getSelectedDatabases())
+            {
+                for (int scenarioNumber : telemetry.get(dbType).keySet())
+                {
+                    recordProfile(FlightRecording.summarize(dbType, scenarioNumber, recordingFile(dbType,
+                        scenarioNumber), bench.getFlightRecordingTop()));
+                }
+            }
+        }
+        if (bench.getMaxTrials() > 0)
+        {
+            writeStatistics();
+        }
+    }
+
+    /**
+     * Writes every JVM telemetry and other counter of every database and scenario.
+     */
+    private void writeTelemetry()
+    {
+        final File jvmFile = new File(bench.getResultsPath(), type.getResultsFileName(JVM_FILE_QUALIFIER));
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(jvmFile)))
+        {
+            out.write("DB,Scenario,Counter,Value\n");
+            for (GraphDatabaseType dbType : bench.getSelectedDatabases())
+            {
+                for (Map.Entry<Integer, SortedMap<String, Long>> scenario : telemetry.get(dbType).entrySet())
+                {
+                    for (Map.Entry<String, Long> counter : scenario.getValue().entrySet())
+                    {
+                        out.write(String.format("%s,%d,%s,%d\n", dbType.getShortname(), scenario.getKey(),
+                            counter.getKey(), counter.getValue()));
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("unable to write JVM telemetry to " + jvmFile, e);
+        }
+    }
+
+    /**
+     * Writes the median of each database with its confidence interval and outlier count, and the relative
+     * difference of the median of each database from the median of every other database, which is significant when
+     * its confidence interval excludes zero.
+     */
+    private void writeStatistics()
+    {
+        final Random bootstrapRandom = new Random(bench.getTrialsSeed());
+        final Map<GraphDatabaseType, double[]> samples = new LinkedHashMap<GraphDatabaseType, double[]>();
+        for (GraphDatabaseType dbType : bench.getSelectedDatabases())
+        {
+            if (!times.get(dbType).isEmpty())
+            {
+                samples.put(dbType, MathArrays.scale(0.001, Utils.convert(times.get(dbType))));
+            }
+        }
+
+        final File statisticsFile = new File(bench.getResultsPath(), type.getResultsFileName(STATISTICS_FILE_QUALIFIER));
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(statisticsFile)))
+        {
+            out.write(String.format("DB,Trials,Sample Size,Outliers,%s Median (s),CI Lower (s),CI Upper (s)\n",
+                type.longname()));
+            for (Map.Entry<GraphDatabaseType, double[]> entry : samples.entrySet())
+            {
+                final Interval median = SampleStatistics.bootstrapMedian(entry.getValue(),
+                    bench.getBootstrapResamples(), bench.getTrialsConfidence(), bootstrapRandom);
+                out.write(String.format("%s,%d,%d,%d,%f,%f,%f\n", entry.getKey().getShortname(), scenariosRun,
+                    entry.getValue().length, SampleStatistics.countOutliers(entry.getValue(),
+                        bench.getOutlierIqrFactor()), median.getEstimate(), median.getLower(), median.getUpper()));
+            }
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("unable to write statistics to " + statisticsFile, e);
+        }
+
+        final File comparisonsFile = new File(bench.getResultsPath(),
+            type.getResultsFileName(COMPARISONS_FILE_QUALIFIER));
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(comparisonsFile)))
+        {
+            out.write("DB,Baseline DB,Relative Difference of Medians,CI Lower,CI Upper,Significant\n");
+            for (Map.Entry<GraphDatabaseType, double[]> baseline : samples.entrySet())
+            {
+                for (Map.Entry<GraphDatabaseType, double[]> entry : samples.entrySet())
+                {
+                    if (entry.getKey() == baseline.getKey())
+                    {
+                        continue;
+                    }
+                    final Interval difference = SampleStatistics.bootstrapRelativeDifference(baseline.getValue(),
+                        entry.getValue(), bench.getBootstrapResamples(), bench.getTrialsConfidence(),
+                        bootstrapRandom);
+                    out.write(String.format("%s,%s,%f,%f,%f,%b\n", entry.getKey().getShortname(),
+                        baseline.getKey().getShortname(), difference.getEstimate(), difference.getLower(),
+                        difference.getUpper(), !difference.contains(0)));
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("unable to write comparisons to " + comparisonsFile, e);
+        }
     }
 }
@@ -1,6 +1,8 @@
 package eu.socialsensor.benchmarks;
 
 import eu.socialsensor.graphdatabases.GraphDatabase;
+import eu.socialsensor.insert.InsertionTimeSeries;
+import eu.socialsensor.insert.StorageFootprint;
 import eu.socialsensor.main.BenchmarkConfiguration;
 import eu.socialsensor.main.BenchmarkType;
 import eu.socialsensor.main.GraphDatabaseType;
@@ -36,19 +38,35 @@ public class SingleInsertionBenchmark extends PermutingBenchmarkBase implements
         {
             String prefix = outputFile.getParentFile().getAbsolutePath() + File.separator
                 + INSERTION_TIMES_OUTPUT_FILE_NAME_BASE + "." + type.getShortname();
-            List<List<Double>> insertionTimesOfEachScenario = Utils.getDocumentsAs2dList(prefix, bench.getScenarios());
+            List<List<Double>> insertionTimesOfEachScenario = Utils.getDocumentsAs2dList(prefix, scenariosRun);
             times.put(type, Utils.calculateMeanList(insertionTimesOfEachScenario));
-            Utils.deleteMultipleFiles(prefix, bench.getScenarios());
+            Utils.deleteMultipleFiles(prefix, scenariosRun);
         }
         // use the logic of the superclass method after populating the times map
         super.post();
+        writeStorageFootprint();
     }
 
     @Override
     public void benchmarkOne(GraphDatabaseType type, int scenarioNumber)
     {
         GraphDatabase<?,?,?,?> graphDatabase = Utils.createDatabaseInstance(bench, type, false /*batchLoading*/);
-        graphDatabase.singleModeLoading(bench.getDataset(), bench.getResultsPath(), scenarioNumber);
+        final StorageFootprint footprint = newStorageFootprint(type, true /*single*/);
+        final InsertionTimeSeries timeSeries = newInsertionTimeSeries(type, scenarioNumber, true /*single*/);
+        try
+        {
+            graphDatabase.singleModeLoading(bench.getDataset(), bench.getResultsPath(), scenarioNumber);
+        }
+        finally
+        {
+            if (timeSeries != null)
+            {
+                timeSeries.close();
+            }
+        }
+        footprint.loaded();
         graphDatabase.shutdown();
+        footprint.shutDown();
+        recordCounters(type, scenarioNumber, footprint.getCounters());
     }
 }
@@ -1,14 +1,24 @@
 package eu.socialsensor.clustering;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.ExecutionException;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.primitives.Ints;
 
 import eu.socialsensor.graphdatabases.GraphDatabase;
+import eu.socialsensor.main.GraphDatabaseBenchmark;
 
 /**
  * Cache implementation for the temporary storage of required information of the
@@ -17,7 +27,7 @@ import eu.socialsensor.graphdatabases.GraphDatabase;
  * @author sotbeis
  * @email sotbeis@iti.gr
  */
-public class Cache
+public class Cache implements AutoCloseable
 {
 
     LoadingCache<Integer, Set<Integer>> nodeCommunitiesMap; // key=nodeCommunity
@@ -30,25 +40,40 @@ public class Cache
                                                         // community
     LoadingCache<Integer, Integer> nodeCommunitiesToCommunities; // key=nodeCommunity
                                                                  // value=community
-    LoadingCache<Integer, Set<Integer>> nodeNeighbours; // key=nodeId
-                                                        // value=nodeId
-                                                        // neighbors
+    NeighbourCache nodeNeighbours; // key=nodeId
+                                   // value=nodeId
+                                   // neighbors, off-heap
     LoadingCache<Integer, Integer> nodeToCommunityMap; // key=nodeId
                                                        // value=communityId
 
-    public Cache(final GraphDatabase<?,?,?,?> graphDatabase, int cachePercentage, int nodeCount) throws ExecutionException
+    private final GraphDatabase<?,?,?,?> graphDatabase;
+    // neighbour lists loaded into nodeNeighbours and the time spent loading them
+    private long neighbourLoads = 0;
+    private long neighbourLoadNanos = 0;
+
+    public static final String METRICS_CONTEXT = "eu.socialsensor.clustering.cache.";
+    public static final String NODE_NEIGHBOURS = "nodeNeighbours";
+    public static final String NODE_COMMUNITIES_MAP = "nodeCommunitiesMap";
+    public static final String COMMUNITIES_MAP = "communitiesMap";
+    public static final String NODE_TO_COMMUNITY_MAP = "nodeToCommunityMap";
+    public static final String NODE_COMMUNITIES_TO_COMMUNITIES = "nodeCommunitiesToCommunities";
+
+    /**
+     * @param edgeCount
+     *            the number of edges, which together with nodeCount gives the packed size of all neighbour lists.
+     *            The neighbour cache gets cachePercentage of that size in bytes.
+     */
+    public Cache(final GraphDatabase<?,?,?,?> graphDatabase, int cachePercentage, int nodeCount, long edgeCount)
+        throws ExecutionException
     {
+        this.graphDatabase = graphDatabase;
         final int cacheSize = Math.max(0, Math.min(nodeCount,
                         Math.round(((float) cachePercentage) / 100.0f * nodeCount)));
-        nodeNeighbours = CacheBuilder.newBuilder().maximumSize(cacheSize)
-            .build(new CacheLoader<Integer, Set<Integer>>() {
-                public Set<Integer> load(Integer nodeId)
-                {
-                    return graphDatabase.getNeighborsIds(nodeId);
-                }
-            });
+        final long adjacencyBytes = nodeCount * NeighbourCache.entryBytes(0) + edgeCount * Integer.BYTES;
+        nodeNeighbours = new NeighbourCache(Math.max(0, Math.min(adjacencyBytes,
+            Math.round(cachePercentage / 100.0 * adjacencyBytes))));
 
-        nodeCommunitiesMap = CacheBuilder.newBuilder().maximumSize(cacheSize)
+        nodeCommunitiesMap = CacheBuilder.newBuilder().maximumSize(cacheSize).recordStats()
             .build(new CacheLoader<Integer, Set<Integer>>() {
                 public Set<Integer> load(Integer nodeCommunityId)
                 {
@@ -56,7 +81,7 @@ public class Cache
                 }
             });
 
-        communitiesMap = CacheBuilder.newBuilder().maximumSize(cacheSize)
+        communitiesMap = CacheBuilder.newBuilder().maximumSize(cacheSize).recordStats()
             .build(new CacheLoader<Integer, Set<Integer>>() {
                 public Set<Integer> load(Integer communityId)
                 {
@@ -64,7 +89,7 @@ public class Cache
                 }
             });
 
-        nodeToCommunityMap = CacheBuilder.newBuilder().maximumSize(cacheSize)
+        nodeToCommunityMap = CacheBuilder.newBuilder().maximumSize(cacheSize).recordStats()
             .build(new CacheLoader<Integer, Integer>() {
                 public Integer load(Integer nodeId)
                 {
@@ -72,22 +97,91 @@ public class Cache
                 }
             });
 
-        nodeCommunitiesToCommunities = CacheBuilder.newBuilder().maximumSize(cacheSize)
+        nodeCommunitiesToCommunities = CacheBuilder.newBuilder().maximumSize(cacheSize).recordStats()
             .build(new CacheLoader<Integer, Integer>() {
                 public Integer load(Integer nodeCommunity)
                 {
                     return graphDatabase.getCommunity(nodeCommunity);
                 }
             });
+
+        registerGauges();
+    }
+
+    /**
+     * @return the statistics of each cache, keyed by cache name
+     */
+    public SortedMap<String, CacheStats> getStats()
+    {
+        final SortedMap<String, CacheStats> stats = new TreeMap<String, CacheStats>();
+        stats.put(NODE_NEIGHBOURS, new CacheStats(nodeNeighbours.getHits(), nodeNeighbours.getMisses(),
+            neighbourLoads, 0 /*loadExceptionCount*/, neighbourLoadNanos, nodeNeighbours.getEvictions()));
+        stats.put(NODE_COMMUNITIES_MAP, nodeCommunitiesMap.stats());
+        stats.put(COMMUNITIES_MAP, communitiesMap.stats());
+        stats.put(NODE_TO_COMMUNITY_MAP, nodeToCommunityMap.stats());
+        stats.put(NODE_COMMUNITIES_TO_COMMUNITIES, nodeCommunitiesToCommunities.stats());
+        return stats;
+    }
+
+    /**
+     * Exposes the statistics of this cache as gauges, replacing the ones of the cache of the previous run.
+     */
+    private void registerGauges()
+    {
+        final MetricRegistry metrics = GraphDatabaseBenchmark.metrics;
+        metrics.removeMatching((name, metric) -> name.startsWith(METRICS_CONTEXT));
+        for (final String cache : getStats().keySet())
+        {
+            final String prefix = METRICS_CONTEXT + cache + ".";
+            metrics.register(prefix + "hitRate", (Gauge<Double>) () -> getStats().get(cache).hitRate());
+            metrics.register(prefix + "missCount", (Gauge<Long>) () -> getStats().get(cache).missCount());
+            metrics.register(prefix + "averageLoadPenalty",
+                (Gauge<Double>) () -> getStats().get(cache).averageLoadPenalty());
+            metrics.register(prefix + "evictionCount", (Gauge<Long>) () -> getStats().get(cache).evictionCount());
+        }
+    }
+
+    /**
+     * @return the neighbours of each of the nodes, loading all the ones that are not cached with one bulk lookup
+     */
+    private List<int[]> getNeighbours(Set<Integer> nodeIds)
+    {
+        final List<int[]> neighbours = new ArrayList<int[]>(nodeIds.size());
+        final List<Integer> misses = new ArrayList<Integer>();
+        for (int nodeId : nodeIds)
+        {
+            final int[] cached = nodeNeighbours.getIfPresent(nodeId);
+            if (cached == null)
+            {
+                misses.add(nodeId);
+            }
+            else
+            {
+                neighbours.add(cached);
+            }
+        }
+        if (!misses.isEmpty())
+        {
+            final long start = System.nanoTime();
+            final Map<Integer, Set<Integer>> loadedNeighbours = graphDatabase.getNeighborsIds(misses);
+            neighbourLoadNanos += System.nanoTime() - start;
+            neighbourLoads += loadedNeighbours.size();
+            for (Map.Entry<Integer, Set<Integer>> loaded : loadedNeighbours.entrySet())
+            {
+                final int[] packed = Ints.toArray(loaded.getValue());
+                nodeNeighbours.put(loaded.getKey(), packed);
+                neighbours.add(packed);
+            }
+        }
+        return neighbours;
     }
 
     public Set<Integer> getCommunitiesConnectedToNodeCommunities(int nodeCommunity) throws ExecutionException
     {
         Set<Integer> nodesFromNodeCommunity = nodeCommunitiesMap.get(nodeCommunity);
         Set<Integer> communities = new HashSet<Integer>();
-        for (int nodeFromNodeCommunity : nodesFromNodeCommunity)
+        for (int[] neighbors : getNeighbours(nodesFromNodeCommunity))
         {
-            Set<Integer> neighbors = nodeNeighbours.get(nodeFromNodeCommunity);
             for (int neighbor : neighbors)
             {
                 communities.add(nodeToCommunityMap.get(neighbor));
@@ -114,9 +208,9 @@ public class Cache
     {
         Set<Integer> nodes = nodeCommunitiesMap.get(nodeCommunity);
         double weight = 0;
-        for (int node : nodes)
+        for (int[] neighbors : getNeighbours(nodes))
         {
-            weight += nodeNeighbours.get(node).size();
+            weight += neighbors.length;
         }
         return weight;
     }
@@ -136,11 +230,12 @@ public class Cache
         Set<Integer> nodeCommunityNodes = nodeCommunitiesMap.get(nodeCommunity);
         Set<Integer> communityNodes = communitiesMap.get(community);
         double edges = 0;
-        for (int nodeCommunityNode : nodeCommunityNodes)
+        for (int[] neighbors : getNeighbours(nodeCommunityNodes))
         {
-            for (int communityNode : communityNodes)
+            // neighbour lists have no duplicates, so this counts the community nodes adjacent to each node
+            for (int neighbor : neighbors)
             {
-                if (nodeNeighbours.get(nodeCommunityNode).contains(communityNode))
+                if (communityNodes.contains(neighbor))
                 {
                     edges++;
                 }
@@ -157,4 +252,13 @@ public class Cache
         nodeCommunitiesToCommunities.invalidateAll();
     }
 
+    /**
+     * Frees the off-heap neighbour cache. The statistics stay readable.
+     */
+    @Override
+    public void close()
+    {
+        nodeNeighbours.close();
+    }
+
 }
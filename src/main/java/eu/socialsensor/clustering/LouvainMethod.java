@@ -4,8 +4,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.concurrent.ExecutionException;
 
+import com.google.common.cache.CacheStats;
+
 import eu.socialsensor.graphdatabases.GraphDatabase;
 
 /**
@@ -15,11 +18,13 @@ import eu.socialsensor.graphdatabases.GraphDatabase;
  * @author sotbeis
  * @email sotbeis@iti.gr
  */
-public class LouvainMethod
+public class LouvainMethod implements AutoCloseable
 {
     private final Random random;
     private double resolution = 1.0;
     private double graphWeightSum;
+    // the number of nodes of the graph, and the number of node communities at the current level, which starts at it
+    private int graphNodeCount;
     private int nodeCount;
     private List<Double> communityWeights;
     private boolean communityUpdate = false;
@@ -32,13 +37,14 @@ public class LouvainMethod
         this.graphDatabase = graphDatabase;
         this.random = random;
         initialize();
-        cache = new Cache(graphDatabase, cachePercentage, nodeCount);
+        cache = new Cache(graphDatabase, cachePercentage, nodeCount, (long) (2 * graphWeightSum) /*edges*/);
     }
 
     private void initialize()
     {
-        this.nodeCount = this.graphDatabase.getNodeCount();// this step takes a long
-                                                   // time on dynamodb.
+        // kept by the store or at insertion, so neither count scans the graph
+        this.graphNodeCount = this.graphDatabase.getNodeCount();
+        this.nodeCount = this.graphNodeCount;
         this.graphWeightSum = this.graphDatabase.getGraphWeightSum() / 2;
 
         this.communityWeights = new ArrayList<Double>(this.nodeCount);
@@ -47,7 +53,17 @@ public class LouvainMethod
             this.communityWeights.add(0.0);
         }
 
-        this.graphDatabase.initCommunityProperty();
+        boolean initialized = false;
+        this.graphDatabase.beginUnitOfWork();
+        try
+        {
+            this.graphDatabase.initCommunityProperty();
+            initialized = true;
+        }
+        finally
+        {
+            this.graphDatabase.endUnitOfWork(initialized);
+        }
     }
 
     public void computeModularity() throws ExecutionException
@@ -55,43 +71,66 @@ public class LouvainMethod
         boolean someChange = true;
         while (someChange)
         {
-            someChange = false;
-            boolean localChange = true;
-            while (localChange)
+            // each pass is one unit of work of the database, committed if the pass completes and rolled back if it
+            // fails; with neo4j.commit-every set, Neo4j commits within the pass and rolls back only the rest
+            boolean passed = false;
+            this.graphDatabase.beginUnitOfWork();
+            try
             {
-                localChange = false;
-                int start = 0;
-                if (null != this.random)
-                {
-                    start = Math.abs(random.nextInt()) % this.nodeCount;
-                }
-                int step = 0;
-                for (int i = start; step < this.nodeCount; i = (i + 1) % this.nodeCount)
-                {
-                    step++;
-                    int bestCommunity = updateBestCommunity(i);
-                    if ((this.cache.getCommunity(i) != bestCommunity) && (this.communityUpdate))
-                    {
+                someChange = pass();
+                passed = true;
+            }
+            finally
+            {
+                this.graphDatabase.endUnitOfWork(passed);
+            }
+        }
+    }
 
-                        this.cache.moveNodeCommunity(i, bestCommunity);
-                        this.graphDatabase.moveNode(i, bestCommunity);
+    /**
+     * Moves nodes to their best community until no move improves the modularity, then zooms out if any node moved.
+     * 
+     * @return whether any node moved
+     */
+    private boolean pass() throws ExecutionException
+    {
+        boolean someChange = false;
+        boolean localChange = true;
+        while (localChange)
+        {
+            localChange = false;
+            int start = 0;
+            if (null != this.random)
+            {
+                start = Math.abs(random.nextInt()) % this.nodeCount;
+            }
+            int step = 0;
+            for (int i = start; step < this.nodeCount; i = (i + 1) % this.nodeCount)
+            {
+                step++;
+                int bestCommunity = updateBestCommunity(i);
+                if ((this.cache.getCommunity(i) != bestCommunity) && (this.communityUpdate))
+                {
 
-                        double bestCommunityWeight = this.communityWeights.get(bestCommunity);
+                    this.cache.moveNodeCommunity(i, bestCommunity);
+                    this.graphDatabase.moveNode(i, bestCommunity);
 
-                        bestCommunityWeight += cache.getNodeCommunityWeight(i);
-                        this.communityWeights.set(bestCommunity, bestCommunityWeight);
-                        localChange = true;
-                    }
+                    double bestCommunityWeight = this.communityWeights.get(bestCommunity);
 
-                    this.communityUpdate = false;
+                    bestCommunityWeight += cache.getNodeCommunityWeight(i);
+                    this.communityWeights.set(bestCommunity, bestCommunityWeight);
+                    localChange = true;
                 }
-                someChange = localChange || someChange;
-            }
-            if (someChange)
-            {
-                zoomOut();
+
+                this.communityUpdate = false;
             }
+            someChange = localChange || someChange;
+        }
+        if (someChange)
+        {
+            zoomOut();
         }
+        return someChange;
     }
 
     private int updateBestCommunity(int node) throws ExecutionException
@@ -145,9 +184,37 @@ public class LouvainMethod
         }
     }
 
+    /**
+     * @return the number of nodes of the graph
+     */
     public int getNodeCount()
+    {
+        return this.graphNodeCount;
+    }
+
+    /**
+     * @return the number of communities found so far, which is the number of nodes before computeModularity
+     */
+    public int getCommunityCount()
     {
         return this.nodeCount;
     }
 
+    /**
+     * @return the hit, miss, load and eviction statistics of each cache so far, keyed by cache name
+     */
+    public SortedMap<String, CacheStats> getCacheStats()
+    {
+        return this.cache.getStats();
+    }
+
+    /**
+     * Frees the caches of this run, keeping their statistics.
+     */
+    @Override
+    public void close()
+    {
+        this.cache.close();
+    }
+
 }
\ No newline at end of file
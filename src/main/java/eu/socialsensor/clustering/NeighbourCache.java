@@ -0,0 +1,371 @@
+package eu.socialsensor.clustering;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.codahale.metrics.Counter;
+
+import eu.socialsensor.main.GraphDatabaseBenchmark;
+
+/**
+ * Byte bounded adjacency cache that keeps the neighbour lists of nodes as packed int arrays in a direct (off-heap)
+ * ByteBuffer, so that large caches do not add to the Java heap and to the GC pauses charged to the database under
+ * test.
+ *
+ * The arena is a circular log. Entries are appended at the head and evicted from the tail with CLOCK: an entry
+ * that was read since it was written gets a second chance and is moved to the head instead of being dropped. Each
+ * entry is a header of node id, neighbour count and referenced flag followed by the neighbour ids. The index from
+ * node id to entry position is a primitive open addressing table.
+ *
+ * The arena is freed by close rather than whenever the garbage collector gets to it, so that the arenas of
+ * successive clustering runs are never held at the same time.
+ *
+ * Not thread safe.
+ */
+public class NeighbourCache implements AutoCloseable
+{
+    public static final String METRICS_CONTEXT = "eu.socialsensor.clustering.neighbourCache.";
+    // node id, neighbour count, referenced
+    static final int HEADER_BYTES = 3 * Integer.BYTES;
+
+    private ByteBuffer arena;
+    private final long capacity;
+    private final PositionIndex index = new PositionIndex();
+    // absolute (ever increasing) positions of the next write and the oldest entry; physical offset is pos % capacity
+    private long head = 0;
+    private long tail = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private final Counter hitCounter = GraphDatabaseBenchmark.metrics.counter(METRICS_CONTEXT + "hits");
+    private final Counter missCounter = GraphDatabaseBenchmark.metrics.counter(METRICS_CONTEXT + "misses");
+    private final Counter evictionCounter = GraphDatabaseBenchmark.metrics.counter(METRICS_CONTEXT + "evictions");
+
+    /**
+     * @param capacityBytes
+     *            size of the arena, rounded down to whole ints and capped at Integer.MAX_VALUE. Zero disables caching.
+     */
+    public NeighbourCache(long capacityBytes)
+    {
+        if (capacityBytes < 0)
+        {
+            throw new IllegalArgumentException("capacityBytes must not be negative");
+        }
+        this.capacity = Math.min(capacityBytes, Integer.MAX_VALUE) / Integer.BYTES * Integer.BYTES;
+        this.arena = ByteBuffer.allocateDirect((int) capacity);
+    }
+
+    /**
+     * Packed size of a neighbour list in the arena.
+     */
+    public static long entryBytes(int neighbours)
+    {
+        return HEADER_BYTES + (long) neighbours * Integer.BYTES;
+    }
+
+    /**
+     * @return the neighbours of the node, or null if they are not cached
+     */
+    public int[] getIfPresent(int nodeId)
+    {
+        checkOpen();
+        final long position = index.get(nodeId);
+        if (position < 0)
+        {
+            misses++;
+            missCounter.inc();
+            return null;
+        }
+        hits++;
+        hitCounter.inc();
+        putInt(position + 2 * Integer.BYTES, 1);
+        final int[] neighbours = new int[getInt(position + Integer.BYTES)];
+        for (int i = 0; i < neighbours.length; i++)
+        {
+            neighbours[i] = getInt(position + entryBytes(i));
+        }
+        return neighbours;
+    }
+
+    /**
+     * Caches the neighbours of the node, evicting as many entries as needed to make room. Lists larger than the
+     * whole arena are not cached.
+     */
+    public void put(int nodeId, int[] neighbours)
+    {
+        checkOpen();
+        final long size = entryBytes(neighbours.length);
+        if (size > capacity)
+        {
+            return;
+        }
+        invalidate(nodeId);
+        while (head + size - tail > capacity)
+        {
+            evictOrReinsertTail();
+        }
+        write(nodeId, neighbours.length, 0 /*referenced*/, neighbours, -1);
+    }
+
+    public void invalidate(int nodeId)
+    {
+        checkOpen();
+        final long position = index.remove(nodeId);
+        if (position >= 0)
+        {
+            // the bytes stay in the log until the tail passes them; a negative id marks them dead
+            putInt(position, -1 - getInt(position));
+        }
+    }
+
+    public long getHits()
+    {
+        return hits;
+    }
+
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    public long getEvictions()
+    {
+        return evictions;
+    }
+
+    public int size()
+    {
+        return index.size();
+    }
+
+    public long getCapacityBytes()
+    {
+        return capacity;
+    }
+
+    public long getUsedBytes()
+    {
+        return head - tail;
+    }
+
+    /**
+     * Frees the arena. The statistics stay readable; any other call fails afterwards.
+     */
+    @Override
+    public void close()
+    {
+        if (arena == null)
+        {
+            return;
+        }
+        free(arena);
+        arena = null;
+        index.clear();
+        head = tail = 0;
+    }
+
+    private void checkOpen()
+    {
+        if (arena == null)
+        {
+            throw new IllegalStateException("neighbour cache is closed");
+        }
+    }
+
+    /**
+     * Releases the memory of a direct buffer right away. Java has no public API for this, so it calls
+     * Unsafe.invokeCleaner on Java 9 and later and the cleaner of the buffer on Java 8. Where neither can be reached
+     * the buffer is left to the garbage collector like any other.
+     */
+    private static void free(ByteBuffer buffer)
+    {
+        try
+        {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try
+            {
+                final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            }
+            catch (NoSuchMethodException e)
+            {
+                final Method cleaner = buffer.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                final Object bufferCleaner = cleaner.invoke(buffer);
+                bufferCleaner.getClass().getMethod("clean").invoke(bufferCleaner);
+            }
+        }
+        catch (ReflectiveOperationException | RuntimeException e)
+        {
+            // not freed early on this runtime
+        }
+    }
+
+    private void evictOrReinsertTail()
+    {
+        final long position = tail;
+        final int nodeId = getInt(position);
+        final int count = getInt(position + Integer.BYTES);
+        final boolean referenced = getInt(position + 2 * Integer.BYTES) != 0;
+        tail += entryBytes(count);
+        if (nodeId < 0)
+        {
+            return; // invalidated entry, nothing to evict
+        }
+        if (referenced)
+        {
+            // second chance: the freed tail bytes make room for the copy at the head
+            write(nodeId, count, 0 /*referenced*/, null, position);
+        }
+        else
+        {
+            index.remove(nodeId);
+            evictions++;
+            evictionCounter.inc();
+        }
+    }
+
+    /**
+     * Appends an entry at the head, taking the neighbours either from the array or from the entry at copyFrom.
+     */
+    private void write(int nodeId, int count, int referenced, int[] neighbours, long copyFrom)
+    {
+        final long position = head;
+        putInt(position, nodeId);
+        putInt(position + Integer.BYTES, count);
+        putInt(position + 2 * Integer.BYTES, referenced);
+        for (int i = 0; i < count; i++)
+        {
+            putInt(position + entryBytes(i), neighbours != null ? neighbours[i] : getInt(copyFrom + entryBytes(i)));
+        }
+        head += entryBytes(count);
+        index.put(nodeId, position);
+    }
+
+    private int getInt(long position)
+    {
+        return arena.getInt((int) (position % capacity));
+    }
+
+    private void putInt(long position, int value)
+    {
+        arena.putInt((int) (position % capacity), value);
+    }
+
+    /**
+     * Linear probing map from non negative node ids to arena positions, with backward shift deletion.
+     */
+    private static final class PositionIndex
+    {
+        private static final int FREE = -1;
+        private int[] keys = newKeys(16);
+        private long[] positions = new long[16];
+        private int size = 0;
+
+        private static int[] newKeys(int length)
+        {
+            final int[] keys = new int[length];
+            Arrays.fill(keys, FREE);
+            return keys;
+        }
+
+        private int slot(int key, int mask)
+        {
+            return (key * 0x9E3779B9) >>> 1 & mask;
+        }
+
+        long get(int key)
+        {
+            final int mask = keys.length - 1;
+            for (int i = slot(key, mask); keys[i] != FREE; i = (i + 1) & mask)
+            {
+                if (keys[i] == key)
+                {
+                    return positions[i];
+                }
+            }
+            return -1;
+        }
+
+        void put(int key, long position)
+        {
+            if (2 * (size + 1) > keys.length)
+            {
+                resize();
+            }
+            final int mask = keys.length - 1;
+            int i = slot(key, mask);
+            for (; keys[i] != FREE; i = (i + 1) & mask)
+            {
+                if (keys[i] == key)
+                {
+                    positions[i] = position;
+                    return;
+                }
+            }
+            keys[i] = key;
+            positions[i] = position;
+            size++;
+        }
+
+        long remove(int key)
+        {
+            final int mask = keys.length - 1;
+            int i = slot(key, mask);
+            for (; keys[i] != key; i = (i + 1) & mask)
+            {
+                if (keys[i] == FREE)
+                {
+                    return -1;
+                }
+            }
+            final long removed = positions[i];
+            // shift back the entries of the probe run that follows so that lookups never stop early
+            for (int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask)
+            {
+                final int home = slot(keys[j], mask);
+                if (((j - home) & mask) >= ((j - i) & mask))
+                {
+                    keys[i] = keys[j];
+                    positions[i] = positions[j];
+                    i = j;
+                }
+            }
+            keys[i] = FREE;
+            size--;
+            return removed;
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        void clear()
+        {
+            Arrays.fill(keys, FREE);
+            size = 0;
+        }
+
+        private void resize()
+        {
+            final int[] oldKeys = keys;
+            final long[] oldPositions = positions;
+            keys = newKeys(oldKeys.length * 2);
+            positions = new long[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++)
+            {
+                if (oldKeys[i] != FREE)
+                {
+                    put(oldKeys[i], oldPositions[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package eu.socialsensor.dataset;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * Barabasi-Albert preferential attachment graphs. Nodes arrive one at a time and each links to edge-factor distinct
+ * earlier nodes, chosen with probability proportional to their degree, which grows a power law degree distribution
+ * with exponent 3 and hubs among the oldest nodes. Parameters:
+ * <ul>
+ * <li>nodes - number of nodes (default 1000000)</li>
+ * <li>edge-factor - edges per arriving node (default 8)</li>
+ * <li>seed - of the generator (default 1)</li>
+ * </ul>
+ * A node is chosen by degree by picking an end of a uniformly random earlier edge. Sources are implied by the edge
+ * index, so each iteration keeps only the targets, four bytes per edge, which limits the graph to about two billion
+ * edges.
+ */
+public class BarabasiAlbertDataset extends GeneratedDataset
+{
+    public static final String MODEL = "ba";
+
+    private final int edgesPerNode;
+
+    BarabasiAlbertDataset(Parameters parameters, Random random, int randomNodeSetSize)
+    {
+        super(parameters, random, randomNodeSetSize);
+        this.edgesPerNode = (int) parameters.getLong(EDGE_FACTOR, 8, 1, nodes - 1);
+        if (getEdges() > Integer.MAX_VALUE - 8)
+        {
+            throw new IllegalArgumentException("a " + MODEL + " generator can not generate more than "
+                + (Integer.MAX_VALUE - 8) + " edges");
+        }
+    }
+
+    @Override
+    public long getEdges()
+    {
+        return (long) (nodes - edgesPerNode) * edgesPerNode;
+    }
+
+    @Override
+    protected int randomNode(Random random)
+    {
+        // every node has an edge: the first edge-factor nodes are the targets of the next node
+        return random.nextInt(nodes);
+    }
+
+    @Override
+    public Iterator<List<String>> iterator()
+    {
+        return new AbstractIterator<List<String>>() {
+            private final SplittableRandom random = new SplittableRandom(mix(seed));
+            private final int[] targets = new int[(int) getEdges()];
+            private int edge = 0;
+
+            @Override
+            protected List<String> computeNext()
+            {
+                if (edge == targets.length)
+                {
+                    return endOfData();
+                }
+                final int node = edgesPerNode + edge / edgesPerNode;
+                final int firstEdgeOfNode = edge - edge % edgesPerNode;
+                int target;
+                if (node == edgesPerNode)
+                {
+                    target = edge;
+                }
+                else
+                {
+                    do
+                    {
+                        // an end of one of the edges before those of this node
+                        final long end = random.nextLong(2L * firstEdgeOfNode);
+                        target = end < firstEdgeOfNode ? edgesPerNode + (int) end / edgesPerNode
+                            : targets[(int) (end - firstEdgeOfNode)];
+                    }
+                    while (linked(targets, firstEdgeOfNode, edge, target));
+                }
+                targets[edge++] = target;
+                return edge(node, target);
+            }
+        };
+    }
+
+    private static boolean linked(int[] targets, int from, int to, int target)
+    {
+        for (int i = from; i < to; i++)
+        {
+            if (targets[i] == target)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,203 @@
+package eu.socialsensor.dataset;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
+
+import eu.socialsensor.main.BenchmarkingException;
+
+/**
+ * Ground truth communities of a dataset, parsed once and kept in primitive arrays over a dense node index. Two file
+ * formats are supported:
+ * <ul>
+ * <li>LFR community files (communityNNNN.dat): one line per node with the node id, a tab and the whitespace
+ * separated communities of the node, numbered from one. The first four lines are skipped, as for the datasets.</li>
+ * <li>SNAP community files (*.cmty.txt): one line per community with the tab separated ids of its nodes.</li>
+ * </ul>
+ * Either format may assign a node to several communities. The memberships of all nodes are kept as compressed
+ * sparse rows, and the first community of every node as its label for the disjoint NMI.
+ */
+public class Communities
+{
+    private static final int LFR_LINES_TO_SKIP = 4;
+    private static final String SNAP_SUFFIX = ".cmty.txt";
+
+    private final IntIntHashMap nodeIndexes;
+    private final int[] labels;
+    private final int[] membershipOffsets;
+    private final int[] memberships;
+    private final int numberOfCommunities;
+
+    public Communities(File communitiesFile)
+    {
+        nodeIndexes = new IntIntHashMap();
+        // (node index, community) pairs in file order
+        final IntArrayList pairNodes = new IntArrayList();
+        final IntArrayList pairCommunities = new IntArrayList();
+        final boolean snap = communitiesFile.getName().endsWith(SNAP_SUFFIX);
+        int communities = 0;
+        try (BufferedReader reader = Files.newBufferedReader(communitiesFile.toPath(), StandardCharsets.UTF_8))
+        {
+            int lineNumber = 0;
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+            {
+                lineNumber++;
+                if ((!snap && lineNumber <= LFR_LINES_TO_SKIP) || line.isEmpty() || line.startsWith("#"))
+                {
+                    continue;
+                }
+                final String[] columns = line.trim().split("\\s+");
+                if (snap)
+                {
+                    for (String node : columns)
+                    {
+                        pairNodes.add(nodeIndex(Integer.parseInt(node)));
+                        pairCommunities.add(communities);
+                    }
+                    communities++;
+                }
+                else
+                {
+                    final int node = nodeIndex(Integer.parseInt(columns[0]));
+                    for (int i = 1; i < columns.length; i++)
+                    {
+                        // community number starts at 1 and not zero.
+                        final int community = Integer.parseInt(columns[i]) - 1;
+                        pairNodes.add(node);
+                        pairCommunities.add(community);
+                        communities = Math.max(communities, community + 1);
+                    }
+                }
+            }
+        }
+        catch (IOException | NumberFormatException e)
+        {
+            throw new BenchmarkingException("Unable to read communities from " + communitiesFile.getAbsolutePath(), e);
+        }
+        numberOfCommunities = communities;
+
+        final int nodes = nodeIndexes.size();
+        labels = new int[nodes];
+        Arrays.fill(labels, -1);
+        membershipOffsets = new int[nodes + 1];
+        for (int i = 0; i < pairNodes.size(); i++)
+        {
+            membershipOffsets[pairNodes.get(i) + 1]++;
+        }
+        for (int node = 0; node < nodes; node++)
+        {
+            membershipOffsets[node + 1] += membershipOffsets[node];
+        }
+        memberships = new int[pairNodes.size()];
+        final int[] filled = new int[nodes];
+        for (int i = 0; i < pairNodes.size(); i++)
+        {
+            final int node = pairNodes.get(i);
+            memberships[membershipOffsets[node] + filled[node]++] = pairCommunities.get(i);
+            if (labels[node] < 0)
+            {
+                labels[node] = pairCommunities.get(i);
+            }
+        }
+    }
+
+    private int nodeIndex(int nodeId)
+    {
+        nodeIndexes.putIfAbsent(nodeId, nodeIndexes.size());
+        return nodeIndexes.get(nodeId);
+    }
+
+    /**
+     * @return the number of nodes that belong to at least one community
+     */
+    public int getNumberOfNodes()
+    {
+        return labels.length;
+    }
+
+    public int getNumberOfCommunities()
+    {
+        return numberOfCommunities;
+    }
+
+    /**
+     * @return true if some node belongs to more than one community
+     */
+    public boolean isOverlapping()
+    {
+        return memberships.length > labels.length;
+    }
+
+    /**
+     * @return the first community of each node, by node index
+     */
+    public int[] getLabels()
+    {
+        return labels;
+    }
+
+    public int[] getMembershipOffsets()
+    {
+        return membershipOffsets;
+    }
+
+    public int[] getMemberships()
+    {
+        return memberships;
+    }
+
+    /**
+     * @param predictedCommunities
+     *            community number to the ids of its nodes, as returned by GraphDatabase.mapCommunities
+     * @return the predicted community of each node, by the node index of these communities. Nodes without ground
+     *         truth are left out and nodes without prediction are labeled -1.
+     */
+    public int[] labelsOf(Map<Integer, List<Integer>> predictedCommunities)
+    {
+        final int[] predictedLabels = new int[labels.length];
+        Arrays.fill(predictedLabels, -1);
+        int label = 0;
+        for (List<Integer> community : predictedCommunities.values())
+        {
+            for (int nodeId : community)
+            {
+                final int slot = nodeIndexes.indexOf(nodeId);
+                if (nodeIndexes.indexExists(slot))
+                {
+                    predictedLabels[nodeIndexes.indexGet(slot)] = label;
+                }
+            }
+            label++;
+        }
+        return predictedLabels;
+    }
+
+    /**
+     * @return the offsets of compressed sparse rows for the given labels, one membership per labeled node
+     */
+    public static int[] offsetsOf(int[] labels)
+    {
+        final int[] offsets = new int[labels.length + 1];
+        for (int node = 0; node < labels.length; node++)
+        {
+            offsets[node + 1] = offsets[node] + (labels[node] < 0 ? 0 : 1);
+        }
+        return offsets;
+    }
+
+    /**
+     * @return the memberships of compressed sparse rows for the given labels, leaving out unlabeled nodes
+     */
+    public static int[] membershipsOf(int[] labels)
+    {
+        return Arrays.stream(labels).filter(label -> label >= 0).toArray();
+    }
+}
@@ -5,6 +5,8 @@ import java.util.*;
 
 import org.apache.commons.math3.util.MathArrays;
 
+import com.carrotsearch.hppc.IntHashSet;
+
 import eu.socialsensor.utils.Utils;
 
 /**
@@ -14,12 +16,31 @@ import eu.socialsensor.utils.Utils;
  */
 public class Dataset implements Iterable<List<String>>
 {
+    private static final int HEADER_LINES = 4;
+
     private final List<List<String>> data;
     private final List<Integer> generatedNodes;
 
     public Dataset(File datasetFile, Random random, int randomNodeSetSize)
     {
-        data = Utils.readTabulatedLines(datasetFile, 4 /* numberOfLinesToSkip */);
+        this(datasetFile, 1 /* fraction */, random, randomNodeSetSize);
+    }
+
+    /**
+     * @param fraction
+     *            of the lines of the file to load, from the start of the file; only those lines are read
+     */
+    public Dataset(File datasetFile, double fraction, Random random, int randomNodeSetSize)
+    {
+        if (fraction < 1)
+        {
+            final long lines = Math.max(0, Utils.countLines(datasetFile) - HEADER_LINES);
+            data = Utils.readTabulatedLines(datasetFile, HEADER_LINES, (int) Math.ceil(lines * fraction));
+        }
+        else
+        {
+            data = Utils.readTabulatedLines(datasetFile, HEADER_LINES);
+        }
         final Set<Integer> nodes = new HashSet<>();
         //read node strings and convert to Integers and add to HashSet
         data.stream().forEach(line -> { //TODO evaluate parallelStream
@@ -43,16 +64,46 @@ public class Dataset implements Iterable<List<String>>
         }
     }
 
+    /**
+     * For datasets that are not read from a file, which override iterator, getList and getRandomNodes.
+     */
+    protected Dataset()
+    {
+        data = null;
+        generatedNodes = null;
+    }
+
     @Override
     public Iterator<List<String>> iterator()
     {
         return data.iterator();
     }
 
+    /**
+     * @return the number of edges of the dataset
+     */
+    public long getEdges() {
+        return data.size();
+    }
+
     public List<List<String>> getList() {
         return new ArrayList<List<String>>(data);
     }
     public List<Integer> getRandomNodes() {
         return generatedNodes;
     }
+
+    /**
+     * @return the distinct node ids of the dataset, in ascending order so that they do not depend on hashing
+     */
+    public int[] getNodeIds() {
+        final IntHashSet nodes = new IntHashSet();
+        for (List<String> edge : this) {
+            nodes.add(Integer.parseInt(edge.get(0).trim()));
+            nodes.add(Integer.parseInt(edge.get(1).trim()));
+        }
+        final int[] nodeIds = nodes.toArray();
+        Arrays.sort(nodeIds);
+        return nodeIds;
+    }
 }
@@ -12,6 +12,9 @@ import java.util.Random;
  */
 public class DatasetFactory
 {
+    // a dataset file followed by #fraction=<f> names the first fraction of the edges of the file
+    public static final String FRACTION_SUFFIX = "#fraction=";
+
     private static DatasetFactory theInstance = null;
     private final Map<File, Dataset> datasetMap;
 
@@ -40,9 +43,85 @@ public class DatasetFactory
     {
         if (!datasetMap.containsKey(datasetFile))
         {
-            datasetMap.put(datasetFile, new Dataset(datasetFile, random, randomNodeSetSize));
+            // a generator URI in place of the file generates the edges while they are loaded
+            datasetMap.put(datasetFile, GeneratedDataset.isGenerator(datasetFile.getPath()) ? GeneratedDataset.create(
+                datasetFile.getPath(), random, randomNodeSetSize) : new Dataset(sourceFile(datasetFile),
+                fraction(datasetFile), random, randomNodeSetSize));
         }
 
         return datasetMap.get(datasetFile);
     }
+
+    /**
+     * Forgets the dataset, so that its edges can be collected once the benchmarks that use it are done.
+     */
+    public void removeDataset(File datasetFile)
+    {
+        datasetMap.remove(datasetFile);
+    }
+
+    /**
+     * @return the name of a dataset with the fraction of the edges of the dataset: the same generator with the
+     *         fraction of its nodes, or the first fraction of the lines of a file
+     */
+    public static String resize(String dataset, double fraction)
+    {
+        if (fraction <= 0 || fraction > 1)
+        {
+            throw new IllegalArgumentException("dataset fraction must be in (0, 1]");
+        }
+        if (GeneratedDataset.isGenerator(dataset))
+        {
+            return GeneratedDataset.resize(dataset, fraction);
+        }
+        final double current = fraction(new File(dataset));
+        return sourceFile(new File(dataset)).getPath() + FRACTION_SUFFIX + current * fraction;
+    }
+
+    /**
+     * @return the file of the dataset without its fraction
+     */
+    public static File sourceFile(File dataset)
+    {
+        final int suffix = dataset.getPath().lastIndexOf(FRACTION_SUFFIX);
+        return suffix < 0 ? dataset : new File(dataset.getPath().substring(0, suffix));
+    }
+
+    /**
+     * @return the fraction of the lines of the file that the dataset loads, one for the whole file
+     */
+    public static double fraction(File dataset)
+    {
+        final int suffix = dataset.getPath().lastIndexOf(FRACTION_SUFFIX);
+        if (suffix < 0)
+        {
+            return 1;
+        }
+        final double fraction;
+        try
+        {
+            fraction = Double.parseDouble(dataset.getPath().substring(suffix + FRACTION_SUFFIX.length()));
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("dataset fraction of " + dataset + " must be a number", e);
+        }
+        if (!(fraction > 0 && fraction <= 1))
+        {
+            throw new IllegalArgumentException("dataset fraction of " + dataset + " must be in (0, 1]");
+        }
+        return fraction;
+    }
+
+    /**
+     * @return the approximate size in bytes of the part of the file the dataset loads, zero for generated datasets
+     */
+    public static long sizeOf(File dataset)
+    {
+        if (GeneratedDataset.isGenerator(dataset.getPath()))
+        {
+            return 0;
+        }
+        return (long) (sourceFile(dataset).length() * fraction(dataset));
+    }
 }
@@ -0,0 +1,271 @@
+package eu.socialsensor.dataset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A synthetic dataset whose edges are generated while they are iterated instead of read from a file, so that the
+ * size and degree distribution of the graph are only limited by the time it takes to load. A generated dataset is
+ * named by a URI in place of the dataset file:
+ *
+ * <pre>
+ * generator:&lt;model&gt;?nodes=&lt;n&gt;&amp;edge-factor=&lt;edges per node&gt;&amp;seed=&lt;seed&gt;&amp;...
+ * </pre>
+ *
+ * where the model is one of rmat, ba or lfr, with the parameters described by {@link RmatDataset},
+ * {@link BarabasiAlbertDataset} and {@link LfrDataset}. The same URI always generates the same edges in the same
+ * order.
+ */
+public abstract class GeneratedDataset extends Dataset
+{
+    public static final String SCHEME = "generator:";
+    public static final String NODES = "nodes";
+    public static final String EDGE_FACTOR = "edge-factor";
+    public static final String SEED = "seed";
+    private static final long DEFAULT_NODES = 1000000;
+
+    protected final int nodes;
+    protected final long seed;
+    private final List<Integer> randomNodes;
+    private final int randomNodeSetSize;
+    // kept until the model is initialized, as choosing random nodes depends on its parameters
+    private Random randomNodesRandom;
+
+    protected GeneratedDataset(Parameters parameters, Random random, int randomNodeSetSize)
+    {
+        this.nodes = (int) parameters.getLong(NODES, DEFAULT_NODES, 2, Integer.MAX_VALUE);
+        this.seed = parameters.getLong(SEED, 1, Long.MIN_VALUE, Long.MAX_VALUE);
+        if (randomNodeSetSize > nodes)
+        {
+            throw new IllegalArgumentException("cant select more random nodes than there are unique nodes in dataset");
+        }
+        this.randomNodes = new ArrayList<Integer>(randomNodeSetSize);
+        this.randomNodesRandom = random;
+        this.randomNodeSetSize = randomNodeSetSize;
+    }
+
+    public static boolean isGenerator(String dataset)
+    {
+        return dataset.startsWith(SCHEME);
+    }
+
+    /**
+     * @return the URI of the same generator with the fraction of its nodes, and so about the fraction of its edges
+     */
+    public static String resize(String uri, double fraction)
+    {
+        final int query = uri.indexOf('?');
+        final StringBuilder resized = new StringBuilder(query < 0 ? uri : uri.substring(0, query)).append('?');
+        long nodes = DEFAULT_NODES;
+        if (query >= 0)
+        {
+            for (String pair : uri.substring(query + 1).split("&"))
+            {
+                if (pair.startsWith(NODES + "="))
+                {
+                    nodes = Long.parseLong(pair.substring(NODES.length() + 1));
+                }
+                else if (!pair.isEmpty())
+                {
+                    resized.append(pair).append('&');
+                }
+            }
+        }
+        return resized.append(NODES).append('=').append(Math.max(2, Math.round(nodes * fraction))).toString();
+    }
+
+    /**
+     * @return the dataset generated by the model and parameters of the URI
+     */
+    public static GeneratedDataset create(String uri, Random random, int randomNodeSetSize)
+    {
+        if (!isGenerator(uri))
+        {
+            throw new IllegalArgumentException("not a generator URI: " + uri);
+        }
+        final String specification = uri.substring(SCHEME.length());
+        final int query = specification.indexOf('?');
+        final String model = query < 0 ? specification : specification.substring(0, query);
+        final Parameters parameters = new Parameters(uri, query < 0 ? "" : specification.substring(query + 1));
+        final GeneratedDataset dataset;
+        switch (model)
+        {
+            case RmatDataset.MODEL:
+                dataset = new RmatDataset(parameters, random, randomNodeSetSize);
+                break;
+            case BarabasiAlbertDataset.MODEL:
+                dataset = new BarabasiAlbertDataset(parameters, random, randomNodeSetSize);
+                break;
+            case LfrDataset.MODEL:
+                dataset = new LfrDataset(parameters, random, randomNodeSetSize);
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("unknown generator model %s in %s, use %s, %s or %s",
+                    model, uri, RmatDataset.MODEL, BarabasiAlbertDataset.MODEL, LfrDataset.MODEL));
+        }
+        parameters.checkAllUsed();
+        dataset.chooseRandomNodes();
+        return dataset;
+    }
+
+    private void chooseRandomNodes()
+    {
+        final Set<Integer> chosen = new HashSet<Integer>();
+        // a node may be drawn more than once, but not so often that drawing never ends
+        for (long attempts = 0; chosen.size() < randomNodeSetSize; attempts++)
+        {
+            if (attempts > 100L * randomNodeSetSize + 1000)
+            {
+                throw new IllegalArgumentException(
+                    "cant select more random nodes than there are unique nodes in dataset");
+            }
+            final int node = randomNode(randomNodesRandom);
+            if (chosen.add(node))
+            {
+                randomNodes.add(node);
+            }
+        }
+        randomNodesRandom = null;
+    }
+
+    /**
+     * @return a node that has at least one edge
+     */
+    protected abstract int randomNode(Random random);
+
+    /**
+     * @return the number of edges the dataset generates, or an estimate of it for models where it is random
+     */
+    @Override
+    public abstract long getEdges();
+
+    @Override
+    public List<Integer> getRandomNodes()
+    {
+        return randomNodes;
+    }
+
+    /**
+     * Generates all the edges into a list, which only fits in memory for small graphs. Iterate the dataset instead.
+     */
+    @Override
+    public List<List<String>> getList()
+    {
+        final List<List<String>> list = new ArrayList<List<String>>();
+        for (List<String> edge : this)
+        {
+            list.add(edge);
+        }
+        return list;
+    }
+
+    protected static List<String> edge(long src, long dst)
+    {
+        return Arrays.asList(Long.toString(src), Long.toString(dst));
+    }
+
+    /**
+     * @return a well mixed 64 bit value of the input, the finalizer of SplitMix64, to seed generators that must
+     *         produce the same values for an index wherever they are created
+     */
+    protected static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * The query parameters of a generator URI. Every parameter must be read by the model, so that misspelt ones are
+     * reported rather than silently ignored.
+     */
+    protected static final class Parameters
+    {
+        private final String uri;
+        private final Map<String, String> values = new HashMap<String, String>();
+        private final Set<String> used = new HashSet<String>();
+
+        Parameters(String uri, String query)
+        {
+            this.uri = uri;
+            for (String pair : query.split("&"))
+            {
+                if (pair.isEmpty())
+                {
+                    continue;
+                }
+                final int separator = pair.indexOf('=');
+                if (separator <= 0)
+                {
+                    throw new IllegalArgumentException("generator parameter " + pair + " of " + uri
+                        + " must be name=value");
+                }
+                values.put(pair.substring(0, separator), pair.substring(separator + 1));
+            }
+        }
+
+        public long getLong(String name, long defaultValue, long min, long max)
+        {
+            used.add(name);
+            final long value;
+            try
+            {
+                value = values.containsKey(name) ? Long.parseLong(values.get(name)) : defaultValue;
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException(String.format("generator parameter %s of %s must be an integer",
+                    name, uri), e);
+            }
+            if (value < min || value > max)
+            {
+                throw new IllegalArgumentException(String.format("generator parameter %s of %s must be in [%d, %d]",
+                    name, uri, min, max));
+            }
+            return value;
+        }
+
+        public double getDouble(String name, double defaultValue, double min, double max)
+        {
+            used.add(name);
+            final double value;
+            try
+            {
+                value = values.containsKey(name) ? Double.parseDouble(values.get(name)) : defaultValue;
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException(String.format("generator parameter %s of %s must be a number",
+                    name, uri), e);
+            }
+            if (!(value >= min && value <= max))
+            {
+                throw new IllegalArgumentException(String.format("generator parameter %s of %s must be in [%s, %s]",
+                    name, uri, min, max));
+            }
+            return value;
+        }
+
+        public boolean getBoolean(String name, boolean defaultValue)
+        {
+            used.add(name);
+            return values.containsKey(name) ? Boolean.parseBoolean(values.get(name)) : defaultValue;
+        }
+
+        void checkAllUsed()
+        {
+            final Set<String> unknown = new HashSet<String>(values.keySet());
+            unknown.removeAll(used);
+            if (!unknown.isEmpty())
+            {
+                throw new IllegalArgumentException("unknown generator parameters " + unknown + " in " + uri);
+            }
+        }
+    }
+}
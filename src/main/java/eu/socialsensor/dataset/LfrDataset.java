@@ -0,0 +1,155 @@
+package eu.socialsensor.dataset;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * Graphs with planted communities in the style of the LFR benchmark: the number of edges of each node and the sizes
+ * of the communities follow power laws, and a fraction of the edges of every node, the mixing, link outside its
+ * community. Unlike LFR, the degree sequence is only matched in expectation, so that edges can be generated one node
+ * at a time. Communities are ranges of consecutive node ids. Parameters:
+ * <ul>
+ * <li>nodes - number of nodes (default 1000000)</li>
+ * <li>edge-factor - mean edges per node, each node being the source of at least one (default 16)</li>
+ * <li>degree-exponent - of the power law of the edges per node, more than 2 (default 2.5)</li>
+ * <li>max-degree - most edges per node (default 50 times edge-factor)</li>
+ * <li>community-exponent - of the power law of the community sizes (default 1.5)</li>
+ * <li>min-community, max-community - smallest and largest community sizes (default 20 and 1000)</li>
+ * <li>mixing - fraction of edges that leave their community (default 0.1)</li>
+ * <li>seed - of the generator (default 1)</li>
+ * </ul>
+ */
+public class LfrDataset extends GeneratedDataset
+{
+    public static final String MODEL = "lfr";
+
+    private final long edgeFactor;
+    private final double degreeExponent;
+    private final int maxDegree;
+    private final double mixing;
+    // the first node of every community, in increasing order
+    private final int[] communityStarts;
+
+    LfrDataset(Parameters parameters, Random random, int randomNodeSetSize)
+    {
+        super(parameters, random, randomNodeSetSize);
+        this.edgeFactor = parameters.getLong(EDGE_FACTOR, 16, 1, nodes - 1);
+        this.degreeExponent = parameters.getDouble("degree-exponent", 2.5, Math.nextUp(2.0), 10);
+        this.maxDegree = (int) parameters.getLong("max-degree", Math.min(nodes - 1, 50 * edgeFactor), edgeFactor,
+            nodes - 1);
+        final double communityExponent = parameters.getDouble("community-exponent", 1.5, 1, 10);
+        final int minCommunity = (int) parameters.getLong("min-community", Math.min(20, nodes), 1, nodes);
+        final int maxCommunity = (int) parameters.getLong("max-community", Math.min(1000, nodes), minCommunity,
+            nodes);
+        this.mixing = parameters.getDouble("mixing", 0.1, 0, 1);
+        this.communityStarts = communityStarts(new SplittableRandom(mix(seed)), communityExponent, minCommunity,
+            maxCommunity);
+    }
+
+    private int[] communityStarts(SplittableRandom random, double exponent, int min, int max)
+    {
+        final IntArrayList starts = new IntArrayList();
+        int start = 0;
+        while (start < nodes)
+        {
+            int size = (int) Math.min(powerLaw(random, min, exponent), max);
+            if (nodes - start - size < min)
+            {
+                // too few nodes left for another community
+                size = nodes - start;
+            }
+            starts.add(start);
+            start += size;
+        }
+        return starts.toArray();
+    }
+
+    /**
+     * @return a draw from the power law with the exponent over [min, infinity)
+     */
+    private static double powerLaw(SplittableRandom random, double min, double exponent)
+    {
+        if (exponent == 1)
+        {
+            return min / (1 - random.nextDouble());
+        }
+        return min * Math.pow(1 - random.nextDouble(), -1 / (exponent - 1));
+    }
+
+    public int getCommunities()
+    {
+        return communityStarts.length;
+    }
+
+    /**
+     * @return the community of the node, numbered from zero
+     */
+    public int communityOf(int node)
+    {
+        final int position = Arrays.binarySearch(communityStarts, node);
+        return position >= 0 ? position : -position - 2;
+    }
+
+    @Override
+    public long getEdges()
+    {
+        return nodes * edgeFactor;
+    }
+
+    @Override
+    protected int randomNode(Random random)
+    {
+        return random.nextInt(nodes);
+    }
+
+    @Override
+    public Iterator<List<String>> iterator()
+    {
+        // the mean of a power law over [min, infinity) is min (exponent - 1) / (exponent - 2)
+        final double minDegree = edgeFactor * (degreeExponent - 2) / (degreeExponent - 1);
+        return new AbstractIterator<List<String>>() {
+            private final SplittableRandom random = new SplittableRandom(mix(seed + 1));
+            private int node = -1;
+            private int community;
+            private int communityStart;
+            private int communitySize;
+            private int remaining = 0;
+
+            @Override
+            protected List<String> computeNext()
+            {
+                while (remaining == 0)
+                {
+                    if (++node == nodes)
+                    {
+                        return endOfData();
+                    }
+                    if (community + 1 < communityStarts.length && node == communityStarts[community + 1])
+                    {
+                        community++;
+                    }
+                    communityStart = communityStarts[community];
+                    communitySize = (community + 1 < communityStarts.length ? communityStarts[community + 1] : nodes)
+                        - communityStart;
+                    remaining = (int) Math.max(1, Math.min(maxDegree, Math.round(powerLaw(random, minDegree,
+                        degreeExponent))));
+                }
+                remaining--;
+                int target;
+                do
+                {
+                    target = communitySize > 1 && random.nextDouble() >= mixing ? communityStart + random.nextInt(
+                        communitySize) : random.nextInt(nodes);
+                }
+                while (target == node);
+                return edge(node, target);
+            }
+        };
+    }
+}
@@ -0,0 +1,148 @@
+package eu.socialsensor.dataset;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * R-MAT graphs, the stochastic Kronecker graphs of a 2x2 initiator matrix as in Graph500. Each edge descends the
+ * adjacency matrix one bit of the node ids at a time, into the top left, top right, bottom left or bottom right
+ * quadrant with probabilities a, b, c and 1 - a - b - c, so the more a exceeds a quarter the more the edges
+ * concentrate on hubs. Parameters:
+ * <ul>
+ * <li>nodes - number of nodes (default 1000000)</li>
+ * <li>edge-factor - edges per node (default 16)</li>
+ * <li>a, b, c - skew of the initiator matrix (default 0.57, 0.19, 0.19)</li>
+ * <li>scramble - permute node ids, so that hubs are not the lowest ids (default true)</li>
+ * <li>seed - of the generator (default 1)</li>
+ * </ul>
+ * Every edge is generated from the seed and its index alone, so the edges need no state but their count and the
+ * random nodes are drawn from the sources of random edges.
+ */
+public class RmatDataset extends GeneratedDataset
+{
+    public static final String MODEL = "rmat";
+
+    private final long edges;
+    private final int scale;
+    private final long mask;
+    private final double a;
+    private final double ab;
+    private final double abc;
+    private final boolean scramble;
+
+    RmatDataset(Parameters parameters, Random random, int randomNodeSetSize)
+    {
+        super(parameters, random, randomNodeSetSize);
+        this.edges = parameters.getLong(EDGE_FACTOR, 16, 1, Long.MAX_VALUE / nodes) * nodes;
+        this.a = parameters.getDouble("a", 0.57, 0, 1);
+        final double b = parameters.getDouble("b", 0.19, 0, 1);
+        final double c = parameters.getDouble("c", 0.19, 0, 1);
+        if (a + b + c > 1)
+        {
+            throw new IllegalArgumentException("generator parameters a, b and c must not sum to more than 1");
+        }
+        this.ab = a + b;
+        this.abc = a + b + c;
+        this.scramble = parameters.getBoolean("scramble", true);
+        this.scale = 64 - Long.numberOfLeadingZeros(nodes - 1);
+        this.mask = (1L << scale) - 1;
+    }
+
+    @Override
+    public long getEdges()
+    {
+        return edges;
+    }
+
+    @Override
+    protected int randomNode(Random random)
+    {
+        return (int) source(generate((long) (random.nextDouble() * edges)));
+    }
+
+    @Override
+    public Iterator<List<String>> iterator()
+    {
+        return new AbstractIterator<List<String>>() {
+            private long index = 0;
+
+            @Override
+            protected List<String> computeNext()
+            {
+                if (index == edges)
+                {
+                    return endOfData();
+                }
+                final long edge = generate(index++);
+                return edge(source(edge), target(edge));
+            }
+        };
+    }
+
+    private long source(long edge)
+    {
+        return edge >>> 32;
+    }
+
+    private long target(long edge)
+    {
+        return edge & 0xffffffffL;
+    }
+
+    /**
+     * @return the source and target of the edge in the high and low 32 bits, drawn again while either is not a node
+     *         when the number of nodes is not a power of two
+     */
+    private long generate(long index)
+    {
+        final SplittableRandom random = new SplittableRandom(mix(seed ^ mix(index)));
+        while (true)
+        {
+            long src = 0;
+            long dst = 0;
+            for (int bit = 0; bit < scale; bit++)
+            {
+                final double r = random.nextDouble();
+                src <<= 1;
+                dst <<= 1;
+                if (r >= abc)
+                {
+                    src |= 1;
+                    dst |= 1;
+                }
+                else if (r >= ab)
+                {
+                    src |= 1;
+                }
+                else if (r >= a)
+                {
+                    dst |= 1;
+                }
+            }
+            if (scramble)
+            {
+                src = permute(src);
+                dst = permute(dst);
+            }
+            if (src < nodes && dst < nodes)
+            {
+                return src << 32 | dst;
+            }
+        }
+    }
+
+    /**
+     * A bijection of the ids of scale bits: multiplying by an odd number and xoring in the high bits are both
+     * invertible modulo a power of two.
+     */
+    private long permute(long id)
+    {
+        long permuted = (id * 0x9e3779b97f4a7c15L + (seed | 1)) & mask;
+        permuted ^= permuted >>> ((scale + 1) / 2);
+        return (permuted * 0xbf58476d1ce4e5b9L) & mask;
+    }
+}
@@ -1,6 +1,7 @@
 package eu.socialsensor.graphdatabases;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -86,6 +87,29 @@ public interface GraphDatabase<VertexIteratorType, EdgeIteratorType, VertexType,
      */
     public void shortestPath(final VertexType fromNode, Integer toNode);
 
+    /**
+     * Looks up vertexes by node id, one thread per row of node ids, each in its own read transaction.
+     *
+     * @param nodeIds
+     *            the node ids each thread looks up, in order
+     */
+    public void findVertices(int[][] nodeIds);
+
+    /**
+     * Begins a unit of work, such as a pass of an algorithm. Databases that scope transactions to units of work open
+     * one transaction that the calls on this thread join until endUnitOfWork, instead of each call beginning and
+     * committing its own. The other databases do nothing.
+     */
+    public void beginUnitOfWork();
+
+    /**
+     * Ends the unit of work begun on this thread.
+     * 
+     * @param commit
+     *            whether to commit what the unit of work wrote since its last commit, rather than roll it back
+     */
+    public void endUnitOfWork(boolean commit);
+
     /**
      * @return the number of nodes
      */
@@ -97,12 +121,27 @@ public interface GraphDatabase<VertexIteratorType, EdgeIteratorType, VertexType,
      */
     public Set<Integer> getNeighborsIds(int nodeId);
 
+    /**
+     * @param nodeIds
+     * @return the neighbours of each of the nodes, keyed by node id. Lets databases that support it fetch the
+     *         adjacency of many nodes in few round-trips.
+     */
+    public Map<Integer, Set<Integer>> getNeighborsIds(Collection<Integer> nodeIds);
+
     /**
      * @param nodeId
      * @return the node degree
      */
     public double getNodeWeight(int nodeId);
 
+    /**
+     * @param nodeId
+     * @param iterate
+     *            whether to count the edges of the node one by one rather than ask the database for the count
+     * @return the node degree that getNodeWeight returns
+     */
+    public long getNodeDegree(int nodeId, boolean iterate);
+
     /**
      * Initializes the community and nodeCommunity property in each database
      */
@@ -1,18 +1,28 @@
 package eu.socialsensor.graphdatabases;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import org.apache.commons.logging.Log;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import eu.socialsensor.insert.Insertion;
+import eu.socialsensor.main.BenchmarkingException;
 import eu.socialsensor.main.GraphDatabaseBenchmark;
 import eu.socialsensor.main.GraphDatabaseType;
 
@@ -35,9 +45,16 @@ public abstract class GraphDatabaseBase<VertexIteratorType, EdgeIteratorType, Ve
     private final Timer shortestPathTimes;
     private final List<Integer> randomNodes;
     protected final int maxHops;
+    protected final int scanThreads;
+    // native ids by node id, null when the cache is off
+    private final VertexIdCache vertexIdCache;
+    // whether to count the graph to check the node and edge counts it keeps
+    private final boolean validateGraphMetadata;
+    private GraphMetadata graphMetadata = null;
 
     protected GraphDatabaseBase(GraphDatabaseType type, File dbStorageDirectory, List<Integer> randomNodes,
-                                int shortestPathMaxHops)
+                                int shortestPathMaxHops, int scanThreads, boolean vertexIdCache,
+                                boolean validateGraphMetadata)
     {
         this.type = type;
         final String queryTypeContext = type.getShortname() + QUERY_CONTEXT;
@@ -49,6 +66,9 @@ public abstract class GraphDatabaseBase<VertexIteratorType, EdgeIteratorType, Ve
         this.shortestPathTimes = GraphDatabaseBenchmark.metrics.timer(queryTypeContext + "shortestPath");
         this.randomNodes = randomNodes;
         this.maxHops = shortestPathMaxHops;
+        this.scanThreads = scanThreads;
+        this.vertexIdCache = vertexIdCache ? new VertexIdCache() : null;
+        this.validateGraphMetadata = validateGraphMetadata;
         
         this.dbStorageDirectory = dbStorageDirectory;
         if (!this.dbStorageDirectory.exists())
@@ -57,10 +77,29 @@ public abstract class GraphDatabaseBase<VertexIteratorType, EdgeIteratorType, Ve
         }
     }
     
+    @Override
+    public Map<Integer, Set<Integer>> getNeighborsIds(Collection<Integer> nodeIds) {
+        final Map<Integer, Set<Integer>> neighbours = new HashMap<Integer, Set<Integer>>();
+        for (Integer nodeId : nodeIds) {
+            neighbours.put(nodeId, getNeighborsIds(nodeId));
+        }
+        return neighbours;
+    }
+
     @Override
     public void findAllNodeNeighbours() {
+        final long nodeDegreeSum;
+        if (scanThreads > 1) {
+            nodeDegreeSum = scanPartitions(
+                (partition, partitions) -> countNodeNeighbours(getVertexIterator(partition, partitions)));
+        } else {
+            nodeDegreeSum = countNodeNeighbours(this.getVertexIterator());
+        }
+        LOG.debug("The sum of node degrees was " + nodeDegreeSum);
+    }
+
+    private long countNodeNeighbours(VertexIteratorType vertexIterator) {
         long nodeDegreeSum = 0;
-        VertexIteratorType vertexIterator =  this.getVertexIterator();
         while(vertexIteratorHasNext(vertexIterator)) {
             VertexType vertex;
             Timer.Context ctxt = nextVertexTimes.time();
@@ -99,23 +138,41 @@ public abstract class GraphDatabaseBase<VertexIteratorType, EdgeIteratorType, Ve
             this.cleanupEdgeIterator(edgeNeighborIterator);
         }
         this.cleanupVertexIterator(vertexIterator);
-        LOG.debug("The sum of node degrees was " + nodeDegreeSum);
+        return nodeDegreeSum;
     }
     
     @Override
     public void findNodesOfAllEdges() {
-        int edges = 0;
-        EdgeIteratorType edgeIterator;
-        Timer.Context ctxt = getAllEdgesTimes.time();
-        try {
-            edgeIterator = this.getAllEdges();
-        } finally {
-            ctxt.stop();
+        final long edges;
+        if (scanThreads > 1) {
+            edges = scanPartitions((partition, partitions) -> {
+                final EdgeIteratorType edgeIterator;
+                Timer.Context ctxt = getAllEdgesTimes.time();
+                try {
+                    edgeIterator = getAllEdges(partition, partitions);
+                } finally {
+                    ctxt.stop();
+                }
+                return countEdgeNodes(edgeIterator);
+            });
+        } else {
+            EdgeIteratorType edgeIterator;
+            Timer.Context ctxt = getAllEdgesTimes.time();
+            try {
+                edgeIterator = this.getAllEdges();
+            } finally {
+                ctxt.stop();
+            }
+            edges = countEdgeNodes(edgeIterator);
         }
+        LOG.debug("Counted " + edges + " edges");
+    }
 
+    private long countEdgeNodes(EdgeIteratorType edgeIterator) {
+        long edges = 0;
         while(edgeIteratorHasNext(edgeIterator)) {
             EdgeType edge;
-            ctxt = nextEdgeTimes.time();
+            Timer.Context ctxt = nextEdgeTimes.time();
             try {
                 edge = nextEdge(edgeIterator);
             } finally {
@@ -127,9 +184,190 @@ public abstract class GraphDatabaseBase<VertexIteratorType, EdgeIteratorType, Ve
             VertexType destination = this.getDestVertexFromEdge(edge);
             edges++;
         }
-        LOG.debug("Counted " + edges + " edges");
+        this.cleanupEdgeIterator(edgeIterator);
+        return edges;
+    }
+
+    /**
+     * Scans one partition of the graph and returns the number of elements visited.
+     */
+    protected interface ScanFunction {
+        long scan(int partition, int partitions);
+    }
+
+    /**
+     * Runs the scan over scanThreads disjoint partitions of the graph concurrently. Each partition is scanned on
+     * its own thread inside its own read transaction and the per-partition counts are summed at the end.
+     */
+    private long scanPartitions(final ScanFunction function) {
+        return scanPartitions(scanThreads, function);
+    }
+
+    private long scanPartitions(final int partitions, final ScanFunction function) {
+        final ExecutorService executor = Executors.newFixedThreadPool(partitions,
+            new ThreadFactoryBuilder().setNameFormat(type.getShortname() + "-scan-%d").build());
+        try {
+            final List<Future<Long>> futures = new ArrayList<>(partitions);
+            for (int i = 0; i < partitions; i++) {
+                final int partition = i;
+                futures.add(executor.submit(() -> inScanTransaction(() -> function.scan(partition, partitions))));
+            }
+            long total = 0;
+            for (Future<Long> future : futures) {
+                total += future.get();
+            }
+            return total;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BenchmarkingException("interrupted during partitioned scan", e);
+        } catch (ExecutionException e) {
+            throw new BenchmarkingException("partitioned scan failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs a partition scan inside a read transaction owned by the calling thread. Databases that bind
+     * transactions to threads override this to open and close one per scanning thread.
+     */
+    protected <T> T inScanTransaction(Callable<T> scan) throws Exception {
+        return scan.call();
+    }
+
+    /**
+     * @param partition
+     *            which partition to iterate, in [0, partitions)
+     * @param partitions
+     *            the number of disjoint partitions the vertex id space is split into
+     * @return an iterator over the vertexes of one partition. Called on the scanning thread.
+     */
+    protected VertexIteratorType getVertexIterator(int partition, int partitions) {
+        throw new UnsupportedOperationException(type.getShortname() + " does not support partitioned scans");
+    }
+
+    /**
+     * @param partition
+     *            which partition to iterate, in [0, partitions)
+     * @param partitions
+     *            the number of disjoint partitions the edge (or source vertex) id space is split into
+     * @return an iterator over the edges of one partition. Called on the scanning thread.
+     */
+    protected EdgeIteratorType getAllEdges(int partition, int partitions) {
+        throw new UnsupportedOperationException(type.getShortname() + " does not support partitioned scans");
+    }
+
+    /**
+     * Splits [0, highestId) into partitions contiguous ranges and returns the lower bound of the given one.
+     * The upper bound is the lower bound of the next partition.
+     */
+    protected static long partitionLowerBound(long highestId, int partition, int partitions) {
+        return highestId / partitions * partition + Math.min(partition, highestId % partitions);
     }
     
+    @Override
+    public void beginUnitOfWork() {
+        // NOOP
+    }
+
+    @Override
+    public void endUnitOfWork(boolean commit) {
+        // NOOP
+    }
+
+    @Override
+    public void findVertices(final int[][] nodeIds) {
+        final long found = scanPartitions(nodeIds.length, (partition, partitions) -> {
+            long vertexes = 0;
+            for (int nodeId : nodeIds[partition]) {
+                if (getVertex(nodeId) != null) {
+                    vertexes++;
+                }
+            }
+            return vertexes;
+        });
+        LOG.debug("Found " + found + " vertexes");
+    }
+
+    /**
+     * @return the native id of the vertex of the node id if the vertex id cache is on and has it, or -1
+     */
+    protected final long cachedNativeId(int nodeId) {
+        return vertexIdCache == null ? -1 : vertexIdCache.get(nodeId);
+    }
+
+    /**
+     * Remembers the native id of the vertex of the node id, if the vertex id cache is on.
+     */
+    protected final void cacheNativeId(int nodeId, long nativeId) {
+        if (vertexIdCache != null) {
+            vertexIdCache.put(nodeId, nativeId);
+        }
+    }
+
+    @Override
+    public int getNodeCount() {
+        return (int) getGraphMetadata().getNodes();
+    }
+
+    @Override
+    public double getGraphWeightSum() {
+        return getGraphMetadata().getEdges();
+    }
+
+    /**
+     * @return the counts that the store keeps, else the counts written when the graph was loaded, else the counts
+     *         of a full scan, which are then written for next time. In validation mode a full scan checks the kept
+     *         counts.
+     */
+    private GraphMetadata getGraphMetadata() {
+        if (graphMetadata != null) {
+            return graphMetadata;
+        }
+        GraphMetadata metadata = getStoreStatistics();
+        if (metadata == null) {
+            metadata = GraphMetadata.read(dbStorageDirectory);
+        }
+        if (metadata == null) {
+            LOG.info("No graph metadata for " + type.getShortname() + ", counting nodes and edges");
+            metadata = new GraphMetadata(countNodes(), countEdges());
+            metadata.write(dbStorageDirectory);
+        } else if (validateGraphMetadata) {
+            final GraphMetadata counted = new GraphMetadata(countNodes(), countEdges());
+            if (!counted.equals(metadata)) {
+                throw new BenchmarkingException(type.getShortname() + " graph metadata has " + metadata
+                    + " but the graph has " + counted);
+            }
+            LOG.info("Validated graph metadata of " + type.getShortname() + ": " + metadata);
+        }
+        graphMetadata = metadata;
+        return metadata;
+    }
+
+    /**
+     * Writes the counts of what a load inserted next to the database.
+     */
+    protected final void recordGraphMetadata(Insertion insertion) {
+        insertion.getGraphMetadata().write(dbStorageDirectory);
+    }
+
+    /**
+     * @return the node and edge counts that the store itself keeps, or null if it keeps none
+     */
+    protected GraphMetadata getStoreStatistics() {
+        return null;
+    }
+
+    /**
+     * @return the number of nodes, counted one by one
+     */
+    protected abstract long countNodes();
+
+    /**
+     * @return the number of edges, counted one by one
+     */
+    protected abstract long countEdges();
+
     @Override
     public void shortestPaths() {
         //randomness of selected node comes from the hashing function of hash set
@@ -0,0 +1,116 @@
+package eu.socialsensor.graphdatabases;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import eu.socialsensor.main.BenchmarkingException;
+
+/**
+ * The number of nodes and of edges of a graph, written next to the database when the graph is loaded so that
+ * clustering does not have to count every vertex and edge before it starts.
+ */
+public class GraphMetadata
+{
+    private static final String FILE_NAME = "graph-metadata.properties";
+    private static final String NODES = "nodes";
+    private static final String EDGES = "edges";
+
+    private final long nodes;
+    private final long edges;
+
+    public GraphMetadata(long nodes, long edges)
+    {
+        this.nodes = nodes;
+        this.edges = edges;
+    }
+
+    public long getNodes()
+    {
+        return nodes;
+    }
+
+    public long getEdges()
+    {
+        return edges;
+    }
+
+    /**
+     * Writes the counts to the directory, replacing the file atomically.
+     */
+    public void write(File directory)
+    {
+        final Properties properties = new Properties();
+        properties.setProperty(NODES, Long.toString(nodes));
+        properties.setProperty(EDGES, Long.toString(edges));
+        final File file = new File(directory, FILE_NAME);
+        final File partial = new File(file.getAbsolutePath() + ".partial");
+        try (OutputStream out = Files.newOutputStream(partial.toPath()))
+        {
+            properties.store(out, null /* comments */);
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("unable to write graph metadata to " + partial, e);
+        }
+        try
+        {
+            Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("unable to replace graph metadata " + file, e);
+        }
+    }
+
+    /**
+     * @return the counts written to the directory, or null if none were
+     */
+    public static GraphMetadata read(File directory)
+    {
+        final File file = new File(directory, FILE_NAME);
+        if (!file.exists())
+        {
+            return null;
+        }
+        final Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file.toPath()))
+        {
+            properties.load(in);
+            return new GraphMetadata(Long.parseLong(properties.getProperty(NODES)),
+                Long.parseLong(properties.getProperty(EDGES)));
+        }
+        catch (IOException | NumberFormatException e)
+        {
+            throw new BenchmarkingException("unable to read graph metadata from " + file, e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object other)
+    {
+        if (!(other instanceof GraphMetadata))
+        {
+            return false;
+        }
+        final GraphMetadata that = (GraphMetadata) other;
+        return nodes == that.nodes && edges == that.edges;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Long.hashCode(nodes) * 31 + Long.hashCode(edges);
+    }
+
+    @Override
+    public String toString()
+    {
+        return nodes + " nodes and " + edges + " edges";
+    }
+}
@@ -0,0 +1,340 @@
+package eu.socialsensor.graphdatabases;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
+
+import eu.socialsensor.main.BenchmarkingException;
+
+/**
+ * A directed multigraph held in primitive arrays on the heap. Nodes are numbered densely in the order they were
+ * created; edges are appended to an edge list and, the first time the graph is read after a change, sorted into
+ * compressed sparse rows by source, with a second index of the edges by target. An edge is named by its position in
+ * the rows by source. There are no transactions and no locks: loading is single threaded and reads of a sealed
+ * graph are safe from any number of threads.
+ */
+public class MemoryGraph
+{
+    private static final int MAGIC = 0x4d454d47;
+    private static final int VERSION = 1;
+
+    // dataset node id to dense node index, and back
+    private final IntIntHashMap indexes = new IntIntHashMap();
+    private final IntArrayList nodeIds = new IntArrayList();
+    // edges in the order they were added, as dense node indexes
+    private final IntArrayList sources = new IntArrayList();
+    private final IntArrayList targets = new IntArrayList();
+    private boolean modified = false;
+
+    // compressed sparse rows, null until the graph is sealed; the offsets are assigned last to publish the rest
+    private volatile int[] outOffsets;
+    private int[] outTargets;
+    private int[] edgeSources;
+    private int[] inOffsets;
+    private int[] inEdges;
+
+    /**
+     * @return the index of the node with the dataset id, created if there is none
+     */
+    public int getOrCreateNode(int nodeId)
+    {
+        final int slot = indexes.indexOf(nodeId);
+        if (indexes.indexExists(slot))
+        {
+            return indexes.indexGet(slot);
+        }
+        final int index = nodeIds.size();
+        indexes.indexInsert(slot, nodeId, index);
+        nodeIds.add(nodeId);
+        changed();
+        return index;
+    }
+
+    public void addEdge(int source, int target)
+    {
+        sources.add(source);
+        targets.add(target);
+        changed();
+    }
+
+    private void changed()
+    {
+        modified = true;
+        outOffsets = null;
+    }
+
+    /**
+     * @return the index of the node with the dataset id, or -1 if there is none
+     */
+    public int indexOf(int nodeId)
+    {
+        return indexes.getOrDefault(nodeId, -1);
+    }
+
+    public int nodeId(int index)
+    {
+        return nodeIds.get(index);
+    }
+
+    public int nodeCount()
+    {
+        return nodeIds.size();
+    }
+
+    public int edgeCount()
+    {
+        return sources.size();
+    }
+
+    /**
+     * Builds the rows by source and by target if the graph changed since they were last built. Every read below
+     * expects a sealed graph.
+     */
+    public void seal()
+    {
+        if (outOffsets == null)
+        {
+            buildRows();
+        }
+    }
+
+    private synchronized void buildRows()
+    {
+        if (outOffsets != null)
+        {
+            return;
+        }
+        final int nodes = nodeIds.size();
+        final int edges = sources.size();
+        final int[] src = sources.buffer;
+        final int[] dst = targets.buffer;
+        final int[] out = new int[nodes + 1];
+        final int[] in = new int[nodes + 1];
+        for (int e = 0; e < edges; e++)
+        {
+            out[src[e] + 1]++;
+            in[dst[e] + 1]++;
+        }
+        for (int v = 0; v < nodes; v++)
+        {
+            out[v + 1] += out[v];
+            in[v + 1] += in[v];
+        }
+        final int[] outNext = Arrays.copyOf(out, nodes);
+        final int[] rowTargets = new int[edges];
+        final int[] rowSources = new int[edges];
+        for (int e = 0; e < edges; e++)
+        {
+            final int position = outNext[src[e]]++;
+            rowTargets[position] = dst[e];
+            rowSources[position] = src[e];
+        }
+        final int[] inNext = Arrays.copyOf(in, nodes);
+        final int[] byTarget = new int[edges];
+        for (int e = 0; e < edges; e++)
+        {
+            byTarget[inNext[rowTargets[e]]++] = e;
+        }
+        outTargets = rowTargets;
+        edgeSources = rowSources;
+        inOffsets = in;
+        inEdges = byTarget;
+        outOffsets = out;
+    }
+
+    public int firstOutEdge(int node)
+    {
+        return outOffsets[node];
+    }
+
+    public int endOutEdge(int node)
+    {
+        return outOffsets[node + 1];
+    }
+
+    public int outDegree(int node)
+    {
+        return outOffsets[node + 1] - outOffsets[node];
+    }
+
+    public int firstInEdge(int node)
+    {
+        return inOffsets[node];
+    }
+
+    public int endInEdge(int node)
+    {
+        return inOffsets[node + 1];
+    }
+
+    /**
+     * @return the edge at the position of the index of edges by target
+     */
+    public int inEdge(int position)
+    {
+        return inEdges[position];
+    }
+
+    public int source(int edge)
+    {
+        return edgeSources[edge];
+    }
+
+    public int target(int edge)
+    {
+        return outTargets[edge];
+    }
+
+    /**
+     * Breadth first search along out edges, which reuses its arrays from one search to the next, so one search runs at
+     * a time.
+     */
+    public static final class PathSearch
+    {
+        private int[] visited = new int[0];
+        private int visitStamp = 0;
+        private int[] queue = new int[0];
+
+        /**
+         * @return the number of edges on a shortest path of at least one edge from the node to the target, or -1 if
+         *         the target is more than maxHops edges away
+         */
+        public int hops(MemoryGraph graph, int from, int target, int maxHops)
+        {
+            final int nodes = graph.nodeCount();
+            if (visited.length < nodes)
+            {
+                visited = new int[nodes];
+                queue = new int[nodes];
+                visitStamp = 0;
+            }
+            if (++visitStamp == 0)
+            {
+                Arrays.fill(visited, 0);
+                visitStamp = 1;
+            }
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = from;
+            visited[from] = visitStamp;
+            for (int depth = 0; depth < maxHops && head < tail; depth++)
+            {
+                final int levelEnd = tail;
+                while (head < levelEnd)
+                {
+                    final int node = queue[head++];
+                    for (int e = graph.firstOutEdge(node); e < graph.endOutEdge(node); e++)
+                    {
+                        final int neighbour = graph.target(e);
+                        if (neighbour == target)
+                        {
+                            return depth + 1;
+                        }
+                        if (visited[neighbour] != visitStamp)
+                        {
+                            visited[neighbour] = visitStamp;
+                            queue[tail++] = neighbour;
+                        }
+                    }
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Writes the nodes and edges to the file if the graph changed since it was created or read, replacing the file
+     * atomically.
+     */
+    public void write(File file)
+    {
+        if (!modified)
+        {
+            return;
+        }
+        final File partial = new File(file.getAbsolutePath() + ".partial");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+            partial.toPath()), 1 << 16)))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nodeIds.size());
+            out.writeInt(sources.size());
+            for (int i = 0; i < nodeIds.size(); i++)
+            {
+                out.writeInt(nodeIds.get(i));
+            }
+            for (int e = 0; e < sources.size(); e++)
+            {
+                out.writeInt(sources.get(e));
+                out.writeInt(targets.get(e));
+            }
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("unable to write in-memory graph to " + partial, e);
+        }
+        try
+        {
+            Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("unable to replace in-memory graph " + file, e);
+        }
+        modified = false;
+    }
+
+    /**
+     * @return the graph written to the file, or an empty graph if there is no file
+     */
+    public static MemoryGraph read(File file)
+    {
+        final MemoryGraph graph = new MemoryGraph();
+        if (!file.exists())
+        {
+            return graph;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()),
+            1 << 16)))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            {
+                throw new BenchmarkingException(file + " is not an in-memory graph of this version");
+            }
+            final int nodes = in.readInt();
+            final int edges = in.readInt();
+            graph.indexes.ensureCapacity(nodes);
+            graph.nodeIds.ensureCapacity(nodes);
+            for (int i = 0; i < nodes; i++)
+            {
+                final int nodeId = in.readInt();
+                graph.indexes.put(nodeId, i);
+                graph.nodeIds.add(nodeId);
+            }
+            graph.sources.ensureCapacity(edges);
+            graph.targets.ensureCapacity(edges);
+            for (int e = 0; e < edges; e++)
+            {
+                graph.sources.add(in.readInt());
+                graph.targets.add(in.readInt());
+            }
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("unable to read in-memory graph from " + file, e);
+        }
+        graph.modified = false;
+        return graph;
+    }
+}
@@ -0,0 +1,565 @@
+package eu.socialsensor.graphdatabases;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import eu.socialsensor.graphdatabases.MemoryGraphDatabase.EdgeCursor;
+import eu.socialsensor.graphdatabases.MemoryGraphDatabase.NodeCursor;
+import eu.socialsensor.insert.Insertion;
+import eu.socialsensor.insert.MemoryInsertion;
+import eu.socialsensor.main.BenchmarkConfiguration;
+import eu.socialsensor.main.GraphDatabaseType;
+import eu.socialsensor.utils.Utils;
+
+/**
+ * Reference implementation over a {@link MemoryGraph}: every operation works on primitive arrays on the heap, with
+ * no transactions, properties or indexes in the way, so its times are a lower bound to report the other databases
+ * against. Vertexes are dense node indexes. Edge iterators are cursors that are returned as the edge they point at,
+ * so iterating allocates nothing per edge. The graph is written to the storage directory on shutdown so that the
+ * benchmarks after the load, which open the database again, find it.
+ * <p>
+ * Communities are kept in arrays as well. Every node of a node community is in the same community, so the community
+ * of a node is that of its node community, and moving a node community between communities is constant time.
+ */
+public class MemoryGraphDatabase extends GraphDatabaseBase<NodeCursor, EdgeCursor, Integer, EdgeCursor>
+{
+    private static final String GRAPH_FILE_NAME = "graph.bin";
+
+    private final File graphFile;
+    private final MemoryGraph graph;
+
+    // shortest path searches run one at a time
+    private final MemoryGraph.PathSearch pathSearch = new MemoryGraph.PathSearch();
+
+    // the node community of each node, and the nodes of each node community as compressed sparse rows
+    private int[] nodeCommunity;
+    private int[] nodeCommunityOffsets;
+    private int[] nodeCommunityNodes;
+    private double[] nodeCommunityWeight;
+    // the community of each node community, and the node communities of each community as doubly linked lists
+    private int[] communityOf;
+    private int[] firstNodeCommunity;
+    private int[] nextNodeCommunity;
+    private int[] previousNodeCommunity;
+    private int[] communitySize;
+    private int[] communityNodes;
+    private double[] communityWeight;
+
+    /**
+     * Iterates the nodes in a range of node indexes.
+     */
+    public static final class NodeCursor
+    {
+        private int next;
+        private final int end;
+
+        NodeCursor(int from, int end)
+        {
+            this.next = from;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Iterates a range of the rows by source and then a range of the index of edges by target. Points at the edge
+     * it returned last.
+     */
+    public static final class EdgeCursor
+    {
+        private int outNext;
+        private final int outEnd;
+        private int inNext;
+        private final int inEnd;
+        private int edge = -1;
+
+        EdgeCursor(int outFrom, int outEnd, int inFrom, int inEnd)
+        {
+            this.outNext = outFrom;
+            this.outEnd = outEnd;
+            this.inNext = inFrom;
+            this.inEnd = inEnd;
+        }
+    }
+
+    public MemoryGraphDatabase(BenchmarkConfiguration config, File dbStorageDirectoryIn)
+    {
+        super(GraphDatabaseType.MEMORY, dbStorageDirectoryIn, config.getRandomNodeList(),
+            config.getShortestPathMaxHops(), config.getScanThreads(), false /* vertexIdCache */,
+            config.isValidateGraphMetadata());
+        graphFile = new File(dbStorageDirectory, GRAPH_FILE_NAME);
+        graph = MemoryGraph.read(graphFile);
+        graph.seal();
+    }
+
+    @Override
+    public void massiveModeLoading(File dataPath)
+    {
+        final Insertion insertion = new MemoryInsertion(graph, null /* resultsPath */);
+        insertion.createGraph(dataPath, 0 /* scenarioNumber */);
+        recordGraphMetadata(insertion);
+    }
+
+    @Override
+    public void singleModeLoading(File dataPath, File resultsPath, int scenarioNumber)
+    {
+        final Insertion insertion = new MemoryInsertion(graph, resultsPath);
+        insertion.createGraph(dataPath, scenarioNumber);
+        recordGraphMetadata(insertion);
+    }
+
+    @Override
+    public void shutdown()
+    {
+        graph.write(graphFile);
+    }
+
+    @Override
+    public void delete()
+    {
+        Utils.deleteRecursively(dbStorageDirectory);
+    }
+
+    @Override
+    public void shutdownMassiveGraph()
+    {
+        shutdown();
+    }
+
+    /**
+     * Breadth first search along out edges, up to maxHops deep.
+     */
+    @Override
+    public void shortestPath(Integer fromNode, Integer toNode)
+    {
+        final int target = graph.indexOf(toNode);
+        if (target < 0)
+        {
+            return;
+        }
+        pathSearch.hops(graph, fromNode, target, maxHops);
+    }
+
+    @Override
+    protected GraphMetadata getStoreStatistics()
+    {
+        return new GraphMetadata(graph.nodeCount(), graph.edgeCount());
+    }
+
+    @Override
+    protected long countNodes()
+    {
+        return graph.nodeCount();
+    }
+
+    @Override
+    public Set<Integer> getNeighborsIds(int nodeId)
+    {
+        final int node = getVertex(nodeId);
+        final Set<Integer> neighbours = new HashSet<Integer>();
+        for (int e = graph.firstOutEdge(node); e < graph.endOutEdge(node); e++)
+        {
+            neighbours.add(graph.nodeId(graph.target(e)));
+        }
+        return neighbours;
+    }
+
+    @Override
+    public double getNodeWeight(int nodeId)
+    {
+        return graph.outDegree(getVertex(nodeId));
+    }
+
+    /**
+     * The degree is the distance between the offsets of the node and the next one, so there is nothing to iterate.
+     */
+    @Override
+    public long getNodeDegree(int nodeId, boolean iterate)
+    {
+        return graph.outDegree(getVertex(nodeId));
+    }
+
+    @Override
+    public void initCommunityProperty()
+    {
+        final int nodes = graph.nodeCount();
+        nodeCommunity = new int[nodes];
+        for (int node = 0; node < nodes; node++)
+        {
+            nodeCommunity[node] = node;
+        }
+        initCommunities(nodes);
+    }
+
+    @Override
+    public int reInitializeCommunities()
+    {
+        // number the communities in the order their first node is met, as the other databases do
+        final int[] renumbered = new int[communityOf.length];
+        Arrays.fill(renumbered, -1);
+        int communityCounter = 0;
+        for (int node = 0; node < nodeCommunity.length; node++)
+        {
+            final int community = communityOf[nodeCommunity[node]];
+            if (renumbered[community] < 0)
+            {
+                renumbered[community] = communityCounter++;
+            }
+            nodeCommunity[node] = renumbered[community];
+        }
+        initCommunities(communityCounter);
+        return communityCounter;
+    }
+
+    /**
+     * Puts every node community in a community of its own, numbered as the node community.
+     */
+    private void initCommunities(int count)
+    {
+        nodeCommunityOffsets = new int[count + 1];
+        for (int community : nodeCommunity)
+        {
+            nodeCommunityOffsets[community + 1]++;
+        }
+        for (int c = 0; c < count; c++)
+        {
+            nodeCommunityOffsets[c + 1] += nodeCommunityOffsets[c];
+        }
+        final int[] next = Arrays.copyOf(nodeCommunityOffsets, count);
+        nodeCommunityNodes = new int[nodeCommunity.length];
+        nodeCommunityWeight = new double[count];
+        for (int node = 0; node < nodeCommunity.length; node++)
+        {
+            nodeCommunityNodes[next[nodeCommunity[node]]++] = node;
+            nodeCommunityWeight[nodeCommunity[node]] += graph.outDegree(node);
+        }
+
+        communityOf = new int[count];
+        firstNodeCommunity = new int[count];
+        nextNodeCommunity = new int[count];
+        previousNodeCommunity = new int[count];
+        communitySize = new int[count];
+        communityNodes = new int[count];
+        communityWeight = new double[count];
+        for (int c = 0; c < count; c++)
+        {
+            communityOf[c] = c;
+            firstNodeCommunity[c] = c;
+            nextNodeCommunity[c] = -1;
+            previousNodeCommunity[c] = -1;
+            communitySize[c] = 1;
+            communityNodes[c] = nodeCommunityOffsets[c + 1] - nodeCommunityOffsets[c];
+            communityWeight[c] = nodeCommunityWeight[c];
+        }
+    }
+
+    private boolean isCommunity(int community)
+    {
+        return communityOf != null && community >= 0 && community < communityOf.length;
+    }
+
+    @Override
+    public Set<Integer> getCommunitiesConnectedToNodeCommunities(int nodeCommunities)
+    {
+        final Set<Integer> communities = new HashSet<Integer>();
+        if (!isCommunity(nodeCommunities))
+        {
+            return communities;
+        }
+        for (int i = nodeCommunityOffsets[nodeCommunities]; i < nodeCommunityOffsets[nodeCommunities + 1]; i++)
+        {
+            final int node = nodeCommunityNodes[i];
+            for (int e = graph.firstOutEdge(node); e < graph.endOutEdge(node); e++)
+            {
+                communities.add(communityOf[nodeCommunity[graph.target(e)]]);
+            }
+        }
+        return communities;
+    }
+
+    @Override
+    public Set<Integer> getNodesFromCommunity(int community)
+    {
+        final Set<Integer> nodes = new HashSet<Integer>();
+        if (!isCommunity(community))
+        {
+            return nodes;
+        }
+        for (int nc = firstNodeCommunity[community]; nc >= 0; nc = nextNodeCommunity[nc])
+        {
+            for (int i = nodeCommunityOffsets[nc]; i < nodeCommunityOffsets[nc + 1]; i++)
+            {
+                nodes.add(graph.nodeId(nodeCommunityNodes[i]));
+            }
+        }
+        return nodes;
+    }
+
+    @Override
+    public Set<Integer> getNodesFromNodeCommunity(int nodeCommunity)
+    {
+        final Set<Integer> nodes = new HashSet<Integer>();
+        if (!isCommunity(nodeCommunity))
+        {
+            return nodes;
+        }
+        for (int i = nodeCommunityOffsets[nodeCommunity]; i < nodeCommunityOffsets[nodeCommunity + 1]; i++)
+        {
+            nodes.add(graph.nodeId(nodeCommunityNodes[i]));
+        }
+        return nodes;
+    }
+
+    @Override
+    public double getEdgesInsideCommunity(int nodeCommunity, int communityNodes)
+    {
+        if (!isCommunity(nodeCommunity))
+        {
+            return 0;
+        }
+        double edges = 0;
+        for (int i = nodeCommunityOffsets[nodeCommunity]; i < nodeCommunityOffsets[nodeCommunity + 1]; i++)
+        {
+            final int node = nodeCommunityNodes[i];
+            for (int e = graph.firstOutEdge(node); e < graph.endOutEdge(node); e++)
+            {
+                if (communityOf[this.nodeCommunity[graph.target(e)]] == communityNodes)
+                {
+                    edges++;
+                }
+            }
+        }
+        return edges;
+    }
+
+    @Override
+    public double getCommunityWeight(int community)
+    {
+        // as in the other databases, a community of a single node weighs nothing
+        return isCommunity(community) && communityNodes[community] > 1 ? communityWeight[community] : 0;
+    }
+
+    @Override
+    public double getNodeCommunityWeight(int nodeCommunity)
+    {
+        return isCommunity(nodeCommunity) ? nodeCommunityWeight[nodeCommunity] : 0;
+    }
+
+    @Override
+    public void moveNode(int nodeCommunity, int toCommunity)
+    {
+        if (!isCommunity(nodeCommunity) || !isCommunity(toCommunity))
+        {
+            return;
+        }
+        final int from = communityOf[nodeCommunity];
+        if (from == toCommunity)
+        {
+            return;
+        }
+        // unlink from the node communities of the old community
+        final int previous = previousNodeCommunity[nodeCommunity];
+        final int next = nextNodeCommunity[nodeCommunity];
+        if (previous >= 0)
+        {
+            nextNodeCommunity[previous] = next;
+        }
+        else
+        {
+            firstNodeCommunity[from] = next;
+        }
+        if (next >= 0)
+        {
+            previousNodeCommunity[next] = previous;
+        }
+        // and link in front of those of the new one
+        previousNodeCommunity[nodeCommunity] = -1;
+        nextNodeCommunity[nodeCommunity] = firstNodeCommunity[toCommunity];
+        if (firstNodeCommunity[toCommunity] >= 0)
+        {
+            previousNodeCommunity[firstNodeCommunity[toCommunity]] = nodeCommunity;
+        }
+        firstNodeCommunity[toCommunity] = nodeCommunity;
+
+        final int size = nodeCommunityOffsets[nodeCommunity + 1] - nodeCommunityOffsets[nodeCommunity];
+        communitySize[from]--;
+        communitySize[toCommunity]++;
+        communityNodes[from] -= size;
+        communityNodes[toCommunity] += size;
+        communityWeight[from] -= nodeCommunityWeight[nodeCommunity];
+        communityWeight[toCommunity] += nodeCommunityWeight[nodeCommunity];
+        communityOf[nodeCommunity] = toCommunity;
+    }
+
+    @Override
+    protected long countEdges()
+    {
+        return graph.edgeCount();
+    }
+
+    @Override
+    public int getCommunity(int nodeCommunity)
+    {
+        if (!isCommunity(nodeCommunity))
+        {
+            throw new NoSuchElementException("no node community " + nodeCommunity);
+        }
+        return communityOf[nodeCommunity];
+    }
+
+    @Override
+    public int getCommunityFromNode(int nodeId)
+    {
+        return communityOf[nodeCommunity[getVertex(nodeId)]];
+    }
+
+    @Override
+    public int getCommunitySize(int community)
+    {
+        return isCommunity(community) ? communitySize[community] : 0;
+    }
+
+    @Override
+    public Map<Integer, List<Integer>> mapCommunities(int numberOfCommunities)
+    {
+        final Map<Integer, List<Integer>> communities = new HashMap<Integer, List<Integer>>();
+        for (int i = 0; i < numberOfCommunities; i++)
+        {
+            communities.put(i, new ArrayList<Integer>());
+        }
+        for (int node = 0; node < nodeCommunity.length; node++)
+        {
+            final int community = communityOf[nodeCommunity[node]];
+            if (community < numberOfCommunities)
+            {
+                communities.get(community).add(graph.nodeId(node));
+            }
+        }
+        return communities;
+    }
+
+    @Override
+    public NodeCursor getVertexIterator()
+    {
+        return new NodeCursor(0, graph.nodeCount());
+    }
+
+    @Override
+    protected NodeCursor getVertexIterator(int partition, int partitions)
+    {
+        final int nodes = graph.nodeCount();
+        return new NodeCursor((int) partitionLowerBound(nodes, partition, partitions),
+            (int) partitionLowerBound(nodes, partition + 1, partitions));
+    }
+
+    @Override
+    public boolean vertexIteratorHasNext(NodeCursor it)
+    {
+        return it.next < it.end;
+    }
+
+    @Override
+    public Integer nextVertex(NodeCursor it)
+    {
+        if (it.next >= it.end)
+        {
+            throw new NoSuchElementException();
+        }
+        return it.next++;
+    }
+
+    @Override
+    public void cleanupVertexIterator(NodeCursor it)
+    {
+        // NOOP
+    }
+
+    @Override
+    public EdgeCursor getAllEdges()
+    {
+        return new EdgeCursor(0, graph.edgeCount(), 0, 0);
+    }
+
+    /**
+     * Every edge is visited once, from the partition of its source.
+     */
+    @Override
+    protected EdgeCursor getAllEdges(int partition, int partitions)
+    {
+        final int nodes = graph.nodeCount();
+        return new EdgeCursor(graph.firstOutEdge((int) partitionLowerBound(nodes, partition, partitions)),
+            graph.firstOutEdge((int) partitionLowerBound(nodes, partition + 1, partitions)), 0, 0);
+    }
+
+    @Override
+    public EdgeCursor getNeighborsOfVertex(Integer v)
+    {
+        return new EdgeCursor(graph.firstOutEdge(v), graph.endOutEdge(v), graph.firstInEdge(v), graph.endInEdge(v));
+    }
+
+    @Override
+    public boolean edgeIteratorHasNext(EdgeCursor it)
+    {
+        return it.outNext < it.outEnd || it.inNext < it.inEnd;
+    }
+
+    @Override
+    public EdgeCursor nextEdge(EdgeCursor it)
+    {
+        if (it.outNext < it.outEnd)
+        {
+            it.edge = it.outNext++;
+        }
+        else if (it.inNext < it.inEnd)
+        {
+            it.edge = graph.inEdge(it.inNext++);
+        }
+        else
+        {
+            throw new NoSuchElementException();
+        }
+        return it;
+    }
+
+    @Override
+    public void cleanupEdgeIterator(EdgeCursor it)
+    {
+        // NOOP
+    }
+
+    @Override
+    public Integer getOtherVertexFromEdge(EdgeCursor edge, Integer oneVertex)
+    {
+        final int source = graph.source(edge.edge);
+        return source == oneVertex ? graph.target(edge.edge) : source;
+    }
+
+    @Override
+    public Integer getSrcVertexFromEdge(EdgeCursor edge)
+    {
+        return graph.source(edge.edge);
+    }
+
+    @Override
+    public Integer getDestVertexFromEdge(EdgeCursor edge)
+    {
+        return graph.target(edge.edge);
+    }
+
+    @Override
+    public Integer getVertex(Integer i)
+    {
+        final int node = graph.indexOf(i);
+        if (node < 0)
+        {
+            throw new NoSuchElementException("no node " + i);
+        }
+        return node;
+    }
+}
@@ -1,15 +1,19 @@
 package eu.socialsensor.graphdatabases;
 
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import eu.socialsensor.insert.Insertion;
 import eu.socialsensor.insert.Neo4jMassiveInsertion;
 import eu.socialsensor.insert.Neo4jSingleInsertion;
+import eu.socialsensor.main.BenchmarkConfiguration;
 import eu.socialsensor.main.BenchmarkingException;
 import eu.socialsensor.main.GraphDatabaseType;
 import eu.socialsensor.utils.Utils;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.apache.tinkerpop.gremlin.neo4j.structure.Neo4jGraph;
 import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
 import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
@@ -19,15 +23,20 @@ import org.neo4j.graphdb.DynamicLabel;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.graphdb.ResourceIterator;
 import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.TransactionFailureException;
 import org.neo4j.graphdb.schema.IndexCreator;
 import org.neo4j.graphdb.schema.IndexDefinition;
 import org.neo4j.graphdb.schema.Schema;
 import org.neo4j.helpers.collection.IteratorUtil;
+import org.neo4j.kernel.api.ReadOperations;
+import org.neo4j.kernel.api.Statement;
 import org.neo4j.kernel.api.exceptions.index.ExceptionDuringFlipKernelException;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
 import org.neo4j.tinkerpop.api.impl.Neo4jGraphAPIImpl;
 import org.neo4j.tooling.GlobalGraphOperations;
 import org.neo4j.unsafe.batchinsert.BatchInserter;
@@ -42,6 +51,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -52,10 +62,31 @@ import java.util.concurrent.TimeUnit;
  */
 public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterator<Relationship>, Node, Relationship>
 {
+    private static final Logger LOG = LogManager.getLogger();
+
     private final GraphDatabaseService neo4jGraph;
     private final Neo4jGraph neo4jTp;
     private final Schema schema;
     private final BatchInserter inserter;
+    private final ShortestPathTraversal shortestPathTraversal;
+    private final boolean unitOfWorkTransactions;
+    private final int commitEvery;
+    // the unit of work each thread is in, if any
+    private final ThreadLocal<UnitOfWork> unitsOfWork = new ThreadLocal<UnitOfWork>();
+
+    /**
+     * The transaction of a unit of work, and the number of properties written in it since it began.
+     */
+    private static final class UnitOfWork
+    {
+        private Transaction tx;
+        private long writes = 0;
+
+        UnitOfWork(Transaction tx)
+        {
+            this.tx = tx;
+        }
+    }
 
     public enum RelTypes implements RelationshipType
     {
@@ -64,13 +95,18 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
 
     public static Label NODE_LABEL = DynamicLabel.label("Node");
 
-    public Neo4jGraphDatabase(File dbStorageDirectoryIn, boolean batchLoading, List<Integer> randomNodes, int shortestPathMaxHops)
+    public Neo4jGraphDatabase(BenchmarkConfiguration bench, File dbStorageDirectoryIn, boolean batchLoading)
     {
-        super(GraphDatabaseType.NEO4J, dbStorageDirectoryIn, randomNodes, shortestPathMaxHops);
+        super(GraphDatabaseType.NEO4J, dbStorageDirectoryIn, bench.getRandomNodeList(),
+            bench.getShortestPathMaxHops(), bench.getScanThreads(), bench.isVertexIdCache(),
+            bench.isValidateGraphMetadata());
+        unitOfWorkTransactions = bench.isNeo4jUnitOfWorkTransactions();
+        commitEvery = bench.getNeo4jCommitEvery();
         if(batchLoading) {
             neo4jGraph = null;
             neo4jTp = null;
             schema = null;
+            shortestPathTraversal = null;
 
             Map<String, String> config = new HashMap<String, String>();
             config.put("cache_type", "none");
@@ -93,6 +129,8 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
             inserter = null;
             neo4jTp = Neo4jGraph.open(dbStorageDirectory.getAbsolutePath());
             neo4jGraph = ((Neo4jGraphAPIImpl) neo4jTp.getBaseGraph()).getGraphDatabase();
+            shortestPathTraversal = new ShortestPathTraversal(neo4jTp, maxHops, bench.isGremlinTraversalReuse(),
+                bench.getGremlinDisabledStrategies(), type.getShortname() + QUERY_CONTEXT);
             try (final Transaction tx = neo4jGraph.beginTx())
             {
                 schema = neo4jGraph.schema();
@@ -133,6 +171,7 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
     {
         Insertion neo4jSingleInsertion = new Neo4jSingleInsertion(this.neo4jGraph, resultsPath);
         neo4jSingleInsertion.createGraph(dataPath, scenarioNumber);
+        recordGraphMetadata(neo4jSingleInsertion);
     }
 
     @Override
@@ -140,6 +179,7 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
     {
         Insertion neo4jMassiveInsertion = new Neo4jMassiveInsertion(this.inserter);
         neo4jMassiveInsertion.createGraph(dataPath, 0 /* scenarioNumber */);
+        recordGraphMetadata(neo4jMassiveInsertion);
     }
 
     @Override
@@ -218,6 +258,78 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
         }
     }
 
+    @Override
+    protected <T> T inScanTransaction(Callable<T> scan) throws Exception {
+        try (Transaction tx = neo4jGraph.beginTx()) {
+            final T result = scan.call();
+            tx.success();
+            return result;
+        }
+    }
+
+    @Override
+    protected Iterator<Node> getVertexIterator(int partition, int partitions) {
+        final long highId = getHighId(false /* relationships */);
+        final long lower = partitionLowerBound(highId, partition, partitions);
+        final long upper = partitionLowerBound(highId, partition + 1, partitions);
+        return new AbstractIterator<Node>() {
+            private long id = lower;
+
+            @Override
+            protected Node computeNext() {
+                while (id < upper) {
+                    try {
+                        return neo4jGraph.getNodeById(id++);
+                    } catch (NotFoundException e) {
+                        // id not in use, keep going
+                    }
+                }
+                return endOfData();
+            }
+        };
+    }
+
+    @Override
+    protected Iterator<Relationship> getAllEdges(int partition, int partitions) {
+        final long highId = getHighId(true /* relationships */);
+        final long lower = partitionLowerBound(highId, partition, partitions);
+        final long upper = partitionLowerBound(highId, partition + 1, partitions);
+        return new AbstractIterator<Relationship>() {
+            private long id = lower;
+
+            @Override
+            protected Relationship computeNext() {
+                while (id < upper) {
+                    try {
+                        return neo4jGraph.getRelationshipById(id++);
+                    } catch (NotFoundException e) {
+                        // id not in use, keep going
+                    }
+                }
+                return endOfData();
+            }
+        };
+    }
+
+    /**
+     * @return one past the highest record id the store has handed out for relationships or for nodes
+     */
+    @SuppressWarnings("deprecation")
+    private long getHighId(boolean relationships) {
+        return resolveKernelDependency(org.neo4j.kernel.IdGeneratorFactory.class).get(relationships
+            ? org.neo4j.kernel.IdType.RELATIONSHIP : org.neo4j.kernel.IdType.NODE).getHighId();
+    }
+
+    /**
+     * The only way into the kernel. Neo4j 2.3 has no public API for the high ids of the stores, which partition the
+     * scans, or for the count store, and GraphDatabaseAPI, through which the kernel hands them out, is deprecated in
+     * this version without a replacement.
+     */
+    @SuppressWarnings("deprecation")
+    private <T> T resolveKernelDependency(Class<T> type) {
+        return ((org.neo4j.kernel.GraphDatabaseAPI) neo4jGraph).getDependencyResolver().resolveDependency(type);
+    }
+
     @Override
     public void shortestPath(Node n1, Integer i)
     {
@@ -232,31 +344,16 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
 //        {
 //            length = path.length();
 //        }
-        final GraphTraversalSource g = neo4jTp.traversal();
-        final DepthPredicate maxDepth = new DepthPredicate(maxHops);
-        final Integer fromNodeId = (Integer) n1.getProperty(NODE_ID);
-        final GraphTraversal<?, org.apache.tinkerpop.gremlin.process.traversal.Path> t =
-                g.V().has(NODE_ID, fromNodeId)
-                        .repeat(
-                                __.out(SIMILAR)
-                                        .simplePath())
-                        .until(
-                                __.has(NODE_ID, i)
-                                        .and(__.filter( maxDepth ))
-                        )
-                        .limit(1)
-                        .path();
-
-        t.tryNext()
+        shortestPathTraversal.find(neo4jTp.vertices(n1.getId()).next(), i)
                 .ifPresent( it -> {
                     final int pathSize = it.size();
                 });
     }
 
     @Override
-    public int getNodeCount()
+    protected long countNodes()
     {
-        int nodeCount = 0;
+        long nodeCount = 0;
         try (final Transaction tx = neo4jGraph.beginTx())
         {
             try
@@ -274,6 +371,80 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
         return nodeCount;
     }
 
+    /**
+     * Opens the transaction of a unit of work if unit-of-work-transactions is set. The transactions that the
+     * methods of this class begin inside it are nested ones that join it, so they commit nothing themselves.
+     */
+    @Override
+    public void beginUnitOfWork()
+    {
+        if (!unitOfWorkTransactions || unitsOfWork.get() != null)
+        {
+            return;
+        }
+        unitsOfWork.set(new UnitOfWork(neo4jGraph.beginTx()));
+    }
+
+    @Override
+    public void endUnitOfWork(boolean commit)
+    {
+        final UnitOfWork unitOfWork = unitsOfWork.get();
+        if (unitOfWork == null)
+        {
+            return;
+        }
+        unitsOfWork.remove();
+        if (commit)
+        {
+            commit(unitOfWork);
+        }
+        else
+        {
+            unitOfWork.tx.failure();
+            unitOfWork.tx.close();
+        }
+    }
+
+    /**
+     * Counts the properties written in the unit of work of this thread, and if commit-every is set, commits it and
+     * begins a new transaction for it every commit-every of them so that a pass does not build one huge
+     * transaction. Called after the nested transaction of the write has closed.
+     */
+    private void wrote(long writes)
+    {
+        final UnitOfWork unitOfWork = unitsOfWork.get();
+        if (unitOfWork == null)
+        {
+            return;
+        }
+        unitOfWork.writes += writes;
+        if (commitEvery > 0 && unitOfWork.writes >= commitEvery)
+        {
+            commit(unitOfWork);
+            unitOfWork.tx = neo4jGraph.beginTx();
+            unitOfWork.writes = 0;
+        }
+    }
+
+    /**
+     * Commits the transaction of the unit of work. A nested transaction that called failure marks the whole
+     * transaction for rollback, so Neo4j rolls it back as it closes and throws; the unit of work then ends there.
+     */
+    private void commit(UnitOfWork unitOfWork)
+    {
+        unitOfWork.tx.success();
+        try
+        {
+            unitOfWork.tx.close();
+        }
+        catch (TransactionFailureException e)
+        {
+            unitsOfWork.remove();
+            throw new BenchmarkingException("a nested transaction failed, so the unit of work was rolled back to its "
+                + "last commit", e);
+        }
+    }
+
     @Override
     public Set<Integer> getNeighborsIds(int nodeId)
     {
@@ -282,12 +453,11 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
         {
             try
             {
-                Node n = neo4jGraph.findNodes(NODE_LABEL, NODE_ID, String.valueOf(nodeId)).next();
+                Node n = findNode(nodeId);
                 for (Relationship relationship : n.getRelationships(RelTypes.SIMILAR, Direction.OUTGOING))
                 {
                     Node neighbour = relationship.getOtherNode(n);
-                    String neighbourId = (String) neighbour.getProperty(NODE_ID);
-                    neighbors.add(Integer.valueOf(neighbourId));
+                    neighbors.add((Integer) neighbour.getProperty(NODE_ID));
                 }
                 tx.success();
             }
@@ -304,35 +474,44 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
     @Override
     public double getNodeWeight(int nodeId)
     {
-        double weight = 0;
+        return getNodeDegree(nodeId, false /* iterate */);
+    }
+
+    @Override
+    public long getNodeDegree(int nodeId, boolean iterate)
+    {
+        long degree = 0;
         try (final Transaction tx = neo4jGraph.beginTx())
         {
             try
             {
-                Node n = neo4jGraph.findNodes(NODE_LABEL, NODE_ID, String.valueOf(nodeId)).next();
-                weight = getNodeOutDegree(n);
+                Node n = findNode(nodeId);
+                degree = iterate ? IteratorUtil.count(n.getRelationships(Direction.INCOMING, RelTypes.SIMILAR))
+                    : n.getDegree(RelTypes.SIMILAR, Direction.INCOMING);
                 tx.success();
             }
             catch (Exception e)
             {
                 tx.failure();
-                throw new BenchmarkingException("unable to get node weight", e);
+                throw new BenchmarkingException("unable to get node degree", e);
             }
         }
 
-        return weight;
+        return degree;
     }
 
+    /**
+     * Node.getDegree reads the relationship count from the relationship groups of dense nodes instead of walking
+     * the relationship chain.
+     */
     public double getNodeInDegree(Node node)
     {
-        Iterable<Relationship> rel = node.getRelationships(Direction.OUTGOING, RelTypes.SIMILAR);
-        return (double) (IteratorUtil.count(rel));
+        return (double) node.getDegree(RelTypes.SIMILAR, Direction.OUTGOING);
     }
 
     public double getNodeOutDegree(Node node)
     {
-        Iterable<Relationship> rel = node.getRelationships(Direction.INCOMING, RelTypes.SIMILAR);
-        return (double) (IteratorUtil.count(rel));
+        return (double) node.getDegree(RelTypes.SIMILAR, Direction.INCOMING);
     }
 
     @Override
@@ -340,7 +519,6 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
     {
         int communityCounter = 0;
 
-        // maybe commit changes every 1000 transactions?
         try (final Transaction tx = neo4jGraph.beginTx())
         {
             try
@@ -359,6 +537,7 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
                 throw new BenchmarkingException("unable to initialize community property", e);
             }
         }
+        wrote(2L * communityCounter);
     }
 
     @Override
@@ -405,8 +584,7 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
                 while (iter.hasNext())
                 {
                     final Node n = iter.next();
-                    String nodeIdString = (String) (n.getProperty(NODE_ID));
-                    nodes.add(Integer.valueOf(nodeIdString));
+                    nodes.add((Integer) n.getProperty(NODE_ID));
                 }
                 tx.success();
             }
@@ -433,8 +611,7 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
                 while (iter.hasNext())
                 {
                     final Node n = iter.next();
-                    String nodeIdString = (String) (n.getProperty(NODE_ID));
-                    nodes.add(Integer.valueOf(nodeIdString));
+                    nodes.add((Integer) n.getProperty(NODE_ID));
                 }
                 tx.success();
             }
@@ -546,6 +723,7 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
     @Override
     public void moveNode(int nodeCommunity, int toCommunity)
     {
+        long moved = 0;
         try (final Transaction tx = neo4jGraph.beginTx())
         {
             try
@@ -556,6 +734,7 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
                 {
                     final Node node = fromIter.next();
                     node.setProperty(COMMUNITY, toCommunity);
+                    moved++;
                 }
                 tx.success();
             }
@@ -565,12 +744,45 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
                 throw new BenchmarkingException("unable to move node", e);
             }
         }
+        wrote(moved);
     }
 
+    /**
+     * Neo4j keeps the number of nodes and of relationships in its count store. The Cypher of this version still
+     * scans to count them, so they are read through the kernel. If the kernel can not be reached, the counts come
+     * from the metadata written by the load instead.
+     */
     @Override
-    public double getGraphWeightSum()
+    protected GraphMetadata getStoreStatistics()
     {
-        int edgeCount = 0;
+        if (neo4jGraph == null)
+        {
+            return null;
+        }
+        try (final Transaction tx = neo4jGraph.beginTx())
+        {
+            try (final Statement statement = resolveKernelDependency(ThreadToStatementContextBridge.class).get())
+            {
+                final ReadOperations read = statement.readOperations();
+                final GraphMetadata counts = new GraphMetadata(read.countsForNode(ReadOperations.ANY_LABEL),
+                    read.countsForRelationship(ReadOperations.ANY_LABEL, ReadOperations.ANY_RELATIONSHIP_TYPE,
+                        ReadOperations.ANY_LABEL));
+                tx.success();
+                return counts;
+            }
+            catch (Exception e)
+            {
+                tx.failure();
+                LOG.warn("unable to read the count store, falling back to the graph metadata file", e);
+                return null;
+            }
+        }
+    }
+
+    @Override
+    protected long countEdges()
+    {
+        long edgeCount = 0;
 
         try (final Transaction tx = neo4jGraph.beginTx())
         {
@@ -582,11 +794,11 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
             catch (Exception e)
             {
                 tx.failure();
-                throw new BenchmarkingException("unable to get graph weight sum", e);
+                throw new BenchmarkingException("unable to get edge count", e);
             }
         }
 
-        return (double) edgeCount;
+        return edgeCount;
     }
 
     @Override
@@ -594,6 +806,7 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
     {
         Map<Integer, Integer> initCommunities = new HashMap<Integer, Integer>();
         int communityCounter = 0;
+        long written = 0;
 
         try (final Transaction tx = neo4jGraph.beginTx())
         {
@@ -610,6 +823,7 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
                     int newCommunityId = initCommunities.get(communityId);
                     n.setProperty(COMMUNITY, newCommunityId);
                     n.setProperty(NODE_COMMUNITY, newCommunityId);
+                    written += 2;
                 }
                 tx.success();
             }
@@ -619,6 +833,7 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
                 throw new BenchmarkingException("unable to reinitialize communities", e);
             }
         }
+        wrote(written);
 
         return communityCounter;
     }
@@ -654,8 +869,7 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
         {
             try
             {
-                // Node node = nodeIndex.get(NODE_ID, nodeId).getSingle();
-                final Node node = neo4jGraph.findNodes(NODE_LABEL, NODE_ID, String.valueOf(nodeId)).next();
+                final Node node = findNode(nodeId);
                 community = (Integer) (node.getProperty(COMMUNITY));
                 tx.success();
             }
@@ -713,8 +927,7 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
                     while (nodesIter.hasNext())
                     {
                         final Node n = nodesIter.next();
-                        String nodeIdString = (String) (n.getProperty(NODE_ID));
-                        nodes.add(Integer.valueOf(nodeIdString));
+                        nodes.add((Integer) n.getProperty(NODE_ID));
                     }
                     communities.put(i, nodes);
                 }
@@ -808,7 +1021,7 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
         Node result = null;
         try (final Transaction tx = neo4jGraph.beginTx()) {
             try {
-                result = neo4jGraph.findNodes(Neo4jGraphDatabase.NODE_LABEL, NODE_ID, i).next();
+                result = findNode(i);
                 tx.success();
             } catch(Exception e) {
                 tx.failure();
@@ -817,4 +1030,18 @@ public class Neo4jGraphDatabase extends GraphDatabaseBase<Iterator<Node>, Iterat
         return result;
     }
 
+    /**
+     * Looks the node up by its native id if that is cached and through the node id index otherwise. Must be called
+     * inside a transaction.
+     */
+    private Node findNode(int nodeId) {
+        final long nativeId = cachedNativeId(nodeId);
+        if (nativeId >= 0) {
+            return neo4jGraph.getNodeById(nativeId);
+        }
+        final Node node = neo4jGraph.findNodes(NODE_LABEL, NODE_ID, nodeId).next();
+        cacheNativeId(nodeId, node.getId());
+        return node;
+    }
+
 }
@@ -2,7 +2,13 @@ package eu.socialsensor.graphdatabases;
 
 import com.google.common.collect.Iterators;
 import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.db.record.ridbag.ORidBag;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
 import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.impl.ODocument;
 
 import eu.socialsensor.insert.Insertion;
 import eu.socialsensor.insert.OrientMassiveInsertion;
@@ -13,12 +19,14 @@ import eu.socialsensor.utils.Utils;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.function.Consumer;
 
 import org.apache.commons.configuration.Configuration;
@@ -44,16 +52,29 @@ public class OrientGraphDatabase extends GraphDatabaseBase<Iterator<Vertex>, Ite
 
     public static final String UNIQUE_HASH_INDEX = "UNIQUE_HASH_INDEX";
     public static final String NOTUNIQUE_HASH_INDEX = "NOTUNIQUE_HASH_INDEX";
+    private static final String VERTEX_CLASS = "V";
+    private static final String EDGE_CLASS = "E";
+    // the fields of a vertex record that hold the links to its edges
+    private static final String OUT_FIELD_PREFIX = "out_";
+    private static final String IN_FIELD_PREFIX = "in_";
+    // record ids are cached as the cluster id above the position within the cluster
+    private static final int CLUSTER_POSITION_BITS = 48;
+    private static final long CLUSTER_POSITION_MASK = (1L << CLUSTER_POSITION_BITS) - 1;
+    private final OrientGraphFactory graphFactory;
     private final OrientGraph graph;
+    // the graph instance each partitioned scan thread works with
+    private final ThreadLocal<OrientGraph> scanGraph = new ThreadLocal<OrientGraph>();
 
     @SuppressWarnings("deprecation")
     public OrientGraphDatabase(BenchmarkConfiguration config, File dbStorageDirectoryIn)
     {
         super(GraphDatabaseType.ORIENT_DB, dbStorageDirectoryIn, config.getRandomNodeList(),
-                config.getShortestPathMaxHops());
+                config.getShortestPathMaxHops(), config.getScanThreads(), config.isVertexIdCache(),
+                config.isValidateGraphMetadata());
         OGlobalConfiguration.STORAGE_COMPRESSION_METHOD.setValue("nothing");
         OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
-        graph = getGraph(dbStorageDirectory);
+        graphFactory = getGraphFactory(dbStorageDirectory);
+        graph = graphFactory.getTx();
         createSchema();
     }
 
@@ -62,6 +83,7 @@ public class OrientGraphDatabase extends GraphDatabaseBase<Iterator<Vertex>, Ite
     {
         OrientMassiveInsertion orientMassiveInsertion = new OrientMassiveInsertion(graph);
         orientMassiveInsertion.createGraph(dataPath, 0 /* scenarioNumber */);
+        recordGraphMetadata(orientMassiveInsertion);
     }
 
     @Override
@@ -69,6 +91,7 @@ public class OrientGraphDatabase extends GraphDatabaseBase<Iterator<Vertex>, Ite
     {
         Insertion orientSingleInsertion = new OrientSingleInsertion(this.graph, resultsPath);
         orientSingleInsertion.createGraph(dataPath, scenarioNumber);
+        recordGraphMetadata(orientSingleInsertion);
     }
 
     @Override
@@ -110,10 +133,20 @@ public class OrientGraphDatabase extends GraphDatabaseBase<Iterator<Vertex>, Ite
 //        result.size();
     }
 
+    /**
+     * OrientDB keeps the number of records of each cluster, so counting a class and its subclasses reads no records.
+     */
     @Override
-    public int getNodeCount()
+    protected GraphMetadata getStoreStatistics()
     {
-        return graph.traversal().V().count().toList().get(0).intValue();
+        final ODatabaseDocumentTx db = graph.getRawDatabase();
+        return new GraphMetadata(db.countClass(VERTEX_CLASS), db.countClass(EDGE_CLASS));
+    }
+
+    @Override
+    protected long countNodes()
+    {
+        return graph.traversal().V().count().toList().get(0);
     }
 
     @Override
@@ -134,19 +167,57 @@ public class OrientGraphDatabase extends GraphDatabaseBase<Iterator<Vertex>, Ite
     @Override
     public double getNodeWeight(int nodeId)
     {
-        Vertex vertex = getVertex(nodeId);
-        double weight = getNodeOutDegree(vertex);
-        return weight;
+        return getNodeDegree(nodeId, false /* iterate */);
+    }
+
+    @Override
+    public long getNodeDegree(int nodeId, boolean iterate)
+    {
+        final Vertex vertex = getVertex(nodeId);
+        return iterate ? Iterators.size(vertex.edges(Direction.OUT, SIMILAR)) : (long) getNodeOutDegree(vertex);
     }
 
     public double getNodeInDegree(Vertex vertex)
     {
-        return (double) Iterators.size(vertex.edges(Direction.IN, SIMILAR));
+        return (double) countLinks((OrientVertex) vertex, IN_FIELD_PREFIX);
     }
 
     public double getNodeOutDegree(Vertex vertex)
     {
-        return (double) Iterators.size(vertex.edges(Direction.OUT, SIMILAR));
+        return (double) countLinks((OrientVertex) vertex, OUT_FIELD_PREFIX);
+    }
+
+    /**
+     * Counts the links to SIMILAR edges that the record of the vertex holds, by the size of their link bag, without
+     * loading the edge records the way iterating the edges does. The driver names the field after the direction and
+     * the class of the edge label, which it may prefix.
+     */
+    private static long countLinks(OrientVertex vertex, String directionPrefix)
+    {
+        final ODocument document = vertex.getRawDocument();
+        long links = 0;
+        for (String field : document.fieldNames())
+        {
+            if (!field.startsWith(directionPrefix) || !field.endsWith("_" + SIMILAR))
+            {
+                continue;
+            }
+            final Object value = document.field(field);
+            if (value instanceof ORidBag)
+            {
+                links += ((ORidBag) value).size();
+            }
+            else if (value instanceof Collection)
+            {
+                links += ((Collection<?>) value).size();
+            }
+            else if (value instanceof OIdentifiable)
+            {
+                // a single edge may be stored as a plain link
+                links++;
+            }
+        }
+        return links;
     }
 
     @Override
@@ -261,10 +332,10 @@ public class OrientGraphDatabase extends GraphDatabaseBase<Iterator<Vertex>, Ite
     }
 
     @Override
-    public double getGraphWeightSum()
+    protected long countEdges()
     {
         final Iterator<Edge> edges = graph.edges();
-        return (double) Iterators.size(edges);
+        return Iterators.size(edges);
     }
 
     @Override
@@ -355,12 +426,62 @@ public class OrientGraphDatabase extends GraphDatabaseBase<Iterator<Vertex>, Ite
     }
 
     private OrientGraph getGraph(final File dbPath)
+    {
+        return getGraphFactory(dbPath).getTx();
+    }
+
+    private OrientGraphFactory getGraphFactory(final File dbPath)
     {
         Configuration config = new PropertiesConfiguration();
         config.setProperty(OrientGraph.CONFIG_URL, "plocal:" + dbPath.getAbsolutePath());
         // TODO(amcp) replace with the official OrientDB implementation when available.
-        final OrientGraphFactory graphFactory = new OrientGraphFactory(config);
-        return graphFactory.getTx();
+        return new OrientGraphFactory(config);
+    }
+
+    @Override
+    protected <T> T inScanTransaction(Callable<T> scan) throws Exception
+    {
+        // OrientDB database instances are bound to a thread, so each scanning thread gets its own graph
+        final OrientGraph threadGraph = graphFactory.getTx();
+        scanGraph.set(threadGraph);
+        try
+        {
+            return scan.call();
+        }
+        finally
+        {
+            scanGraph.remove();
+            threadGraph.close();
+        }
+    }
+
+    /**
+     * OrientDB spreads the records of a class over several clusters, so the vertex clusters are dealt out to the
+     * partitions round robin. Partitions beyond the number of vertex clusters are empty.
+     */
+    @Override
+    protected Iterator<Vertex> getVertexIterator(int partition, int partitions)
+    {
+        final OrientGraph threadGraph = scanGraph.get();
+        final ODatabaseDocumentTx db = threadGraph.getRawDatabase();
+        final int[] clusterIds = db.getMetadata().getSchema().getClass(VERTEX_CLASS).getPolymorphicClusterIds();
+        final List<Iterator<Vertex>> clusters = new ArrayList<Iterator<Vertex>>();
+        for (int i = partition; i < clusterIds.length; i += partitions)
+        {
+            final Iterator<ODocument> records = db.browseCluster(db.getClusterNameById(clusterIds[i]));
+            clusters.add(Iterators.transform(records, record -> new OrientVertex(threadGraph, record)));
+        }
+        return Iterators.concat(clusters.iterator());
+    }
+
+    /**
+     * Every edge is visited once, from the partition of its out vertex.
+     */
+    @Override
+    protected Iterator<Edge> getAllEdges(int partition, int partitions)
+    {
+        return Iterators.concat(Iterators.transform(getVertexIterator(partition, partitions),
+            v -> v.edges(Direction.OUT, SIMILAR)));
     }
 
     @Override
@@ -438,8 +559,22 @@ public class OrientGraphDatabase extends GraphDatabaseBase<Iterator<Vertex>, Ite
     @Override
     public Vertex getVertex(Integer i)
     {
-        final GraphTraversalSource g = graph.traversal();
+        // scanning threads may not use the graph of the thread that opened the database
+        final OrientGraph threadGraph = scanGraph.get() == null ? graph : scanGraph.get();
+        final long recordId = cachedNativeId(i);
+        if (recordId >= 0)
+        {
+            final OrientVertex vertex = new OrientVertex(threadGraph, new ORecordId(
+                (int) (recordId >>> CLUSTER_POSITION_BITS), recordId & CLUSTER_POSITION_MASK));
+            // the vertex only refers to its record until it is read, and the index lookup below loads the record
+            vertex.property(NODE_ID).value();
+            return vertex;
+        }
+        final GraphTraversalSource g = threadGraph.traversal();
         final Vertex vertex = g.V().has(NODE_ID, i).next();
+        final ORID rid = (ORID) vertex.id();
+        // cluster ids are shorts, and positions within a cluster stay far below 2^48
+        cacheNativeId(i, ((long) rid.getClusterId() << CLUSTER_POSITION_BITS) | rid.getClusterPosition());
         return vertex;
     }
 }
@@ -0,0 +1,219 @@
+package eu.socialsensor.graphdatabases;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+import org.apache.tinkerpop.gremlin.process.traversal.Path;
+import org.apache.tinkerpop.gremlin.process.traversal.Step;
+import org.apache.tinkerpop.gremlin.process.traversal.Traversal;
+import org.apache.tinkerpop.gremlin.process.traversal.TraversalSource;
+import org.apache.tinkerpop.gremlin.process.traversal.TraversalStrategy;
+import org.apache.tinkerpop.gremlin.process.traversal.Traverser;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.__;
+import org.apache.tinkerpop.gremlin.process.traversal.step.TraversalParent;
+import org.apache.tinkerpop.gremlin.process.traversal.step.sideEffect.StartStep;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+
+import com.codahale.metrics.Timer;
+
+import eu.socialsensor.main.GraphDatabaseBenchmark;
+
+/**
+ * The Gremlin shortest path traversal shared by the databases that run it, a breadth first repeat(out(SIMILAR))
+ * bounded by times(maxHops) that stops at the first level that reaches the target. Building a traversal and
+ * applying the strategies to it costs about as much as running it on a warm cache, so by default each thread builds
+ * the traversal once, with the source vertex fed in as a start and the target held by a predicate, and only resets
+ * and rebinds it per query. Strategies can be left out by name to see what each one costs. The time to get a
+ * traversal ready and the time to run it are recorded apart, as shortestPath.compile and shortestPath.execute.
+ */
+public class ShortestPathTraversal
+{
+    private final GraphTraversalSource g;
+    private final int maxHops;
+    private final boolean reuse;
+    private final Timer compileTimes;
+    private final Timer executeTimes;
+    private final ThreadLocal<Template> templates = new ThreadLocal<Template>();
+
+    /**
+     * Matches the vertex whose node id is the target of the query it is bound to.
+     */
+    private static final class TargetPredicate implements Predicate<Traverser<Vertex>>
+    {
+        private Integer target;
+
+        @Override
+        public boolean test(Traverser<Vertex> it)
+        {
+            return target.equals(it.get().value(GraphDatabaseBase.NODE_ID));
+        }
+    }
+
+    /**
+     * A traversal with its strategies applied, and the predicate that binds its target.
+     */
+    private static final class Template
+    {
+        private final Traversal.Admin<Vertex, Path> traversal;
+        private final TargetPredicate target;
+
+        Template(Traversal.Admin<Vertex, Path> traversal, TargetPredicate target)
+        {
+            this.traversal = traversal;
+            this.target = target;
+        }
+    }
+
+    /**
+     * @param disabledStrategies
+     *            simple or fully qualified class names of strategies of the graph to leave out
+     * @param queryTypeContext
+     *            the metric name prefix of the database
+     */
+    public ShortestPathTraversal(Graph graph, int maxHops, boolean reuse, Collection<String> disabledStrategies,
+        String queryTypeContext)
+    {
+        this.g = createSource(graph, disabledStrategies);
+        this.maxHops = maxHops;
+        this.reuse = reuse;
+        this.compileTimes = GraphDatabaseBenchmark.metrics.timer(queryTypeContext + "shortestPath.compile");
+        this.executeTimes = GraphDatabaseBenchmark.metrics.timer(queryTypeContext + "shortestPath.execute");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static GraphTraversalSource createSource(Graph graph, Collection<String> disabledStrategies)
+    {
+        final GraphTraversalSource standard = graph.traversal();
+        if (disabledStrategies.isEmpty())
+        {
+            return standard;
+        }
+        final List<String> unknown = new ArrayList<String>(disabledStrategies);
+        TraversalSource.Builder<GraphTraversalSource> builder = standard.asBuilder();
+        for (TraversalStrategy<?> strategy : standard.getStrategies())
+        {
+            final Class<? extends TraversalStrategy<?>> type =
+                (Class<? extends TraversalStrategy<?>>) strategy.getClass();
+            if (unknown.remove(type.getSimpleName()) | unknown.remove(type.getName()))
+            {
+                builder = builder.without(type);
+            }
+        }
+        if (!unknown.isEmpty())
+        {
+            throw new IllegalArgumentException("gremlin.disabled-strategies names strategies that "
+                + graph.getClass().getSimpleName() + " does not apply: " + unknown);
+        }
+        return builder.create(graph);
+    }
+
+    /**
+     * @return a shortest path of at most maxHops edges from the vertex to the vertex with the target node id
+     */
+    public Optional<Path> find(Vertex from, Integer target)
+    {
+        final Traversal.Admin<Vertex, Path> traversal;
+        final Timer.Context compile = compileTimes.time();
+        try
+        {
+            traversal = bind(from, target);
+        }
+        finally
+        {
+            compile.stop();
+        }
+        final Timer.Context execute = executeTimes.time();
+        try
+        {
+            return traversal.tryNext();
+        }
+        finally
+        {
+            execute.stop();
+        }
+    }
+
+    private Traversal.Admin<Vertex, Path> bind(Vertex from, Integer target)
+    {
+        if (!reuse)
+        {
+            final Integer fromNodeId = from.value(GraphDatabaseBase.NODE_ID);
+            final TargetPredicate bound = new TargetPredicate();
+            bound.target = target;
+            final GraphTraversal<Vertex, Path> traversal = expand(g.V().has(GraphDatabaseBase.NODE_ID, fromNodeId),
+                bound);
+            traversal.asAdmin().applyStrategies();
+            return traversal.asAdmin();
+        }
+        Template template = templates.get();
+        if (template == null)
+        {
+            template = newTemplate();
+            templates.set(template);
+        }
+        final Traversal.Admin<Vertex, Path> traversal = template.traversal;
+        reset(traversal);
+        template.target.target = target;
+        traversal.addStart(traversal.getTraverserGenerator().generate(from, traversal.getStartStep(), 1L));
+        return traversal;
+    }
+
+    /**
+     * Traversal.reset() leaves the traversals nested in steps alone, so the vertexes dedup saw and the traversers a
+     * barrier held when the last query stopped at its limit would carry over into the next.
+     */
+    private static void reset(Traversal.Admin<?, ?> traversal)
+    {
+        traversal.reset();
+        for (Step<?, ?> step : traversal.getSteps())
+        {
+            if (step instanceof TraversalParent)
+            {
+                for (Traversal.Admin<?, ?> child : ((TraversalParent) step).getGlobalChildren())
+                {
+                    reset(child);
+                }
+                for (Traversal.Admin<?, ?> child : ((TraversalParent) step).getLocalChildren())
+                {
+                    reset(child);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Template newTemplate()
+    {
+        final TargetPredicate target = new TargetPredicate();
+        // a traversal of the source, with its engine and strategies, that starts at the vertexes added to it
+        final GraphTraversal.Admin<Vertex, Vertex> start = g.V().asAdmin();
+        start.removeStep(0);
+        start.addStep(new StartStep<Vertex>(start));
+        final GraphTraversal<Vertex, Path> traversal = expand((GraphTraversal<Vertex, Vertex>) start, target);
+        traversal.asAdmin().applyStrategies();
+        return new Template(traversal.asAdmin(), target);
+    }
+
+    /**
+     * Expands breadth first for at most maxHops levels. The barrier holds each level back until the one before it
+     * is done, so the first time dedup sees a vertex is on a shortest path to it, and dedup drops every later visit,
+     * so each vertex is expanded once. The target is emitted at the first level that reaches it; traversers that
+     * run out of levels without reaching it are dropped.
+     */
+    private GraphTraversal<Vertex, Path> expand(GraphTraversal<Vertex, Vertex> start, TargetPredicate target)
+    {
+        return start
+            .repeat(__.out(GraphDatabaseBase.SIMILAR).dedup().barrier())
+            .emit(target)
+            .times(maxHops)
+            .filter(target)
+            .limit(1)
+            .path();
+    }
+}
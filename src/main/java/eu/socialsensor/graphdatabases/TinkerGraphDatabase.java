@@ -0,0 +1,451 @@
+package eu.socialsensor.graphdatabases;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.io.IoCore;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+
+import com.google.common.collect.Iterators;
+
+import eu.socialsensor.insert.Insertion;
+import eu.socialsensor.insert.TinkerGraphInsertion;
+import eu.socialsensor.main.BenchmarkConfiguration;
+import eu.socialsensor.main.BenchmarkingException;
+import eu.socialsensor.main.GraphDatabaseType;
+import eu.socialsensor.utils.Utils;
+
+/**
+ * TinkerGraph implementation. TinkerGraph keeps the graph in hash maps on the heap and runs the same Gremlin
+ * traversals as the other databases, so its times are the cost of the Gremlin machinery without storage; subtracting
+ * them from another database's leaves what its storage costs. The graph is written in Gryo to the storage directory
+ * on shutdown after a load, so that the benchmarks after the load, which open the database again, find it.
+ */
+public class TinkerGraphDatabase extends GraphDatabaseBase<Iterator<Vertex>, Iterator<Edge>, Vertex, Edge>
+{
+    private static final String GRAPH_FILE_NAME = "graph.kryo";
+
+    private final File graphFile;
+    private final TinkerGraph graph;
+    private final ShortestPathTraversal shortestPathTraversal;
+    private boolean loaded = false;
+
+    public TinkerGraphDatabase(BenchmarkConfiguration config, File dbStorageDirectoryIn)
+    {
+        super(GraphDatabaseType.TINKERGRAPH, dbStorageDirectoryIn, config.getRandomNodeList(),
+            config.getShortestPathMaxHops(), config.getScanThreads(), config.isVertexIdCache(),
+            config.isValidateGraphMetadata());
+        graphFile = new File(dbStorageDirectory, GRAPH_FILE_NAME);
+        graph = TinkerGraph.open();
+        createSchema();
+        shortestPathTraversal = new ShortestPathTraversal(graph, maxHops, config.isGremlinTraversalReuse(),
+            config.getGremlinDisabledStrategies(), type.getShortname() + QUERY_CONTEXT);
+        if (graphFile.exists())
+        {
+            try
+            {
+                graph.io(IoCore.gryo()).readGraph(graphFile.getAbsolutePath());
+            }
+            catch (IOException e)
+            {
+                throw new BenchmarkingException("unable to read TinkerGraph from " + graphFile, e);
+            }
+        }
+    }
+
+    private void createSchema()
+    {
+        graph.createIndex(NODE_ID, Vertex.class);
+        graph.createIndex(COMMUNITY, Vertex.class);
+        graph.createIndex(NODE_COMMUNITY, Vertex.class);
+    }
+
+    @Override
+    public void massiveModeLoading(File dataPath)
+    {
+        final Insertion insertion = new TinkerGraphInsertion(graph, null /* resultsPath */);
+        insertion.createGraph(dataPath, 0 /* scenarioNumber */);
+        recordGraphMetadata(insertion);
+        loaded = true;
+    }
+
+    @Override
+    public void singleModeLoading(File dataPath, File resultsPath, int scenarioNumber)
+    {
+        final Insertion insertion = new TinkerGraphInsertion(graph, resultsPath);
+        insertion.createGraph(dataPath, scenarioNumber);
+        recordGraphMetadata(insertion);
+        loaded = true;
+    }
+
+    @Override
+    public void shutdown()
+    {
+        if (loaded)
+        {
+            final File partial = new File(graphFile.getAbsolutePath() + ".partial");
+            try
+            {
+                graph.io(IoCore.gryo()).writeGraph(partial.getAbsolutePath());
+                Files.move(partial.toPath(), graphFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (IOException e)
+            {
+                throw new BenchmarkingException("unable to write TinkerGraph to " + graphFile, e);
+            }
+            loaded = false;
+        }
+        graph.close();
+    }
+
+    @Override
+    public void delete()
+    {
+        Utils.deleteRecursively(dbStorageDirectory);
+    }
+
+    @Override
+    public void shutdownMassiveGraph()
+    {
+        shutdown();
+    }
+
+    @Override
+    public void shortestPath(final Vertex fromNode, Integer targetNode)
+    {
+        shortestPathTraversal.find(fromNode, targetNode)
+                .ifPresent( it -> {
+                    @SuppressWarnings("unused")
+                    final int pathSize = it.size();
+                });
+    }
+
+    @Override
+    protected long countNodes()
+    {
+        return graph.traversal().V().count().next();
+    }
+
+    @Override
+    public Set<Integer> getNeighborsIds(int nodeId)
+    {
+        final Set<Integer> neighbours = new HashSet<Integer>();
+        final Iterator<Vertex> it = getVertex(nodeId).vertices(Direction.OUT, SIMILAR);
+        while (it.hasNext())
+        {
+            neighbours.add(it.next().<Integer>value(NODE_ID));
+        }
+        return neighbours;
+    }
+
+    @Override
+    public double getNodeWeight(int nodeId)
+    {
+        return getNodeOutDegree(getVertex(nodeId));
+    }
+
+    /**
+     * TinkerGraph keeps no degree apart from the edges of the vertex, so both ways count them.
+     */
+    @Override
+    public long getNodeDegree(int nodeId, boolean iterate)
+    {
+        return (long) getNodeOutDegree(getVertex(nodeId));
+    }
+
+    public double getNodeOutDegree(Vertex vertex)
+    {
+        return (double) Iterators.size(vertex.edges(Direction.OUT, SIMILAR));
+    }
+
+    @Override
+    public void initCommunityProperty()
+    {
+        int communityCounter = 0;
+        for (Vertex v : graph.traversal().V().toList())
+        {
+            v.property(NODE_COMMUNITY, communityCounter);
+            v.property(COMMUNITY, communityCounter);
+            communityCounter++;
+        }
+    }
+
+    @Override
+    public Set<Integer> getCommunitiesConnectedToNodeCommunities(int nodeCommunity)
+    {
+        Set<Integer> communities = new HashSet<Integer>();
+        for (Vertex vertex : graph.traversal().V().has(NODE_COMMUNITY, nodeCommunity).toList())
+        {
+            final Iterator<Vertex> it = vertex.vertices(Direction.OUT, SIMILAR);
+            while (it.hasNext())
+            {
+                communities.add(it.next().<Integer>value(COMMUNITY));
+            }
+        }
+        return communities;
+    }
+
+    @Override
+    public Set<Integer> getNodesFromCommunity(int community)
+    {
+        Set<Integer> nodes = new HashSet<Integer>();
+        for (Vertex v : graph.traversal().V().has(COMMUNITY, community).toList())
+        {
+            nodes.add(v.<Integer>value(NODE_ID));
+        }
+        return nodes;
+    }
+
+    @Override
+    public Set<Integer> getNodesFromNodeCommunity(int nodeCommunity)
+    {
+        Set<Integer> nodes = new HashSet<Integer>();
+        for (Vertex v : graph.traversal().V().has(NODE_COMMUNITY, nodeCommunity).toList())
+        {
+            nodes.add(v.<Integer>value(NODE_ID));
+        }
+        return nodes;
+    }
+
+    @Override
+    public double getEdgesInsideCommunity(int vertexCommunity, int communityVertices)
+    {
+        double edges = 0;
+        Set<Vertex> comVertices = graph.traversal().V().has(COMMUNITY, communityVertices).toSet();
+        for (Vertex vertex : graph.traversal().V().has(NODE_COMMUNITY, vertexCommunity).toList())
+        {
+            Iterator<Vertex> it = vertex.vertices(Direction.OUT, SIMILAR);
+            while (it.hasNext())
+            {
+                if (comVertices.contains(it.next()))
+                {
+                    edges++;
+                }
+            }
+        }
+        return edges;
+    }
+
+    @Override
+    public double getCommunityWeight(int community)
+    {
+        double communityWeight = 0;
+        final List<Vertex> list = graph.traversal().V().has(COMMUNITY, community).toList();
+        if (list.size() <= 1)
+        {
+            return communityWeight;
+        }
+        for (Vertex vertex : list)
+        {
+            communityWeight += getNodeOutDegree(vertex);
+        }
+        return communityWeight;
+    }
+
+    @Override
+    public double getNodeCommunityWeight(int nodeCommunity)
+    {
+        double nodeCommunityWeight = 0;
+        for (Vertex vertex : graph.traversal().V().has(NODE_COMMUNITY, nodeCommunity).toList())
+        {
+            nodeCommunityWeight += getNodeOutDegree(vertex);
+        }
+        return nodeCommunityWeight;
+    }
+
+    @Override
+    public void moveNode(int nodeCommunity, int toCommunity)
+    {
+        for (Vertex vertex : graph.traversal().V().has(NODE_COMMUNITY, nodeCommunity).toList())
+        {
+            vertex.property(COMMUNITY, toCommunity);
+        }
+    }
+
+    @Override
+    protected long countEdges()
+    {
+        return Iterators.size(graph.edges());
+    }
+
+    @Override
+    public int reInitializeCommunities()
+    {
+        Map<Integer, Integer> initCommunities = new HashMap<Integer, Integer>();
+        int communityCounter = 0;
+        Iterator<Vertex> it = graph.vertices();
+        while (it.hasNext())
+        {
+            final Vertex v = it.next();
+            int communityId = v.<Integer>value(COMMUNITY);
+            if (!initCommunities.containsKey(communityId))
+            {
+                initCommunities.put(communityId, communityCounter);
+                communityCounter++;
+            }
+            int newCommunityId = initCommunities.get(communityId);
+            v.property(COMMUNITY, newCommunityId);
+            v.property(NODE_COMMUNITY, newCommunityId);
+        }
+        return communityCounter;
+    }
+
+    @Override
+    public int getCommunity(int nodeCommunity)
+    {
+        return graph.traversal().V().has(NODE_COMMUNITY, nodeCommunity).next().<Integer>value(COMMUNITY);
+    }
+
+    @Override
+    public int getCommunityFromNode(int nodeId)
+    {
+        return getVertex(nodeId).<Integer>value(COMMUNITY);
+    }
+
+    @Override
+    public int getCommunitySize(int community)
+    {
+        Set<Integer> nodeCommunities = new HashSet<Integer>();
+        for (Vertex v : graph.traversal().V().has(COMMUNITY, community).toList())
+        {
+            nodeCommunities.add(v.<Integer>value(NODE_COMMUNITY));
+        }
+        return nodeCommunities.size();
+    }
+
+    @Override
+    public Map<Integer, List<Integer>> mapCommunities(int numberOfCommunities)
+    {
+        Map<Integer, List<Integer>> communities = new HashMap<Integer, List<Integer>>();
+        for (int i = 0; i < numberOfCommunities; i++)
+        {
+            GraphTraversal<Vertex, Vertex> t = graph.traversal().V().has(COMMUNITY, i);
+            List<Integer> vertices = new ArrayList<Integer>();
+            while (t.hasNext())
+            {
+                vertices.add(t.next().<Integer>value(NODE_ID));
+            }
+            communities.put(i, vertices);
+        }
+        return communities;
+    }
+
+    /**
+     * TinkerGraph keeps its vertexes in a hash map, so there is no range to split; every partition walks all
+     * vertexes and keeps those whose id falls in it.
+     */
+    @Override
+    protected Iterator<Vertex> getVertexIterator(int partition, int partitions)
+    {
+        return Iterators.filter(graph.vertices(), v -> Math.floorMod(v.id().hashCode(), partitions) == partition);
+    }
+
+    /**
+     * Every edge is visited once, from the partition of its out vertex.
+     */
+    @Override
+    protected Iterator<Edge> getAllEdges(int partition, int partitions)
+    {
+        return Iterators.concat(Iterators.transform(getVertexIterator(partition, partitions),
+            v -> v.edges(Direction.OUT, SIMILAR)));
+    }
+
+    @Override
+    public Iterator<Vertex> getVertexIterator()
+    {
+        return graph.vertices();
+    }
+
+    @Override
+    public Iterator<Edge> getNeighborsOfVertex(Vertex v)
+    {
+        return v.edges(Direction.BOTH, SIMILAR);
+    }
+
+    @Override
+    public void cleanupVertexIterator(Iterator<Vertex> it)
+    {
+        // NOOP
+    }
+
+    @Override
+    public Vertex getOtherVertexFromEdge(Edge edge, Vertex oneVertex)
+    {
+        return edge.inVertex().equals(oneVertex) ? edge.outVertex() : edge.inVertex();
+    }
+
+    @Override
+    public Iterator<Edge> getAllEdges()
+    {
+        return graph.edges();
+    }
+
+    @Override
+    public Vertex getSrcVertexFromEdge(Edge edge)
+    {
+        return edge.outVertex();
+    }
+
+    @Override
+    public Vertex getDestVertexFromEdge(Edge edge)
+    {
+        return edge.inVertex();
+    }
+
+    @Override
+    public boolean edgeIteratorHasNext(Iterator<Edge> it)
+    {
+        return it.hasNext();
+    }
+
+    @Override
+    public Edge nextEdge(Iterator<Edge> it)
+    {
+        return it.next();
+    }
+
+    @Override
+    public void cleanupEdgeIterator(Iterator<Edge> it)
+    {
+        // NOOP
+    }
+
+    @Override
+    public boolean vertexIteratorHasNext(Iterator<Vertex> it)
+    {
+        return it.hasNext();
+    }
+
+    @Override
+    public Vertex nextVertex(Iterator<Vertex> it)
+    {
+        return it.next();
+    }
+
+    @Override
+    public Vertex getVertex(Integer i)
+    {
+        final long vertexId = cachedNativeId(i);
+        if (vertexId >= 0)
+        {
+            return graph.vertices(vertexId).next();
+        }
+        final Vertex vertex = graph.traversal().V().has(NODE_ID, i).next();
+        cacheNativeId(i, ((Number) vertex.id()).longValue());
+        return vertex;
+    }
+}
@@ -1,14 +1,19 @@
 package eu.socialsensor.graphdatabases;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Set;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Stopwatch;
@@ -16,10 +21,8 @@ import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.MapConfiguration;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.tinkerpop.gremlin.process.traversal.Path;
 import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
 import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
-import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.__;
 import org.apache.tinkerpop.gremlin.structure.Direction;
 import org.apache.tinkerpop.gremlin.structure.Edge;
 import org.apache.tinkerpop.gremlin.structure.Property;
@@ -35,20 +38,38 @@ import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
 import com.amazonaws.services.dynamodbv2.model.ResourceInUseException;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.thinkaurelius.titan.core.Multiplicity;
 import com.thinkaurelius.titan.core.PropertyKey;
 import com.thinkaurelius.titan.core.TitanFactory;
+import com.thinkaurelius.titan.core.TitanMultiVertexQuery;
+import com.thinkaurelius.titan.core.TitanVertex;
 import com.thinkaurelius.titan.core.schema.TitanManagement;
 import com.thinkaurelius.titan.core.schema.VertexLabelMaker;
 import com.thinkaurelius.titan.core.util.TitanCleanup;
+import com.thinkaurelius.titan.diskstorage.BackendException;
+import com.thinkaurelius.titan.diskstorage.StaticBuffer;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.KeyIterator;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.KeyRangeQuery;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.SliceQuery;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.scan.ScanMetrics;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.scan.StandardScanner;
+import com.thinkaurelius.titan.diskstorage.util.BufferUtil;
 import com.thinkaurelius.titan.graphdb.configuration.GraphDatabaseConfiguration;
+import com.thinkaurelius.titan.graphdb.database.EdgeSerializer;
 import com.thinkaurelius.titan.graphdb.database.StandardTitanGraph;
+import com.thinkaurelius.titan.graphdb.idmanagement.IDManager;
+import com.thinkaurelius.titan.graphdb.olap.VertexJobConverter;
+import com.thinkaurelius.titan.graphdb.transaction.StandardTitanTx;
+import com.thinkaurelius.titan.graphdb.types.system.BaseKey;
 
 import eu.socialsensor.insert.Insertion;
 import eu.socialsensor.insert.TitanMassiveInsertion;
 import eu.socialsensor.insert.TitanSingleInsertion;
 import eu.socialsensor.main.BenchmarkConfiguration;
+import eu.socialsensor.main.BenchmarkingException;
 import eu.socialsensor.main.GraphDatabaseType;
 import eu.socialsensor.utils.Utils;
 import jp.classmethod.titan.diskstorage.tupl.TuplStoreManager;
@@ -67,12 +88,18 @@ public class TitanGraphDatabase extends GraphDatabaseBase<Iterator<Vertex>, Iter
 
     private final StandardTitanGraph graph;
     private final BenchmarkConfiguration config;
+    private final int multiQueryChunkSize;
+    private final ShortestPathTraversal shortestPathTraversal;
+    // node id to out degree, filled by the degree scan job in olap-scan mode
+    private final Map<Integer, Integer> scannedOutDegrees = new ConcurrentHashMap<Integer, Integer>();
 
     public TitanGraphDatabase(GraphDatabaseType type, BenchmarkConfiguration config, File dbStorageDirectory,
             boolean batchLoading)
     {
-        super(type, dbStorageDirectory, config.getRandomNodeList(), config.getShortestPathMaxHops());
+        super(type, dbStorageDirectory, config.getRandomNodeList(), config.getShortestPathMaxHops(),
+            config.getScanThreads(), config.isVertexIdCache(), config.isValidateGraphMetadata());
         this.config = config;
+        this.multiQueryChunkSize = config.getTitanMultiQueryChunkSize();
         if (!GraphDatabaseType.TITAN_FLAVORS.contains(type))
         {
             throw new IllegalArgumentException(String.format("The graph database %s is not a Titan database.",
@@ -80,6 +107,8 @@ public class TitanGraphDatabase extends GraphDatabaseBase<Iterator<Vertex>, Iter
         }
         graph = open(batchLoading);
         createSchema();
+        shortestPathTraversal = new ShortestPathTraversal(graph, maxHops, config.isGremlinTraversalReuse(),
+            config.getGremlinDisabledStrategies(), type.getShortname() + QUERY_CONTEXT);
     }
 
     private static final StandardTitanGraph buildTitanGraph(GraphDatabaseType type, File dbPath, BenchmarkConfiguration bench,
@@ -256,6 +285,7 @@ public class TitanGraphDatabase extends GraphDatabaseBase<Iterator<Vertex>, Iter
     {
         Insertion titanMassiveInsertion = TitanMassiveInsertion.create(graph, type, config.isCustomIds());
         titanMassiveInsertion.createGraph(dataPath, 0 /* scenarioNumber */);
+        recordGraphMetadata(titanMassiveInsertion);
         //TODO(amcp) figure out a way to claim the ids used for this unique-instance-id
     }
 
@@ -264,6 +294,7 @@ public class TitanGraphDatabase extends GraphDatabaseBase<Iterator<Vertex>, Iter
     {
         Insertion titanSingleInsertion = new TitanSingleInsertion(this.graph, type, resultsPath);
         titanSingleInsertion.createGraph(dataPath, scenarioNumber);
+        recordGraphMetadata(titanSingleInsertion);
     }
 
     @Override
@@ -289,24 +320,9 @@ public class TitanGraphDatabase extends GraphDatabaseBase<Iterator<Vertex>, Iter
     @Override
     public void shortestPath(final Vertex fromNode, Integer targetNode)
     {
-        final GraphTraversalSource g = graph.traversal();
         final Stopwatch watch = Stopwatch.createStarted();
-        final DepthPredicate maxDepth = new DepthPredicate(maxHops);
-        final Integer fromNodeId = fromNode.<Integer>value(NODE_ID);
-        LOG.trace("finding path from {} to {} max hops {}", fromNodeId, targetNode, maxHops);
-        final GraphTraversal<?, Path> t =
-        g.V().has(NODE_ID, fromNodeId)
-                .repeat(
-                        __.out(SIMILAR)
-                                .simplePath())
-                .until(
-                        __.has(NODE_ID, targetNode)
-                        .and(__.filter( maxDepth ))
-                )
-                .limit(1)
-                .path();
-
-        t.tryNext()
+        LOG.trace("finding path from {} to {} max hops {}", fromNode.value(NODE_ID), targetNode, maxHops);
+        shortestPathTraversal.find(fromNode, targetNode)
                 .ifPresent( it -> {
                     final int pathSize = it.size();
                     final long elapsed = watch.elapsed(TimeUnit.MILLISECONDS);
@@ -320,11 +336,10 @@ public class TitanGraphDatabase extends GraphDatabaseBase<Iterator<Vertex>, Iter
     }
 
     @Override
-    public int getNodeCount()
+    protected long countNodes()
     {
         final GraphTraversalSource g = graph.traversal();
-        final long nodeCount = g.V().count().toList().get(0);
-        return (int) nodeCount;
+        return g.V().count().toList().get(0);
     }
 
     @Override
@@ -341,22 +356,73 @@ public class TitanGraphDatabase extends GraphDatabaseBase<Iterator<Vertex>, Iter
         return neighbors;
     }
 
+    @Override
+    public Map<Integer, Set<Integer>> getNeighborsIds(Collection<Integer> nodeIds)
+    {
+        if (multiQueryChunkSize < 1)
+        {
+            return super.getNeighborsIds(nodeIds);
+        }
+        final Map<Integer, Set<Integer>> neighbors = new HashMap<Integer, Set<Integer>>();
+        for (List<Integer> chunk : Iterables.partition(nodeIds, multiQueryChunkSize))
+        {
+            final Map<TitanVertex, Integer> chunkVertices = new HashMap<TitanVertex, Integer>();
+            for (Integer nodeId : chunk)
+            {
+                chunkVertices.put((TitanVertex) getVertex(nodeId), nodeId);
+                neighbors.put(nodeId, new HashSet<Integer>());
+            }
+            // one round-trip for the adjacency of the chunk, one more for the node ids of all of its neighbours
+            final Map<TitanVertex, Iterable<TitanVertex>> adjacency = multiQuery(chunkVertices.keySet())
+                .labels(SIMILAR).direction(Direction.OUT).vertices();
+            final Set<TitanVertex> chunkNeighbors = new HashSet<TitanVertex>();
+            for (Iterable<TitanVertex> vertexNeighbors : adjacency.values())
+            {
+                Iterables.addAll(chunkNeighbors, vertexNeighbors);
+            }
+            multiQuery(chunkNeighbors).keys(NODE_ID).properties();
+            for (Map.Entry<TitanVertex, Iterable<TitanVertex>> entry : adjacency.entrySet())
+            {
+                final Set<Integer> vertexNeighbors = neighbors.get(chunkVertices.get(entry.getKey()));
+                for (TitanVertex neighbor : entry.getValue())
+                {
+                    vertexNeighbors.add(neighbor.<Integer> value(NODE_ID));
+                }
+            }
+        }
+        return neighbors;
+    }
+
     @Override
     public double getNodeWeight(int nodeId)
     {
-        Vertex vertex = getVertex(nodeId);
-        double weight = getNodeOutDegree(vertex);
-        return weight;
+        final Integer scannedOutDegree = scannedOutDegrees.get(nodeId);
+        if (scannedOutDegree != null)
+        {
+            return scannedOutDegree;
+        }
+        return getNodeDegree(nodeId, false /* iterate */);
     }
 
+    @Override
+    public long getNodeDegree(int nodeId, boolean iterate)
+    {
+        final Vertex vertex = getVertex(nodeId);
+        return iterate ? Iterators.size(vertex.edges(Direction.OUT, SIMILAR)) : (long) getNodeOutDegree(vertex);
+    }
+
+    /**
+     * Counts through a vertex-centric query, which reads the adjacency list of the vertex without building an edge
+     * and its other vertex for each entry.
+     */
     public double getNodeInDegree(Vertex vertex)
     {
-        return (double) Iterators.size(vertex.edges(Direction.IN, SIMILAR));
+        return (double) ((TitanVertex) vertex).query().labels(SIMILAR).direction(Direction.IN).edgeCount();
     }
 
     public double getNodeOutDegree(Vertex vertex)
     {
-        return (double) Iterators.size(vertex.edges(Direction.OUT, SIMILAR));
+        return (double) ((TitanVertex) vertex).query().labels(SIMILAR).direction(Direction.OUT).edgeCount();
     }
 
     @Override
@@ -466,9 +532,21 @@ public class TitanGraphDatabase extends GraphDatabaseBase<Iterator<Vertex>, Iter
 
     @Override
     public double getGraphWeightSum()
+    {
+        if (config.isTitanOlapScan())
+        {
+            // the SIMILAR edges do not change during clustering, so the out degrees stay valid for getNodeWeight
+            scannedOutDegrees.clear();
+            return runScanJob(TitanScanJob.outDegrees(scannedOutDegrees)).getCustom(TitanScanJob.EDGES);
+        }
+        return super.getGraphWeightSum();
+    }
+
+    @Override
+    protected long countEdges()
     {
         final Iterator<Edge> edges = graph.edges();
-        return (double) Iterators.size(edges);
+        return Iterators.size(edges);
     }
 
     @Override
@@ -571,10 +649,238 @@ public class TitanGraphDatabase extends GraphDatabaseBase<Iterator<Vertex>, Iter
         graph.tx().commit();
     }
 
+    @Override
+    public void findAllNodeNeighbours()
+    {
+        if (!config.isTitanOlapScan())
+        {
+            super.findAllNodeNeighbours();
+            return;
+        }
+        LOG.debug("The sum of node degrees was " + runScanJob(TitanScanJob.neighbours()).getCustom(TitanScanJob.EDGES));
+    }
+
+    @Override
+    public void findNodesOfAllEdges()
+    {
+        if (!config.isTitanOlapScan())
+        {
+            super.findNodesOfAllEdges();
+            return;
+        }
+        LOG.debug("Counted " + runScanJob(TitanScanJob.edges()).getCustom(TitanScanJob.EDGES) + " edges");
+    }
+
+    /**
+     * Runs the job over the whole edgestore with Titan's local scan executor, scanThreads worker threads processing
+     * the vertexes the executor reads from the backend, and waits for it to finish.
+     */
+    private ScanMetrics runScanJob(TitanScanJob job)
+    {
+        final StandardScanner.Builder builder = graph.getBackend().buildEdgeScanJob();
+        builder.setJob(VertexJobConverter.convert(graph, job));
+        builder.setNumProcessingThreads(scanThreads);
+        final ScanMetrics metrics;
+        try
+        {
+            metrics = builder.execute().get();
+        }
+        catch (BackendException | ExecutionException e)
+        {
+            throw new BenchmarkingException("scan job failed on " + type.getShortname(), e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new BenchmarkingException("interrupted during scan job", e);
+        }
+        if (metrics.get(ScanMetrics.Metric.FAILURE) > 0)
+        {
+            throw new BenchmarkingException(String.format("scan job failed on %d of %d vertexes",
+                metrics.get(ScanMetrics.Metric.FAILURE), metrics.getCustom(TitanScanJob.VERTICES)));
+        }
+        return metrics;
+    }
+
+    @Override
+    protected <T> T inScanTransaction(Callable<T> scan) throws Exception
+    {
+        // Titan transactions are bound to the calling thread, so every scanning thread reads in its own one
+        try
+        {
+            return scan.call();
+        }
+        finally
+        {
+            graph.tx().rollback();
+        }
+    }
+
+    /**
+     * Each scanning thread reads its share of the edgestore keys in use, see {@link TitanKeyRanges}.
+     */
+    @Override
+    protected Iterator<Vertex> getVertexIterator(int partition, int partitions)
+    {
+        return prefetchNeighbours(partitionVertices(partition, partitions));
+    }
+
+    private Iterator<Vertex> partitionVertices(int partition, int partitions)
+    {
+        final StandardTitanTx tx = (StandardTitanTx) graph.getCurrentThreadTx();
+        final IDManager idManager = graph.getIDManager();
+        final SliceQuery vertexExists = graph.getEdgeSerializer()
+            .getQuery(BaseKey.VertexExists, Direction.OUT, new EdgeSerializer.TypedInterval[0]).setLimit(1);
+        final Iterator<StaticBuffer> keys;
+        if (graph.getBackend().getStoreFeatures().hasOrderedScan())
+        {
+            final List<long[]> ranges = TitanKeyRanges.ranges(idManager.getPartitionBound(), (start, end) -> {
+                final KeyIterator probe = edgeStoreKeys(tx, keyRange(start, end, vertexExists));
+                try
+                {
+                    return probe.hasNext();
+                }
+                finally
+                {
+                    closeKeys(probe);
+                }
+            }, partition, partitions);
+            keys = Iterators.concat(Iterators.transform(ranges.iterator(),
+                range -> closing(edgeStoreKeys(tx, keyRange(range[0], range[1], vertexExists)))));
+        }
+        else
+        {
+            keys = Iterators.filter(closing(edgeStoreKeys(tx, vertexExists)),
+                key -> TitanKeyRanges.hashPartition(key.getLong(0), partitions) == partition);
+        }
+        return new AbstractIterator<Vertex>() {
+            @Override
+            protected Vertex computeNext()
+            {
+                while (keys.hasNext())
+                {
+                    final long vertexId = idManager.getKeyID(keys.next());
+                    if (!idManager.isUserVertexId(vertexId))
+                    {
+                        continue;
+                    }
+                    final TitanVertex vertex = tx.getVertex(vertexId);
+                    if (vertex != null && NODE_LABEL.equals(vertex.label()))
+                    {
+                        return vertex;
+                    }
+                }
+                return endOfData();
+            }
+        };
+    }
+
+    /**
+     * @param end
+     *            the exclusive end of the range, 0 for the end of the key space
+     */
+    private static KeyRangeQuery keyRange(long start, long end, SliceQuery slice)
+    {
+        return new KeyRangeQuery(BufferUtil.getLongBuffer(start),
+            BufferUtil.getLongBuffer(end == 0 ? -1L /*0xFF..FF*/ : end), slice);
+    }
+
+    private KeyIterator edgeStoreKeys(StandardTitanTx tx, SliceQuery query)
+    {
+        try
+        {
+            return query instanceof KeyRangeQuery ? tx.getTxHandle().edgeStoreKeys((KeyRangeQuery) query)
+                : tx.getTxHandle().edgeStoreKeys(query);
+        }
+        catch (Exception e)
+        {
+            throw new BenchmarkingException("unable to scan the edgestore of " + type.getShortname(), e);
+        }
+    }
+
+    /**
+     * @return the keys, closing the key iterator once they run out
+     */
+    private static Iterator<StaticBuffer> closing(final KeyIterator keys)
+    {
+        return new AbstractIterator<StaticBuffer>() {
+            @Override
+            protected StaticBuffer computeNext()
+            {
+                if (keys.hasNext())
+                {
+                    return keys.next();
+                }
+                closeKeys(keys);
+                return endOfData();
+            }
+        };
+    }
+
+    private static void closeKeys(KeyIterator keys)
+    {
+        try
+        {
+            keys.close();
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("unable to close the edgestore key iterator", e);
+        }
+    }
+
+    /**
+     * Every edge is visited once, from the partition of its out vertex.
+     */
+    @Override
+    protected Iterator<Edge> getAllEdges(int partition, int partitions)
+    {
+        return Iterators.concat(Iterators.transform(partitionVertices(partition, partitions),
+            v -> v.edges(Direction.OUT, SIMILAR)));
+    }
+
     @Override
     public Iterator<Vertex> getVertexIterator()
     {
-        return graph.traversal().V().hasLabel(NODE_LABEL).toStream().iterator();
+        return prefetchNeighbours(graph.traversal().V().hasLabel(NODE_LABEL).toStream().iterator());
+    }
+
+    /**
+     * Loads the SIMILAR adjacency of the vertexes in chunks of multi-query-chunk-size with one multiQuery per chunk
+     * before handing them out. The results land in the vertex caches of the thread's transaction, so the
+     * getNeighborsOfVertex calls that follow do not go to the storage backend again.
+     */
+    private Iterator<Vertex> prefetchNeighbours(Iterator<Vertex> vertices)
+    {
+        if (multiQueryChunkSize < 1)
+        {
+            return vertices;
+        }
+        return Iterators.concat(Iterators.transform(Iterators.partition(vertices, multiQueryChunkSize), chunk -> {
+            multiQuery(toTitanVertices(chunk)).labels(SIMILAR).direction(Direction.BOTH).edges();
+            return chunk.iterator();
+        }));
+    }
+
+    /**
+     * Starts a multi-vertex query in the transaction of the calling thread, where the vertexes were loaded. Titan 1.0
+     * deprecates multiQuery without a replacement, since Gremlin traversals have no batched adjacency fetch yet, so
+     * this is the only place that calls it.
+     */
+    @SuppressWarnings("deprecation")
+    private TitanMultiVertexQuery<?> multiQuery(Collection<TitanVertex> vertices)
+    {
+        return graph.getCurrentThreadTx().multiQuery(vertices);
+    }
+
+    private static List<TitanVertex> toTitanVertices(Collection<? extends Vertex> vertices)
+    {
+        final List<TitanVertex> titanVertices = new ArrayList<TitanVertex>(vertices.size());
+        for (Vertex vertex : vertices)
+        {
+            titanVertices.add((TitanVertex) vertex);
+        }
+        return titanVertices;
     }
 
     @Override
@@ -646,8 +952,14 @@ public class TitanGraphDatabase extends GraphDatabaseBase<Iterator<Vertex>, Iter
     @Override
     public Vertex getVertex(Integer i)
     {
+        final long vertexId = cachedNativeId(i);
+        if (vertexId >= 0)
+        {
+            return graph.vertices(vertexId).next();
+        }
         final GraphTraversalSource g = graph.traversal();
         final Vertex vertex = g.V().has(NODE_ID, i).next();
+        cacheNativeId(i, ((TitanVertex) vertex).longId());
         return vertex;
     }
 }
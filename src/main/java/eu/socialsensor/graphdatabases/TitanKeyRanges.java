@@ -0,0 +1,113 @@
+package eu.socialsensor.graphdatabases;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.UnsignedLongs;
+
+/**
+ * Splits the Titan edgestore keys between the threads of a partitioned scan. A key holds the id partition of its
+ * vertex in the highest bits and the count of the vertex inside that id partition below them. Counts are handed out
+ * upwards from the start of every id partition, and custom ids may put all vertexes in a single one, so equal slices
+ * of the whole key space leave most threads empty. Instead every thread gets an equal slice of the keys in use in
+ * each id partition. Stores that cannot scan key ranges hand every thread all keys, which are then shared out by
+ * hash.
+ */
+public class TitanKeyRanges
+{
+    private static final HashFunction KEY_HASH = Hashing.murmur3_32();
+
+    /**
+     * Tells whether the store holds a key in a range of unsigned keys.
+     */
+    public interface KeyProbe
+    {
+        /**
+         * @param end
+         *            the exclusive end of the range, 0 for the end of the key space
+         */
+        boolean hasKey(long start, long end);
+    }
+
+    private TitanKeyRanges()
+    {
+    }
+
+    /**
+     * @param partitionBound
+     *            the number of Titan id partitions, a power of two
+     * @param probe
+     *            used to find the last key in use of every id partition
+     * @param partition
+     *            the scan partition, in [0, partitions)
+     * @param partitions
+     *            the number of scan partitions
+     * @return the key ranges of the scan partition as {start, end} pairs, end exclusive and 0 for the end of the key
+     *         space
+     */
+    public static List<long[]> ranges(long partitionBound, KeyProbe probe, int partition, int partitions)
+    {
+        final int partitionBits = Long.numberOfTrailingZeros(partitionBound);
+        final List<long[]> ranges = new ArrayList<>();
+        for (long idPartition = 0; idPartition < partitionBound; idPartition++)
+        {
+            final long first = partitionBits == 0 ? 0 : idPartition << (Long.SIZE - partitionBits);
+            // wraps to 0 for the last id partition
+            final long end = partitionBits == 0 ? 0 : (idPartition + 1) << (Long.SIZE - partitionBits);
+            if (!probe.hasKey(first, end))
+            {
+                continue;
+            }
+            final long used = lastKey(probe, first, end) - first + 1;
+            final long start = first + sliceOffset(used, partition, partitions);
+            final long stop = first + sliceOffset(used, partition + 1, partitions);
+            if (start != stop)
+            {
+                ranges.add(new long[] { start, stop });
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Binary search for the highest key in [first, end), given that there is one.
+     */
+    private static long lastKey(KeyProbe probe, long first, long end)
+    {
+        long low = first;
+        long high = end - 1;
+        while (low != high)
+        {
+            // the upper middle, so that low always moves
+            final long middle = low + ((high - low) >>> 1) + 1;
+            if (probe.hasKey(middle, end))
+            {
+                low = middle;
+            }
+            else
+            {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return where slice i of n starts in a span of used keys, spreading the remainder over the first slices
+     */
+    private static long sliceOffset(long used, int i, int n)
+    {
+        return UnsignedLongs.divide(used, n) * i + Math.min(i, UnsignedLongs.remainder(used, n));
+    }
+
+    /**
+     * @return the scan partition that a key belongs to on stores without key range scans
+     */
+    public static int hashPartition(long key, int partitions)
+    {
+        // consecutive counts differ only in a few low bits, so mix them before taking the remainder
+        return Math.floorMod(KEY_HASH.hashLong(key).asInt(), partitions);
+    }
+}
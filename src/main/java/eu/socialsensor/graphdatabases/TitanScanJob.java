@@ -0,0 +1,98 @@
+package eu.socialsensor.graphdatabases;
+
+import java.util.Map;
+
+import org.apache.tinkerpop.gremlin.structure.Direction;
+
+import com.thinkaurelius.titan.core.TitanEdge;
+import com.thinkaurelius.titan.core.TitanVertex;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.scan.ScanMetrics;
+import com.thinkaurelius.titan.graphdb.olap.QueryContainer;
+import com.thinkaurelius.titan.graphdb.olap.VertexScanJob;
+
+/**
+ * Vertex scan job that walks the SIMILAR adjacency of every vertex from edgestore slices the Titan scan executor
+ * reads directly off the storage backend. Each worker thread runs its own clone, so all results are accumulated in
+ * the custom scan metrics or in the shared, concurrent outDegrees map.
+ */
+class TitanScanJob implements VertexScanJob
+{
+    public static final String VERTICES = "vertices";
+    public static final String EDGES = "edges";
+
+    private final Direction direction;
+    private final Map<Integer, Integer> outDegrees;
+
+    private TitanScanJob(Direction direction, Map<Integer, Integer> outDegrees)
+    {
+        this.direction = direction;
+        this.outDegrees = outDegrees;
+    }
+
+    /**
+     * Visits the other end of every incident edge of every vertex, like FIND_NEIGHBOURS. EDGES counts the sum of
+     * vertex degrees.
+     */
+    static TitanScanJob neighbours()
+    {
+        return new TitanScanJob(Direction.BOTH, null);
+    }
+
+    /**
+     * Visits both ends of every edge once, from its out vertex, like FIND_ADJACENT_NODES. EDGES counts the edges.
+     */
+    static TitanScanJob edges()
+    {
+        return new TitanScanJob(Direction.OUT, null);
+    }
+
+    /**
+     * Records the out degree of every vertex by node id, the node weight used by clustering. EDGES counts the edges.
+     */
+    static TitanScanJob outDegrees(Map<Integer, Integer> outDegrees)
+    {
+        return new TitanScanJob(Direction.OUT, outDegrees);
+    }
+
+    @Override
+    public void getQueries(QueryContainer queries)
+    {
+        queries.addQuery().labels(GraphDatabaseBase.SIMILAR).direction(direction).edges();
+        if (outDegrees != null)
+        {
+            queries.addQuery().keys(GraphDatabaseBase.NODE_ID).properties();
+        }
+    }
+
+    @Override
+    public void process(TitanVertex vertex, ScanMetrics metrics)
+    {
+        long edges = 0;
+        for (TitanEdge edge : vertex.query().labels(GraphDatabaseBase.SIMILAR).direction(direction).edges())
+        {
+            @SuppressWarnings("unused")
+            Object other;
+            if (direction == Direction.BOTH)
+            {
+                other = edge.otherVertex(vertex);
+            }
+            else
+            {
+                other = edge.inVertex();
+            }
+            edges++;
+        }
+        if (outDegrees != null)
+        {
+            outDegrees.put(vertex.<Integer> value(GraphDatabaseBase.NODE_ID), (int) edges);
+        }
+        metrics.incrementCustom(VERTICES);
+        metrics.incrementCustom(EDGES, edges);
+    }
+
+    @Override
+    public TitanScanJob clone()
+    {
+        return new TitanScanJob(direction, outDegrees);
+    }
+}
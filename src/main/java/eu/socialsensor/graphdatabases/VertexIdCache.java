@@ -0,0 +1,63 @@
+package eu.socialsensor.graphdatabases;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Native ids of vertexes by dataset node id, so that a vertex looked up once by its node id is then fetched by its
+ * native id without going through the property index. The ids are kept in an array indexed by node id, which
+ * dataset node ids are dense enough for, and grown as larger node ids are cached. Reads take no lock; a read that
+ * races with growth misses and the caller falls back to the index.
+ */
+public class VertexIdCache
+{
+    private static final long ABSENT = -1;
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    // the largest array the JVM reliably allocates
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private volatile AtomicLongArray nativeIds = newArray(INITIAL_CAPACITY);
+
+    private static AtomicLongArray newArray(int capacity)
+    {
+        final AtomicLongArray array = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++)
+        {
+            array.set(i, ABSENT);
+        }
+        return array;
+    }
+
+    /**
+     * @return the native id cached for the node id, or -1 if there is none
+     */
+    public long get(int nodeId)
+    {
+        final AtomicLongArray ids = nativeIds;
+        return nodeId >= 0 && nodeId < ids.length() ? ids.get(nodeId) : ABSENT;
+    }
+
+    /**
+     * @param nativeId
+     *            a non negative native id
+     */
+    public synchronized void put(int nodeId, long nativeId)
+    {
+        if (nodeId < 0 || nodeId >= MAX_CAPACITY)
+        {
+            return;
+        }
+        AtomicLongArray ids = nativeIds;
+        if (nodeId >= ids.length())
+        {
+            final int capacity = (int) Math.min(MAX_CAPACITY, Math.max(2L * ids.length(), nodeId + 1L));
+            final AtomicLongArray grown = newArray(capacity);
+            for (int i = 0; i < ids.length(); i++)
+            {
+                grown.set(i, ids.get(i));
+            }
+            nativeIds = grown;
+            ids = grown;
+        }
+        ids.set(nodeId, nativeId);
+    }
+}
@@ -2,6 +2,8 @@ package eu.socialsensor.insert;
 
 import java.io.File;
 
+import eu.socialsensor.graphdatabases.GraphMetadata;
+
 /**
  * Represents the insertion of data in each graph database
  * 
@@ -17,4 +19,9 @@ public interface Insertion
      */
     public void createGraph(File dataset, int scenarioNumber);
 
+    /**
+     * @return the number of distinct nodes and of edges that createGraph inserted
+     */
+    public GraphMetadata getGraphMetadata();
+
 }
@@ -9,6 +9,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.carrotsearch.hppc.IntHashSet;
 import com.codahale.metrics.Timer;
 import com.google.common.base.Stopwatch;
 
@@ -16,6 +17,7 @@ import eu.socialsensor.benchmarks.SingleInsertionBenchmark;
 import eu.socialsensor.dataset.Dataset;
 import eu.socialsensor.dataset.DatasetFactory;
 import eu.socialsensor.graphdatabases.GraphDatabaseBase;
+import eu.socialsensor.graphdatabases.GraphMetadata;
 import eu.socialsensor.main.GraphDatabaseBenchmark;
 import eu.socialsensor.main.GraphDatabaseType;
 import eu.socialsensor.utils.Utils;
@@ -41,6 +43,9 @@ public abstract class InsertionBase<T> implements Insertion
     protected final GraphDatabaseType type;
     protected final List<Double> insertionTimes;
     private final boolean single;
+    // the node ids and the number of edges inserted, for the graph metadata
+    private final IntHashSet insertedNodes = new IntHashSet();
+    private long insertedEdges = 0;
 
     // to write intermediate times for SingleInsertion subclasses
     protected final File resultsPath;
@@ -51,9 +56,21 @@ public abstract class InsertionBase<T> implements Insertion
         this.insertionTimes = new ArrayList<Double>();
         this.resultsPath = resultsPath;
         this.single = resultsPath != null;
-        final String insertionTypeCtxt = type.getShortname() + INSERTION_CONTEXT + (single ? "adhoc." : "batch.");
-        this.getOrCreateTimes = GraphDatabaseBenchmark.metrics.timer(insertionTypeCtxt + "getOrCreate");
-        this.relateNodesTimes = GraphDatabaseBenchmark.metrics.timer(insertionTypeCtxt + "relateNodes");
+        this.getOrCreateTimes = GraphDatabaseBenchmark.metrics.timer(insertionContext(type, single) + "getOrCreate");
+        this.relateNodesTimes = GraphDatabaseBenchmark.metrics.timer(relateNodesMetricName(type, single));
+    }
+
+    private static String insertionContext(GraphDatabaseType type, boolean single)
+    {
+        return type.getShortname() + INSERTION_CONTEXT + (single ? "adhoc." : "batch.");
+    }
+
+    /**
+     * @return the name of the timer of relateNodes, whose count is the number of edges inserted so far
+     */
+    public static String relateNodesMetricName(GraphDatabaseType type, boolean single)
+    {
+        return insertionContext(type, single) + "relateNodes";
     }
 
     /**
@@ -90,7 +107,8 @@ public abstract class InsertionBase<T> implements Insertion
         Stopwatch thousandWatch = Stopwatch.createStarted(), watch = Stopwatch.createStarted();
 
         final AtomicInteger i = new AtomicInteger(4);
-        dataset.getList().stream().forEach(line -> {
+        // iterate rather than copy the list, as generated datasets are only generated while they are iterated
+        dataset.forEach(line -> {
             final Timer.Context contextSrc = getOrCreateTimes.time();
             T srcNode, dstNode;
             try {
@@ -112,6 +130,9 @@ public abstract class InsertionBase<T> implements Insertion
             } finally {
                 contextRelate.stop();
             }
+            insertedNodes.add(Integer.parseInt(line.get(0).trim()));
+            insertedNodes.add(Integer.parseInt(line.get(1).trim()));
+            insertedEdges++;
 
             if (i.getAndIncrement() % 1000 == 0) {
                 insertionTimes.add((double) thousandWatch.elapsed(TimeUnit.MILLISECONDS));
@@ -131,4 +152,10 @@ public abstract class InsertionBase<T> implements Insertion
                     + Integer.toString(scenarioNumber)));
         }
     }
+
+    @Override
+    public GraphMetadata getGraphMetadata()
+    {
+        return new GraphMetadata(insertedNodes.size(), insertedEdges);
+    }
 }
@@ -0,0 +1,217 @@
+package eu.socialsensor.insert;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import eu.socialsensor.main.BenchmarkingException;
+import eu.socialsensor.main.GraphDatabaseBenchmark;
+import eu.socialsensor.main.GraphDatabaseType;
+
+/**
+ * Records the insertion rate over the course of a load as a CSV time series, next to heap usage, GC time and the
+ * size of the storage directory. The number of edges inserted is read from the relateNodes timer of the insertion,
+ * so that the insertion needs no changes. A background thread polls that timer and writes an interval row every
+ * interval and an edges row whenever it first sees the count reach the next multiple of the edge step. Rates are
+ * computed from the edges and time between consecutive rows of the same kind. Walking the storage directory costs a
+ * call per file, so during the load its size is only measured every storage interval and left blank in the rows in
+ * between; the final rows written by close always have it.
+ */
+public class InsertionTimeSeries implements AutoCloseable
+{
+    private static final Logger LOG = LogManager.getLogger();
+    private static final long POLL_MS = 50;
+    private static final String INTERVAL_ROW = "interval";
+    private static final String EDGES_ROW = "edges";
+
+    private final Timer relateNodesTimes;
+    private final File storageDirectory;
+    private final long intervalMs;
+    private final long edgeStep;
+    private final long storageIntervalMs;
+    private final BufferedWriter out;
+    private final ScheduledExecutorService poller;
+    private final long startNanos;
+    private final long startEdges;
+    private final long startGcMs;
+
+    // written by the poller thread only
+    private long nextIntervalMs;
+    private long nextEdgeMark;
+    private long nextStorageMs;
+    private long lastIntervalMs = 0;
+    private long lastIntervalEdges = 0;
+    private long lastMarkMs = 0;
+    private long lastMarkEdges = 0;
+    private volatile IOException failure = null;
+
+    /**
+     * @param intervalMs
+     *            wall clock time between interval rows, zero for none
+     * @param edgeStep
+     *            edges between edges rows, zero for none
+     * @param storageIntervalMs
+     *            wall clock time between measurements of the storage directory during the load, zero for none
+     */
+    public InsertionTimeSeries(GraphDatabaseType type, boolean single, File csv, File storageDirectory,
+        long intervalMs, long edgeStep, long storageIntervalMs)
+    {
+        this.relateNodesTimes = GraphDatabaseBenchmark.metrics.timer(InsertionBase.relateNodesMetricName(type,
+            single));
+        this.storageDirectory = storageDirectory;
+        this.intervalMs = intervalMs;
+        this.edgeStep = edgeStep;
+        this.storageIntervalMs = storageIntervalMs;
+        try
+        {
+            this.out = new BufferedWriter(new FileWriter(csv));
+            out.write("Kind,Elapsed (ms),Edges,Edges/s,Heap Used (bytes),GC Time (ms),Storage (bytes)\n");
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("unable to write insertion time series to " + csv, e);
+        }
+        this.startNanos = System.nanoTime();
+        this.startEdges = relateNodesTimes.getCount();
+        this.startGcMs = gcTimeMs();
+        this.nextIntervalMs = intervalMs;
+        this.nextEdgeMark = edgeStep;
+        this.nextStorageMs = storageIntervalMs;
+        this.poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("insertion-time-series-" + type.getShortname()).build());
+        poller.scheduleAtFixedRate(this::poll, POLL_MS, POLL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll()
+    {
+        try
+        {
+            final long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            final long edges = relateNodesTimes.getCount() - startEdges;
+            if (intervalMs > 0 && elapsedMs >= nextIntervalMs)
+            {
+                write(INTERVAL_ROW, elapsedMs, edges, lastIntervalMs, lastIntervalEdges, storageDue(elapsedMs));
+                lastIntervalMs = elapsedMs;
+                lastIntervalEdges = edges;
+                nextIntervalMs = (elapsedMs / intervalMs + 1) * intervalMs;
+            }
+            if (edgeStep > 0 && edges >= nextEdgeMark)
+            {
+                write(EDGES_ROW, elapsedMs, edges, lastMarkMs, lastMarkEdges, storageDue(elapsedMs));
+                lastMarkMs = elapsedMs;
+                lastMarkEdges = edges;
+                nextEdgeMark = (edges / edgeStep + 1) * edgeStep;
+            }
+        }
+        catch (IOException e)
+        {
+            // stop polling; close reports the failure
+            failure = e;
+            throw new BenchmarkingException("unable to write insertion time series", e);
+        }
+    }
+
+    /**
+     * @return whether the next row measures the storage directory, moving on to the next storage interval if it does
+     */
+    private boolean storageDue(long elapsedMs)
+    {
+        if (storageIntervalMs == 0 || elapsedMs < nextStorageMs)
+        {
+            return false;
+        }
+        nextStorageMs = (elapsedMs / storageIntervalMs + 1) * storageIntervalMs;
+        return true;
+    }
+
+    private void write(String kind, long elapsedMs, long edges, long previousMs, long previousEdges,
+        boolean measureStorage) throws IOException
+    {
+        final double rate = elapsedMs == previousMs ? 0 : (edges - previousEdges) * 1000.0 / (elapsedMs - previousMs);
+        final long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        final String storageBytes = measureStorage ? Long.toString(sizeOf(storageDirectory)) : "";
+        out.write(String.format("%s,%d,%d,%f,%d,%d,%s\n", kind, elapsedMs, edges, rate, heapUsed, gcTimeMs()
+            - startGcMs, storageBytes));
+    }
+
+    /**
+     * @return the total length of the files under the directory. Unlike FileUtils.sizeOfDirectory, this tolerates
+     *         files that the database deletes while they are counted.
+     */
+    static long sizeOf(File file)
+    {
+        final File[] children = file.listFiles();
+        if (children == null)
+        {
+            return file.length(); // a file, or gone
+        }
+        long size = 0;
+        for (File child : children)
+        {
+            size += sizeOf(child);
+        }
+        return size;
+    }
+
+    private static long gcTimeMs()
+    {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    /**
+     * Stops polling, writes the final rows and closes the CSV.
+     */
+    @Override
+    public void close()
+    {
+        poller.shutdown();
+        try
+        {
+            if (!poller.awaitTermination(1, TimeUnit.MINUTES))
+            {
+                LOG.warn("insertion time series poller did not stop");
+            }
+            if (failure != null)
+            {
+                throw failure;
+            }
+            final long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            final long edges = relateNodesTimes.getCount() - startEdges;
+            if (intervalMs > 0)
+            {
+                write(INTERVAL_ROW, elapsedMs, edges, lastIntervalMs, lastIntervalEdges, true /*measureStorage*/);
+            }
+            if (edgeStep > 0 && edges > lastMarkEdges)
+            {
+                write(EDGES_ROW, elapsedMs, edges, lastMarkMs, lastMarkEdges, true /*measureStorage*/);
+            }
+            out.close();
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("unable to write insertion time series", e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new BenchmarkingException("interrupted while stopping insertion time series", e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package eu.socialsensor.insert;
+
+import java.io.File;
+
+import eu.socialsensor.graphdatabases.MemoryGraph;
+import eu.socialsensor.main.GraphDatabaseType;
+
+/**
+ * Insertion into the in-memory graph, in both modes: without transactions there is no difference between a batch
+ * and single insertions.
+ */
+public class MemoryInsertion extends InsertionBase<Integer>
+{
+    private final MemoryGraph graph;
+
+    /**
+     * @param resultsPath
+     *            where to write the times of single insertions, or null for massive insertion
+     */
+    public MemoryInsertion(MemoryGraph graph, File resultsPath)
+    {
+        super(GraphDatabaseType.MEMORY, resultsPath);
+        this.graph = graph;
+    }
+
+    @Override
+    protected Integer getOrCreate(String value)
+    {
+        return graph.getOrCreateNode(Integer.parseInt(value.trim()));
+    }
+
+    @Override
+    protected void relateNodes(Integer src, Integer dest)
+    {
+        graph.addEdge(src, dest);
+    }
+
+    @Override
+    protected void post()
+    {
+        graph.seal();
+    }
+}
@@ -32,7 +32,7 @@ public final class Neo4jMassiveInsertion extends InsertionBase<Long>
         Long id = cache.get(Long.valueOf(value));
         if (id == null)
         {
-            Map<String, Object> properties = MapUtil.map("nodeId", value);
+            Map<String, Object> properties = MapUtil.map("nodeId", Integer.valueOf(value));
             id = inserter.createNode(properties, Neo4jGraphDatabase.NODE_LABEL);
             cache.put(Long.valueOf(value), id);
         }
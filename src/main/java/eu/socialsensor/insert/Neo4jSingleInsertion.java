@@ -40,7 +40,7 @@ public class Neo4jSingleInsertion extends InsertionBase<Node>
             {
                 String queryString = "MERGE (n:Node {nodeId: {nodeId}}) RETURN n";
                 Map<String, Object> parameters = new HashMap<String, Object>();
-                parameters.put("nodeId", nodeId);
+                parameters.put("nodeId", Integer.valueOf(nodeId));
                 ResourceIterator<Node> resultIterator = neo4jGraph.execute(queryString, parameters).columnAs("n");
                 result = resultIterator.next();
                 tx.success();
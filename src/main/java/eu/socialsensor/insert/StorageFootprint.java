@@ -0,0 +1,167 @@
+package eu.socialsensor.insert;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.codahale.metrics.Timer;
+
+import eu.socialsensor.main.BenchmarkingException;
+import eu.socialsensor.main.GraphDatabaseBenchmark;
+import eu.socialsensor.main.GraphDatabaseType;
+
+/**
+ * Measures what a load leaves on disk: the size of the storage directory after the load and after shutdown, and
+ * the bytes the process wrote to storage until then according to write_bytes of /proc/self/io. The counters of the
+ * process include everything else it writes, like results files, so they are most accurate with forked databases.
+ * Where /proc/self/io is not readable, the bytes written are -1. Where the size on disk cannot be measured, because
+ * the database keeps its data on a server or in memory or the storage directory does not exist, the sizes are -1
+ * and the bytes per edge NaN rather than a size of zero.
+ */
+public class StorageFootprint
+{
+    private static final Logger LOG = LogManager.getLogger();
+    private static final File PROC_SELF_IO = new File("/proc/self/io");
+    private static final String WRITE_BYTES = "write_bytes:";
+
+    public static final String EDGES = "storage.edges";
+    public static final String BYTES_AFTER_LOAD = "storage.bytesAfterLoad";
+    public static final String BYTES_AFTER_SHUTDOWN = "storage.bytesAfterShutdown";
+    public static final String BYTES_WRITTEN_DURING_LOAD = "storage.bytesWrittenDuringLoad";
+    public static final String BYTES_WRITTEN_UNTIL_SHUTDOWN = "storage.bytesWrittenUntilShutdown";
+
+    private final Timer relateNodesTimes;
+    // null when the database does not keep its data in the storage directory
+    private final File storageDirectory;
+    private final long startEdges;
+    private final long startWriteBytes;
+    private final SortedMap<String, Long> counters = new TreeMap<String, Long>();
+
+    public StorageFootprint(GraphDatabaseType type, boolean single, File storageDirectory)
+    {
+        this.relateNodesTimes = GraphDatabaseBenchmark.metrics.timer(InsertionBase.relateNodesMetricName(type,
+            single));
+        this.storageDirectory = GraphDatabaseType.NO_LOCAL_STORAGE.contains(type) ? null : storageDirectory;
+        this.startEdges = relateNodesTimes.getCount();
+        this.startWriteBytes = writeBytes();
+    }
+
+    /**
+     * Measures the storage directory once the data is loaded, before the database shuts down.
+     */
+    public void loaded()
+    {
+        counters.put(EDGES, relateNodesTimes.getCount() - startEdges);
+        counters.put(BYTES_AFTER_LOAD, storageBytes());
+        counters.put(BYTES_WRITTEN_DURING_LOAD, writtenSinceStart());
+    }
+
+    /**
+     * Measures the storage directory after the database shut down, and with it flushed and compacted what it does
+     * on shutdown.
+     */
+    public void shutDown()
+    {
+        counters.put(BYTES_AFTER_SHUTDOWN, storageBytes());
+        counters.put(BYTES_WRITTEN_UNTIL_SHUTDOWN, writtenSinceStart());
+    }
+
+    public SortedMap<String, Long> getCounters()
+    {
+        return counters;
+    }
+
+    /**
+     * @return the size of the storage directory, or -1 where it does not hold the data of the database
+     */
+    private long storageBytes()
+    {
+        if (storageDirectory == null || !storageDirectory.isDirectory())
+        {
+            return -1;
+        }
+        return InsertionTimeSeries.sizeOf(storageDirectory);
+    }
+
+    private long writtenSinceStart()
+    {
+        final long writeBytes = writeBytes();
+        return writeBytes < 0 || startWriteBytes < 0 ? -1 : writeBytes - startWriteBytes;
+    }
+
+    /**
+     * @return the bytes this process caused to be written to storage, or -1 where that is not known
+     */
+    private static long writeBytes()
+    {
+        if (!PROC_SELF_IO.canRead())
+        {
+            return -1;
+        }
+        try
+        {
+            for (String line : Files.readAllLines(PROC_SELF_IO.toPath(), StandardCharsets.UTF_8))
+            {
+                if (line.startsWith(WRITE_BYTES))
+                {
+                    return Long.parseLong(line.substring(WRITE_BYTES.length()).trim());
+                }
+            }
+        }
+        catch (IOException | NumberFormatException e)
+        {
+            LOG.warn("unable to read " + PROC_SELF_IO + ": " + e.getMessage());
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the footprint of every database and scenario with the bytes on disk per edge and the write
+     * amplification, the bytes written until shutdown relative to the size of the dataset file.
+     *
+     * @param counters
+     *            the counters of each scenario by database; scenarios without storage counters are skipped
+     */
+    public static void write(File csv, Map<GraphDatabaseType, SortedMap<Integer, SortedMap<String, Long>>> counters,
+        Collection<GraphDatabaseType> databases, long datasetBytes)
+    {
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(csv)))
+        {
+            out.write("DB,Scenario,Edges,Dataset (bytes),After Load (bytes),After Shutdown (bytes),"
+                + "Written During Load (bytes),Written Until Shutdown (bytes),Bytes per Edge,Write Amplification\n");
+            for (GraphDatabaseType type : databases)
+            {
+                for (Map.Entry<Integer, SortedMap<String, Long>> scenario : counters.get(type).entrySet())
+                {
+                    final SortedMap<String, Long> footprint = scenario.getValue();
+                    if (!footprint.containsKey(BYTES_AFTER_SHUTDOWN))
+                    {
+                        continue;
+                    }
+                    final long edges = footprint.get(EDGES);
+                    final long stored = footprint.get(BYTES_AFTER_SHUTDOWN);
+                    final long written = footprint.get(BYTES_WRITTEN_UNTIL_SHUTDOWN);
+                    out.write(String.format("%s,%d,%d,%d,%d,%d,%d,%d,%f,%f\n", type.getShortname(), scenario.getKey(),
+                        edges, datasetBytes, footprint.get(BYTES_AFTER_LOAD), stored,
+                        footprint.get(BYTES_WRITTEN_DURING_LOAD), written,
+                        edges == 0 || stored < 0 ? Double.NaN : stored / (double) edges,
+                        written < 0 || datasetBytes == 0 ? Double.NaN : written / (double) datasetBytes));
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("unable to write storage footprint to " + csv, e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package eu.socialsensor.insert;
+
+import java.io.File;
+
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+
+import eu.socialsensor.main.GraphDatabaseType;
+
+/**
+ * Insertion into TinkerGraph through the same Gremlin calls as the OrientDB insertion. TinkerGraph has no
+ * transactions, so massive and single insertion are the same apart from where the times go.
+ */
+public class TinkerGraphInsertion extends InsertionBase<Vertex>
+{
+    private final Graph graph;
+
+    /**
+     * @param resultsPath
+     *            where to write the times of single insertions, or null for massive insertion
+     */
+    public TinkerGraphInsertion(Graph graph, File resultsPath)
+    {
+        super(GraphDatabaseType.TINKERGRAPH, resultsPath);
+        this.graph = graph;
+    }
+
+    @Override
+    protected Vertex getOrCreate(String value)
+    {
+        final Integer intValue = Integer.valueOf(value);
+        final GraphTraversal<Vertex, Vertex> traversal = graph.traversal().V().hasLabel(NODE_LABEL).has(NODEID, intValue);
+        final Vertex vertex = traversal.hasNext() ? traversal.next() : graph.addVertex(T.label, NODE_LABEL, NODEID, intValue);
+        return vertex;
+    }
+
+    @Override
+    protected void relateNodes(Vertex src, Vertex dest)
+    {
+        src.addEdge(SIMILAR, dest);
+    }
+}
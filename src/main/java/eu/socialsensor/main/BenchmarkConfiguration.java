@@ -4,6 +4,7 @@ import java.io.File;
 import java.util.*;
 
 import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.commons.math3.util.CombinatoricsUtils;
 
 import com.amazon.titan.diskstorage.dynamodb.BackendDataModel;
@@ -12,6 +13,7 @@ import com.google.common.primitives.Ints;
 import com.thinkaurelius.titan.graphdb.configuration.GraphDatabaseConfiguration;
 
 import eu.socialsensor.dataset.DatasetFactory;
+import eu.socialsensor.dataset.GeneratedDataset;
 import jp.classmethod.titan.diskstorage.tupl.TuplStoreManager;
 
 /**
@@ -32,6 +34,13 @@ public class BenchmarkConfiguration
     public static final String GRAPHITE = GraphDatabaseConfiguration.METRICS_GRAPHITE_NS.getName();
     private static final String GRAPHITE_HOSTNAME = GraphDatabaseConfiguration.GRAPHITE_HOST.getName();
     private static final String CUSTOM_IDS = "custom-ids";
+    private static final String OLAP_SCAN = "olap-scan";
+    private static final String MULTI_QUERY_CHUNK_SIZE = "multi-query-chunk-size";
+
+    // Neo4j specific configuration
+    private static final String NEO4J = "neo4j";
+    private static final String UNIT_OF_WORK_TRANSACTIONS = "unit-of-work-transactions";
+    private static final String COMMIT_EVERY = "commit-every";
 
     // DynamoDB Storage Backend for Titan specific configuration
     private static final String CONSTRUCTOR_ARGS = Constants.DYNAMODB_CREDENTIALS_CONSTRUCTOR_ARGS.getName();
@@ -43,7 +52,9 @@ public class BenchmarkConfiguration
     private static final String TABLE_PREFIX = Constants.DYNAMODB_TABLE_PREFIX.getName();
 
     // benchmark configuration
+    private static final String SOCIALSENSOR = "eu.socialsensor.";
     private static final String DATASET = "dataset";
+    private static final String RESULTS_PATH = "results-path";
     private static final String DATABASE_STORAGE_DIRECTORY = "database-storage-directory";
     private static final String ACTUAL_COMMUNITIES = "actual-communities";
     private static final String RANDOMIZE_CLUSTERING = "randomize-clustering";
@@ -52,6 +63,45 @@ public class BenchmarkConfiguration
     private static final String RANDOM_NODES = "shortest-path-random-nodes";
     private static final String RANDOM_SEED = "random-seed";
     private static final String MAX_HOPS = "shortest-path-max-hops";
+    private static final String SCAN_THREADS = "scan-threads";
+    private static final String VERTEX_ID_CACHE = "vertex-id-cache";
+    private static final String VALIDATE_GRAPH_METADATA = "validate-graph-metadata";
+    private static final String VERTEX_LOOKUP = "vertex-lookup";
+    private static final String VERTEX_LOOKUP_THREADS = "threads";
+    private static final String VERTEX_LOOKUP_LOOKUPS = "lookups";
+    private static final String GREMLIN = "gremlin";
+    private static final String GREMLIN_REUSE_TRAVERSALS = "reuse-traversals";
+    private static final String GREMLIN_DISABLED_STRATEGIES = "disabled-strategies";
+    private static final String INSERTION_TIME_SERIES = "insertion-time-series";
+    private static final String JFR = "jfr";
+    private static final String JFR_ENABLED = "enabled";
+    private static final String JFR_SETTINGS = "settings";
+    private static final String JFR_TOP = "top";
+    private static final String INTERVAL_MS = "interval-ms";
+    private static final String EDGES = "edges";
+    private static final String STORAGE_INTERVAL_MS = "storage-interval-ms";
+
+    // fork-per-database execution
+    private static final String FORK = "fork";
+    private static final String FORK_ENABLED = "enabled";
+    private static final String FORK_JVM_ARGS = "jvm-args";
+    private static final String FORK_PARALLELISM = "parallelism";
+    private static final String FORK_CPU_SETS = "cpu-sets";
+
+    // repeated trials in random database order
+    private static final String TRIALS = "trials";
+    private static final String TRIALS_MAX = "max";
+    private static final String TRIALS_MIN = "min";
+    private static final String TRIALS_SEED = "seed";
+    private static final String TRIALS_CONFIDENCE = "confidence";
+    private static final String TRIALS_BOOTSTRAP_RESAMPLES = "bootstrap-resamples";
+    private static final String TRIALS_TARGET_RELATIVE_CI_WIDTH = "target-relative-ci-width";
+    private static final String TRIALS_OUTLIER_IQR_FACTOR = "outlier-iqr-factor";
+
+    // data-size scaling sweep
+    private static final String SWEEP = "sweep";
+    private static final String SWEEP_FRACTIONS = "fractions";
+    private static final String SWEEP_DIRECTORY_PREFIX = "sweep-";
     
     private static final Set<String> metricsReporters = new HashSet<String>();
     static {
@@ -81,6 +131,49 @@ public class BenchmarkConfiguration
     // shortest path
     private final int numShortestPathRandomNodes;
 
+    // full graph scans (FIND_NEIGHBOURS, FIND_ADJACENT_NODES)
+    private final int scanThreads;
+
+    // vertex lookup by node id
+    private final boolean vertexIdCache;
+    private final List<Integer> vertexLookupThreads;
+    private final int vertexLookups;
+
+    // whether to check the node and edge counts kept at insertion against a full count
+    private final boolean validateGraphMetadata;
+
+    // gremlin traversal setup
+    private final boolean gremlinTraversalReuse;
+    private final List<String> gremlinDisabledStrategies;
+
+    // insertion rate time series, zero to turn off either kind of row
+    private final long insertionTimeSeriesIntervalMs;
+    private final long insertionTimeSeriesEdges;
+    private final long insertionTimeSeriesStorageIntervalMs;
+
+    // flight recordings of each benchmarkOne of permuting benchmarks
+    private final boolean flightRecording;
+    private final String flightRecordingSettings;
+    private final int flightRecordingTop;
+
+    // fork-per-database execution of permuting benchmarks
+    private final boolean forkDatabases;
+    private final List<String> forkJvmArgs;
+    private final int forkParallelism;
+    private final List<String> forkCpuSets;
+
+    // fractions of the dataset to run the benchmarks on in a scaling sweep, in increasing order; empty when off
+    private final List<Double> sweepFractions;
+
+    // repeated trials of permuting benchmarks, zero maxTrials when off
+    private final int maxTrials;
+    private final int minTrials;
+    private final long trialsSeed;
+    private final double trialsConfidence;
+    private final int bootstrapResamples;
+    private final double targetRelativeCiWidth;
+    private final double outlierIqrFactor;
+
     // clustering
     private final Boolean randomizedClustering;
     private final Integer cacheValuesCount;
@@ -99,10 +192,15 @@ public class BenchmarkConfiguration
     private final boolean dynamodbPrecreateTables;
     private final String dynamodbTablePrefix;
     private final boolean customIds;
+    private final boolean titanOlapScan;
+    private final int titanMultiQueryChunkSize;
+    private final boolean neo4jUnitOfWorkTransactions;
+    private final int neo4jCommitEvery;
     private final long tuplMinCacheSize;
     private final int shortestPathMaxHops;
 
     private final Random random;
+    private final Configuration appconfig;
 
     public String getDynamodbCredentialsFqClassName()
     {
@@ -126,6 +224,7 @@ public class BenchmarkConfiguration
             throw new IllegalArgumentException("appconfig may not be null");
         }
 
+        this.appconfig = appconfig;
         Configuration eu = appconfig.subset("eu");
         Configuration socialsensor = eu.subset("socialsensor");
         
@@ -161,6 +260,20 @@ public class BenchmarkConfiguration
         blocksize = titan.getInt(IDS_BLOCKSIZE, GraphDatabaseConfiguration.IDS_BLOCK_SIZE.getDefaultValue());
         pageSize = titan.getInt(PAGE_SIZE, GraphDatabaseConfiguration.PAGE_SIZE.getDefaultValue());
         customIds = titan.getBoolean(CUSTOM_IDS, false /*default*/);
+        titanOlapScan = titan.getBoolean(OLAP_SCAN, false /*default*/);
+        titanMultiQueryChunkSize = titan.getInt(MULTI_QUERY_CHUNK_SIZE, 0 /*default, one query per vertex*/);
+        if (titanMultiQueryChunkSize < 0)
+        {
+            throw new IllegalArgumentException("titan.multi-query-chunk-size must not be negative");
+        }
+
+        final Configuration neo4j = socialsensor.subset(NEO4J);
+        neo4jUnitOfWorkTransactions = neo4j.getBoolean(UNIT_OF_WORK_TRANSACTIONS, false /*default*/);
+        neo4jCommitEvery = neo4j.getInt(COMMIT_EVERY, 0 /*default, one transaction per unit of work*/);
+        if (neo4jCommitEvery < 0)
+        {
+            throw new IllegalArgumentException("neo4j.commit-every must not be negative");
+        }
 
         final Configuration tupl = socialsensor.subset("tupl");
         tuplMinCacheSize = tupl.getLong(TuplStoreManager.TUPL_MIN_CACHE_SIZE.getName(), TuplStoreManager.TUPL_MIN_CACHE_SIZE.getDefaultValue());
@@ -171,13 +284,68 @@ public class BenchmarkConfiguration
             throw new IllegalArgumentException("configuration must specify database-storage-directory");
         }
         dbStorageDirectory = new File(socialsensor.getString(DATABASE_STORAGE_DIRECTORY));
-        dataset = validateReadableFile(socialsensor.getString(DATASET), DATASET);
+        final String datasetName = socialsensor.getString(DATASET);
+        if (datasetName == null || !GeneratedDataset.isGenerator(datasetName))
+        {
+            // a fraction of a file is validated as the file
+            validateReadableFile(datasetName == null ? null : DatasetFactory.sourceFile(new File(datasetName))
+                .getPath(), DATASET);
+        }
+        dataset = new File(datasetName);
 
 
         // load the dataset
         random = new Random(socialsensor.getInt(RANDOM_SEED, 17 /*default*/));
         numShortestPathRandomNodes = socialsensor.getInteger(RANDOM_NODES, new Integer(101));
         shortestPathMaxHops = socialsensor.getInteger(MAX_HOPS, 5);
+        scanThreads = socialsensor.getInt(SCAN_THREADS, 1 /*default, single global iterator*/);
+        if (scanThreads < 1)
+        {
+            throw new IllegalArgumentException("scan-threads must be at least one");
+        }
+        vertexIdCache = socialsensor.getBoolean(VERTEX_ID_CACHE, false /*default*/);
+        final Configuration vertexLookup = socialsensor.subset(VERTEX_LOOKUP);
+        vertexLookupThreads = new ArrayList<Integer>();
+        for (Object threads : vertexLookup.getList(VERTEX_LOOKUP_THREADS, Arrays.asList("1", "4", "16")))
+        {
+            final int value = Integer.parseInt(threads.toString().trim());
+            if (value < 1)
+            {
+                throw new IllegalArgumentException("vertex-lookup.threads must be at least one");
+            }
+            vertexLookupThreads.add(value);
+        }
+        vertexLookups = vertexLookup.getInt(VERTEX_LOOKUP_LOOKUPS, 100000 /*default*/);
+        if (vertexLookups < 1)
+        {
+            throw new IllegalArgumentException("vertex-lookup.lookups must be at least one");
+        }
+        validateGraphMetadata = socialsensor.getBoolean(VALIDATE_GRAPH_METADATA, false /*default*/);
+        final Configuration gremlin = socialsensor.subset(GREMLIN);
+        gremlinTraversalReuse = gremlin.getBoolean(GREMLIN_REUSE_TRAVERSALS, true /*default*/);
+        gremlinDisabledStrategies = new ArrayList<String>();
+        for (Object strategy : gremlin.getList(GREMLIN_DISABLED_STRATEGIES))
+        {
+            gremlinDisabledStrategies.add(strategy.toString().trim());
+        }
+        final Configuration insertionTimeSeries = socialsensor.subset(INSERTION_TIME_SERIES);
+        insertionTimeSeriesIntervalMs = insertionTimeSeries.getLong(INTERVAL_MS, 1000 /*default*/);
+        insertionTimeSeriesEdges = insertionTimeSeries.getLong(EDGES, 100000 /*default*/);
+        insertionTimeSeriesStorageIntervalMs = insertionTimeSeries.getLong(STORAGE_INTERVAL_MS, 0 /*default*/);
+        if (insertionTimeSeriesIntervalMs < 0 || insertionTimeSeriesEdges < 0
+            || insertionTimeSeriesStorageIntervalMs < 0)
+        {
+            throw new IllegalArgumentException(
+                "insertion-time-series.interval-ms, edges and storage-interval-ms must not be negative");
+        }
+        final Configuration jfr = socialsensor.subset(JFR);
+        flightRecording = jfr.getBoolean(JFR_ENABLED, false /*default*/);
+        flightRecordingSettings = jfr.getString(JFR_SETTINGS, "profile");
+        flightRecordingTop = jfr.getInt(JFR_TOP, 10);
+        if (flightRecordingTop < 0)
+        {
+            throw new IllegalArgumentException("jfr.top must not be negative");
+        }
         DatasetFactory.getInstance().createAndGetDataset(dataset, random, numShortestPathRandomNodes);
 
         if (!socialsensor.containsKey(PERMUTE_BENCHMARKS))
@@ -186,6 +354,58 @@ public class BenchmarkConfiguration
         }
         permuteBenchmarks = socialsensor.getBoolean(PERMUTE_BENCHMARKS);
 
+        final Configuration fork = socialsensor.subset(FORK);
+        forkDatabases = fork.getBoolean(FORK_ENABLED, false /*default*/);
+        forkJvmArgs = new ArrayList<String>();
+        for (Object arg : fork.getList(FORK_JVM_ARGS))
+        {
+            forkJvmArgs.add(arg.toString());
+        }
+        forkCpuSets = new ArrayList<String>();
+        for (Object cpuSet : fork.getList(FORK_CPU_SETS))
+        {
+            forkCpuSets.add(cpuSet.toString());
+        }
+        forkParallelism = fork.getInt(FORK_PARALLELISM, Math.max(1, forkCpuSets.size()));
+        if (forkParallelism < 1)
+        {
+            throw new IllegalArgumentException("fork.parallelism must be at least one");
+        }
+        if (!forkCpuSets.isEmpty() && forkCpuSets.size() < forkParallelism)
+        {
+            throw new IllegalArgumentException("fork.cpu-sets must list at least fork.parallelism disjoint cpu sets");
+        }
+
+        final Configuration trials = socialsensor.subset(TRIALS);
+        maxTrials = trials.getInt(TRIALS_MAX, 0 /*default, no trials*/);
+        minTrials = trials.getInt(TRIALS_MIN, Math.min(3, maxTrials));
+        trialsSeed = trials.getLong(TRIALS_SEED, socialsensor.getInt(RANDOM_SEED, 17 /*default*/));
+        trialsConfidence = trials.getDouble(TRIALS_CONFIDENCE, 0.95);
+        bootstrapResamples = trials.getInt(TRIALS_BOOTSTRAP_RESAMPLES, 2000);
+        targetRelativeCiWidth = trials.getDouble(TRIALS_TARGET_RELATIVE_CI_WIDTH, 0.05);
+        outlierIqrFactor = trials.getDouble(TRIALS_OUTLIER_IQR_FACTOR, 1.5);
+        if (maxTrials < 0 || (maxTrials > 0 && (minTrials < 1 || minTrials > maxTrials)))
+        {
+            throw new IllegalArgumentException("trials.min must be between one and trials.max");
+        }
+        if (maxTrials > 0 && permuteBenchmarks)
+        {
+            throw new IllegalArgumentException("trials and permute-benchmarks are mutually exclusive");
+        }
+        if (trialsConfidence <= 0 || trialsConfidence >= 1)
+        {
+            throw new IllegalArgumentException("trials.confidence must be between zero and one");
+        }
+        if (bootstrapResamples < 1)
+        {
+            throw new IllegalArgumentException("trials.bootstrap-resamples must be at least one");
+        }
+        if (targetRelativeCiWidth < 0 || outlierIqrFactor < 0)
+        {
+            throw new IllegalArgumentException("trials.target-relative-ci-width and trials.outlier-iqr-factor must not "
+                + "be negative");
+        }
+
         List<?> benchmarkList = socialsensor.getList("benchmarks");
         benchmarkTypes = new ArrayList<BenchmarkType>();
         for (Object str : benchmarkList)
@@ -193,6 +413,23 @@ public class BenchmarkConfiguration
             benchmarkTypes.add(BenchmarkType.valueOf(str.toString()));
         }
 
+        sweepFractions = new ArrayList<Double>();
+        for (Object fraction : socialsensor.subset(SWEEP).getList(SWEEP_FRACTIONS))
+        {
+            sweepFractions.add(Double.valueOf(fraction.toString()));
+        }
+        Collections.sort(sweepFractions);
+        if (!sweepFractions.isEmpty()
+            && (sweepFractions.get(0) <= 0 || sweepFractions.get(sweepFractions.size() - 1) > 1))
+        {
+            throw new IllegalArgumentException("sweep.fractions must be in (0, 1]");
+        }
+        if (!sweepFractions.isEmpty() && benchmarkTypes.indexOf(BenchmarkType.MASSIVE_INSERTION) != 0
+            && benchmarkTypes.indexOf(BenchmarkType.SINGLE_INSERTION) != 0)
+        {
+            throw new IllegalArgumentException("a sweep must start with MASSIVE_INSERTION or SINGLE_INSERTION");
+        }
+
         selectedDatabases = new TreeSet<GraphDatabaseType>();
         for (Object database : socialsensor.getList("databases"))
         {
@@ -203,9 +440,16 @@ public class BenchmarkConfiguration
             }
             selectedDatabases.add(GraphDatabaseType.STRING_REP_MAP.get(database));
         }
-        scenarios = permuteBenchmarks ? Ints.checkedCast(CombinatoricsUtils.factorial(selectedDatabases.size())) : 1;
+        if (maxTrials > 0)
+        {
+            scenarios = maxTrials;
+        }
+        else
+        {
+            scenarios = permuteBenchmarks ? Ints.checkedCast(CombinatoricsUtils.factorial(selectedDatabases.size())) : 1;
+        }
 
-        resultsPath = new File(System.getProperty("user.dir"), socialsensor.getString("results-path"));
+        resultsPath = new File(System.getProperty("user.dir"), socialsensor.getString(RESULTS_PATH));
         if (!resultsPath.exists() && !resultsPath.mkdirs())
         {
             throw new IllegalArgumentException("unable to create results directory");
@@ -408,6 +652,22 @@ public class BenchmarkConfiguration
         return customIds;
     }
 
+    public boolean isTitanOlapScan() {
+        return titanOlapScan;
+    }
+
+    public int getTitanMultiQueryChunkSize() {
+        return titanMultiQueryChunkSize;
+    }
+
+    public boolean isNeo4jUnitOfWorkTransactions() {
+        return neo4jUnitOfWorkTransactions;
+    }
+
+    public int getNeo4jCommitEvery() {
+        return neo4jCommitEvery;
+    }
+
     public long getTuplMinCacheSize() {
         return tuplMinCacheSize;
     }
@@ -422,4 +682,135 @@ public class BenchmarkConfiguration
     public int getShortestPathMaxHops() {
         return shortestPathMaxHops;
     }
+
+    public int getScanThreads() {
+        return scanThreads;
+    }
+
+    public boolean isVertexIdCache() {
+        return vertexIdCache;
+    }
+
+    public List<Integer> getVertexLookupThreads() {
+        return vertexLookupThreads;
+    }
+
+    public int getVertexLookups() {
+        return vertexLookups;
+    }
+
+    public boolean isValidateGraphMetadata() {
+        return validateGraphMetadata;
+    }
+
+    public boolean isGremlinTraversalReuse() {
+        return gremlinTraversalReuse;
+    }
+
+    public List<String> getGremlinDisabledStrategies() {
+        return gremlinDisabledStrategies;
+    }
+
+    /**
+     * @return the configuration this benchmark configuration was read from
+     */
+    public Configuration getAppconfig() {
+        return appconfig;
+    }
+
+    /**
+     * @return the configuration of the step of a scaling sweep with the fraction of the dataset, which writes its
+     *         results to results-path/sweep-&lt;fraction&gt; and sweeps no further
+     */
+    public BenchmarkConfiguration forSweepStep(double fraction) {
+        final PropertiesConfiguration step = new PropertiesConfiguration();
+        step.copy(appconfig);
+        step.setProperty(SOCIALSENSOR + DATASET, DatasetFactory.resize(dataset.getPath(), fraction));
+        step.setProperty(SOCIALSENSOR + RESULTS_PATH, appconfig.getString(SOCIALSENSOR + RESULTS_PATH) + File.separator
+            + SWEEP_DIRECTORY_PREFIX + fraction);
+        step.clearProperty(SOCIALSENSOR + SWEEP + "." + SWEEP_FRACTIONS);
+        return new BenchmarkConfiguration(step);
+    }
+
+    /**
+     * @return the fractions of the dataset of a scaling sweep in increasing order, or empty when not sweeping
+     */
+    public List<Double> getSweepFractions() {
+        return sweepFractions;
+    }
+
+    public boolean isForkDatabases() {
+        return forkDatabases;
+    }
+
+    public List<String> getForkJvmArgs() {
+        return forkJvmArgs;
+    }
+
+    public int getForkParallelism() {
+        return forkParallelism;
+    }
+
+    public List<String> getForkCpuSets() {
+        return forkCpuSets;
+    }
+
+    /**
+     * @return the largest number of trials of each permuting benchmark, or zero when trials are off
+     */
+    public int getMaxTrials() {
+        return maxTrials;
+    }
+
+    public int getMinTrials() {
+        return minTrials;
+    }
+
+    public long getTrialsSeed() {
+        return trialsSeed;
+    }
+
+    public double getTrialsConfidence() {
+        return trialsConfidence;
+    }
+
+    public int getBootstrapResamples() {
+        return bootstrapResamples;
+    }
+
+    /**
+     * @return the relative width of the confidence intervals of the medians below which trials stop early, zero to
+     *         always run the largest number of trials
+     */
+    public double getTargetRelativeCiWidth() {
+        return targetRelativeCiWidth;
+    }
+
+    public double getOutlierIqrFactor() {
+        return outlierIqrFactor;
+    }
+
+    public long getInsertionTimeSeriesIntervalMs() {
+        return insertionTimeSeriesIntervalMs;
+    }
+
+    public long getInsertionTimeSeriesEdges() {
+        return insertionTimeSeriesEdges;
+    }
+
+    public long getInsertionTimeSeriesStorageIntervalMs() {
+        return insertionTimeSeriesStorageIntervalMs;
+    }
+
+    public boolean isFlightRecording() {
+        return flightRecording;
+    }
+
+    public String getFlightRecordingSettings() {
+        return flightRecordingSettings;
+    }
+
+    public int getFlightRecordingTop() {
+        return flightRecordingTop;
+    }
 }
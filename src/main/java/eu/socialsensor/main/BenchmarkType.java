@@ -12,7 +12,8 @@ public enum BenchmarkType
 {
     MASSIVE_INSERTION("Massive Insertion", "MassiveInsertion"), SINGLE_INSERTION("Single Insertion", "SingleInsertion"), DELETION(
         "Delete Graph", "DeleteGraph"), FIND_NEIGHBOURS("Find Neighbours of All Nodes", "FindNeighbours"), FIND_ADJACENT_NODES(
-        "Find Adjacent Nodes of All Edges", "FindAdjacent"), FIND_SHORTEST_PATH("Find Shortest Path", "FindShortest"), CLUSTERING(
+        "Find Adjacent Nodes of All Edges", "FindAdjacent"), FIND_SHORTEST_PATH("Find Shortest Path", "FindShortest"), FIND_VERTEX(
+        "Find Vertex by Node Id", "FindVertex"), NODE_DEGREE("Node Degree", "NodeDegree"), CLUSTERING(
         "Clustering", "Clustering");
 
     public static final Set<BenchmarkType> INSERTING_BENCHMARK_SET = new HashSet<BenchmarkType>();
@@ -40,4 +41,12 @@ public enum BenchmarkType
     {
         return filenamePrefix + ".csv";
     }
+
+    /**
+     * @return the name of a further results file of this benchmark, like FindNeighboursStatistics.csv
+     */
+    public String getResultsFileName(String qualifier)
+    {
+        return filenamePrefix + qualifier + ".csv";
+    }
 }
@@ -0,0 +1,217 @@
+package eu.socialsensor.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.socialsensor.benchmarks.Benchmark;
+import eu.socialsensor.benchmarks.PermutingBenchmarkBase;
+
+/**
+ * Runs one database of one scenario of a permuting benchmark in a child JVM. The parent writes the configuration of
+ * the run once, starts a child per (benchmark, database, scenario) with the configured JVM arguments and reads back
+ * the times the child recorded from a results file. The child is the main method of this class.
+ */
+public class ForkedBenchmark
+{
+    private static final Logger LOG = LogManager.getLogger();
+    private static final String FORKS_DIRECTORY = "forks";
+    private static final String PROPERTIES_FILE_NAME = "benchmark.properties";
+
+    private static final String TIMES_SUFFIX = ".times";
+    private static final String TELEMETRY_SUFFIX = ".jvm";
+
+    /**
+     * What a child recorded: its times and the JVM telemetry of its benchmarkOne.
+     */
+    public static final class Result
+    {
+        private final List<Double> times;
+        private final SortedMap<String, Long> telemetry;
+
+        Result(List<Double> times, SortedMap<String, Long> telemetry)
+        {
+            this.times = times;
+            this.telemetry = telemetry;
+        }
+
+        public List<Double> getTimes()
+        {
+            return times;
+        }
+
+        public SortedMap<String, Long> getTelemetry()
+        {
+            return telemetry;
+        }
+    }
+
+    private final BenchmarkConfiguration bench;
+    private final File forksDirectory;
+    private final File propertiesFile;
+
+    public ForkedBenchmark(BenchmarkConfiguration bench)
+    {
+        this.bench = bench;
+        this.forksDirectory = new File(bench.getResultsPath(), FORKS_DIRECTORY);
+        if (!forksDirectory.exists() && !forksDirectory.mkdirs())
+        {
+            throw new BenchmarkingException("unable to create fork directory " + forksDirectory.getAbsolutePath());
+        }
+        this.propertiesFile = new File(forksDirectory, PROPERTIES_FILE_NAME);
+        final PropertiesConfiguration properties = new PropertiesConfiguration();
+        properties.copy(bench.getAppconfig());
+        try
+        {
+            properties.save(propertiesFile);
+        }
+        catch (ConfigurationException e)
+        {
+            throw new BenchmarkingException("unable to write fork configuration to " + propertiesFile, e);
+        }
+    }
+
+    /**
+     * Runs benchmarkOne of the benchmark for the database in a child JVM and waits for it.
+     *
+     * @param cpuSet
+     *            cpus to pin the child to with taskset, like 0-3, or null to leave it unpinned
+     * @return the times and JVM telemetry the child recorded
+     */
+    public Result run(BenchmarkType benchmarkType, GraphDatabaseType dbType, int scenarioNumber, String cpuSet)
+    {
+        final String name = String.format("%s-%s-%d", benchmarkType.name(), dbType.getShortname(), scenarioNumber);
+        final File resultsFile = new File(forksDirectory, name + TIMES_SUFFIX);
+        final File telemetryFile = new File(forksDirectory, name + TELEMETRY_SUFFIX);
+        final List<String> command = new ArrayList<String>();
+        if (cpuSet != null)
+        {
+            command.add("taskset");
+            command.add("-c");
+            command.add(cpuSet);
+        }
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath());
+        command.addAll(bench.getForkJvmArgs());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ForkedBenchmark.class.getName());
+        command.add(propertiesFile.getAbsolutePath());
+        command.add(benchmarkType.name());
+        command.add(dbType.name());
+        command.add(Integer.toString(scenarioNumber));
+        command.add(resultsFile.getAbsolutePath());
+        command.add(telemetryFile.getAbsolutePath());
+        LOG.info("Forking " + name + (cpuSet == null ? "" : " on cpus " + cpuSet));
+
+        final int exitCode;
+        try
+        {
+            exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("unable to fork " + name, e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new BenchmarkingException("interrupted while waiting for " + name, e);
+        }
+        if (exitCode != 0)
+        {
+            throw new BenchmarkingException(String.format("forked %s exited with %d", name, exitCode));
+        }
+
+        final List<Double> times = new ArrayList<Double>();
+        final SortedMap<String, Long> telemetry = new TreeMap<String, Long>();
+        try
+        {
+            for (String line : Files.readAllLines(resultsFile.toPath(), StandardCharsets.UTF_8))
+            {
+                times.add(Double.valueOf(line));
+            }
+            // one counter=value per line
+            for (String line : Files.readAllLines(telemetryFile.toPath(), StandardCharsets.UTF_8))
+            {
+                final int separator = line.lastIndexOf('=');
+                telemetry.put(line.substring(0, separator), Long.valueOf(line.substring(separator + 1)));
+            }
+            Files.delete(resultsFile.toPath());
+            Files.delete(telemetryFile.toPath());
+        }
+        catch (IOException | RuntimeException e)
+        {
+            throw new BenchmarkingException("unable to read results of " + name + " from " + forksDirectory, e);
+        }
+        return new Result(times, telemetry);
+    }
+
+    /**
+     * Child entry point. Arguments: properties file, benchmark type, database type, scenario number, results file,
+     * telemetry file.
+     */
+    public static void main(String[] args)
+    {
+        if (args.length != 6)
+        {
+            LOG.fatal("usage: ForkedBenchmark <properties> <benchmark type> <database type> <scenario> <results file> "
+                + "<telemetry file>");
+            System.exit(2);
+        }
+        try
+        {
+            final BenchmarkConfiguration config = new BenchmarkConfiguration(new PropertiesConfiguration(new File(
+                args[0])));
+            final BenchmarkType benchmarkType = BenchmarkType.valueOf(args[1]);
+            final GraphDatabaseType dbType = GraphDatabaseType.valueOf(args[2]);
+            final int scenarioNumber = Integer.parseInt(args[3]);
+            final File resultsFile = new File(args[4]);
+            final File telemetryFile = new File(args[5]);
+
+            final Benchmark benchmark = GraphDatabaseBenchmark.createBenchmark(benchmarkType, config);
+            if (!(benchmark instanceof PermutingBenchmarkBase))
+            {
+                throw new IllegalArgumentException(benchmarkType.longname() + " does not run one database at a time");
+            }
+            final PermutingBenchmarkBase permuting = (PermutingBenchmarkBase) benchmark;
+            permuting.benchmarkOneWithTelemetry(dbType, scenarioNumber);
+
+            final List<String> counters = new ArrayList<String>();
+            for (Map.Entry<String, Long> counter : permuting.getTelemetry(dbType).get(scenarioNumber).entrySet())
+            {
+                counters.add(counter.getKey() + "=" + counter.getValue());
+            }
+            Files.write(telemetryFile.toPath(), counters, StandardCharsets.UTF_8);
+
+            final List<String> lines = new ArrayList<String>();
+            for (Double time : permuting.getTimes(dbType))
+            {
+                lines.add(Double.toString(time));
+            }
+            // write the times last, then rename, so the parent never reads a partial file
+            final File partial = new File(resultsFile.getAbsolutePath() + ".partial");
+            Files.write(partial.toPath(), lines, StandardCharsets.UTF_8);
+            Files.move(partial.toPath(), resultsFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (Throwable t)
+        {
+            LOG.fatal("Forked benchmark failed", t);
+            System.exit(1);
+        }
+        // databases may leave non-daemon threads behind
+        System.exit(0);
+    }
+}
@@ -6,7 +6,9 @@ import eu.socialsensor.benchmarks.DeleteGraphBenchmark;
 import eu.socialsensor.benchmarks.FindNeighboursOfAllNodesBenchmark;
 import eu.socialsensor.benchmarks.FindNodesOfAllEdgesBenchmark;
 import eu.socialsensor.benchmarks.FindShortestPathBenchmark;
+import eu.socialsensor.benchmarks.FindVertexBenchmark;
 import eu.socialsensor.benchmarks.MassiveInsertionBenchmark;
+import eu.socialsensor.benchmarks.NodeDegreeBenchmark;
 import eu.socialsensor.benchmarks.SingleInsertionBenchmark;
 
 import org.apache.commons.configuration.Configuration;
@@ -99,16 +101,29 @@ public class GraphDatabaseBenchmark
     public void run()
     {
         //MetricRegistry registry = MetricRegistry.name(klass, names)
+        if (!config.getSweepFractions().isEmpty())
+        {
+            new ScalingSweep(config).run();
+            return;
+        }
+        final ResultsDocument results = new ResultsDocument(config);
         for (BenchmarkType type : config.getBenchmarkTypes())
         {
-            runBenchmark(type);
+            runBenchmark(type, results);
         }
     }
 
-    private final void runBenchmark(BenchmarkType type)
+    private final void runBenchmark(BenchmarkType type, ResultsDocument results)
     {
-        final Benchmark benchmark;
         logger.info(type.longname() + " Benchmark Selected");
+        final Benchmark benchmark = createBenchmark(type, config);
+        benchmark.startBenchmark();
+        results.addBenchmark(type, benchmark);
+    }
+
+    static final Benchmark createBenchmark(BenchmarkType type, BenchmarkConfiguration config)
+    {
+        final Benchmark benchmark;
         switch (type)
         {
             case MASSIVE_INSERTION:
@@ -129,6 +144,12 @@ public class GraphDatabaseBenchmark
             case FIND_SHORTEST_PATH:
                 benchmark = new FindShortestPathBenchmark(config);
                 break;
+            case FIND_VERTEX:
+                benchmark = new FindVertexBenchmark(config);
+                break;
+            case NODE_DEGREE:
+                benchmark = new NodeDegreeBenchmark(config);
+                break;
             case DELETION:
                 benchmark = new DeleteGraphBenchmark(config);
                 break;
@@ -136,7 +157,7 @@ public class GraphDatabaseBenchmark
                 throw new UnsupportedOperationException("unsupported benchmark " + type == null ? "null"
                     : type.toString());
         }
-        benchmark.startBenchmark();
+        return benchmark;
     }
 
     /**
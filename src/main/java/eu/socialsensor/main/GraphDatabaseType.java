@@ -20,7 +20,9 @@ public enum GraphDatabaseType
     TITAN_HBASE("Titan", "hbase", "thb"),
     TITAN_PERSISTIT("TitanEmbedded", "inmemory", "ti"),
     ORIENT_DB("OrientDB", null, "orient"),
-    NEO4J("Neo4j", null, "neo4j");
+    NEO4J("Neo4j", null, "neo4j"),
+    MEMORY("Memory", null, "mem"),
+    TINKERGRAPH("TinkerGraph", null, "tg");
 
     private final String backend;
     private final String api;
@@ -28,6 +30,8 @@ public enum GraphDatabaseType
 
     public static final Map<String, GraphDatabaseType> STRING_REP_MAP = new HashMap<String, GraphDatabaseType>();
     public static final Set<GraphDatabaseType> TITAN_FLAVORS = new HashSet<GraphDatabaseType>();
+    // databases that keep their data on a server or in memory rather than in their storage directory
+    public static final Set<GraphDatabaseType> NO_LOCAL_STORAGE = new HashSet<GraphDatabaseType>();
     static
     {
         for (GraphDatabaseType db : values())
@@ -41,6 +45,10 @@ public enum GraphDatabaseType
         TITAN_FLAVORS.add(TITAN_CASSANDRA_EMBEDDED);
         TITAN_FLAVORS.add(TITAN_HBASE);
         TITAN_FLAVORS.add(TITAN_PERSISTIT);
+        NO_LOCAL_STORAGE.add(TITAN_DYNAMODB);
+        NO_LOCAL_STORAGE.add(TITAN_CASSANDRA);
+        NO_LOCAL_STORAGE.add(TITAN_HBASE);
+        NO_LOCAL_STORAGE.add(TITAN_PERSISTIT);
     }
 
     private GraphDatabaseType(String api, String backend, String shortname)
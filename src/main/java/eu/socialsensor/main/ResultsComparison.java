@@ -0,0 +1,253 @@
+package eu.socialsensor.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.ToDoubleFunction;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import eu.socialsensor.utils.SampleStatistics;
+import eu.socialsensor.utils.SampleStatistics.Interval;
+
+/**
+ * Compares the results documents of two runs. Results are aligned by benchmark, database and operation, and for
+ * each the relative change of throughput (the inverse of the mean time) and of every latency percentile is
+ * reported. A change is a regression when the time got longer by more than its threshold and, where both runs
+ * have enough samples, the bootstrap confidence interval of the relative difference of the compared statistic, the
+ * mean for throughput and the percentile itself for latency, excludes zero. A relative change from a baseline of
+ * zero is undefined; it is reported as n/a and never counted as a regression. Exits with 1 on regression, 2 on error
+ * and 0 otherwise. Thresholds are read from eu.socialsensor.compare in the properties file given as third argument,
+ * or in input.properties on the classpath.
+ */
+public class ResultsComparison
+{
+    private static final Logger LOG = LogManager.getLogger();
+
+    private static final String COMPARE = "compare";
+    private static final String THRESHOLD = "threshold";
+    private static final String THROUGHPUT = "throughput";
+    private static final String CONFIDENCE = "confidence";
+    private static final String BOOTSTRAP_RESAMPLES = "bootstrap-resamples";
+    private static final String MEAN = "mean";
+    // the bootstrap needs a few samples on both sides to say anything
+    private static final int MIN_SAMPLES_FOR_SIGNIFICANCE = 3;
+
+    private final Map<String, Double> thresholds = new TreeMap<String, Double>();
+    private final double confidence;
+    private final int bootstrapResamples;
+    private final Random random = new Random(17);
+
+    public ResultsComparison(Configuration appconfig)
+    {
+        final Configuration compare = appconfig.subset("eu").subset("socialsensor").subset(COMPARE);
+        final double threshold = compare.getDouble(THRESHOLD, 0.05);
+        for (String percentile : ResultsDocument.PERCENTILES)
+        {
+            thresholds.put(percentile, compare.getDouble(THRESHOLD + "." + percentile, threshold));
+        }
+        thresholds.put(THROUGHPUT, compare.getDouble(THRESHOLD + "." + THROUGHPUT, threshold));
+        for (double value : thresholds.values())
+        {
+            if (value < 0)
+            {
+                throw new IllegalArgumentException("compare thresholds must not be negative");
+            }
+        }
+        confidence = compare.getDouble(CONFIDENCE, 0.95);
+        bootstrapResamples = compare.getInt(BOOTSTRAP_RESAMPLES, 2000);
+        if (confidence <= 0 || confidence >= 1 || bootstrapResamples < 1)
+        {
+            throw new IllegalArgumentException("compare.confidence must be between zero and one and "
+                + "compare.bootstrap-resamples at least one");
+        }
+    }
+
+    /**
+     * Prints the comparison of every result of the baseline that the candidate also has.
+     *
+     * @return the number of regressions
+     */
+    public int compare(JsonNode baseline, JsonNode candidate)
+    {
+        final Map<String, JsonNode> candidateResults = index(candidate);
+        int regressions = 0;
+        System.out.println("Benchmark,DB,Operation,Metric,Baseline,Candidate,Relative Change,Threshold,Significant,"
+            + "Regression");
+        for (Map.Entry<String, JsonNode> entry : index(baseline).entrySet())
+        {
+            final JsonNode candidateResult = candidateResults.remove(entry.getKey());
+            if (candidateResult == null)
+            {
+                LOG.warn("candidate has no results for " + entry.getKey());
+                continue;
+            }
+            regressions += compareResult(entry.getValue(), candidateResult);
+        }
+        for (String key : candidateResults.keySet())
+        {
+            LOG.warn("baseline has no results for " + key);
+        }
+        return regressions;
+    }
+
+    private int compareResult(JsonNode baseline, JsonNode candidate)
+    {
+        final JsonNode baselineSummary = baseline.path(ResultsDocument.SUMMARY);
+        final JsonNode candidateSummary = candidate.path(ResultsDocument.SUMMARY);
+        final double[] baselineSamples = samples(baseline);
+        final double[] candidateSamples = samples(candidate);
+
+        int regressions = 0;
+        if (baselineSummary.has(MEAN) && candidateSummary.has(MEAN))
+        {
+            // throughput is the inverse of the mean time, so it drops by the same factor the mean rises and its
+            // change is significant exactly when the change of the mean is
+            final double baselineMean = baselineSummary.get(MEAN).asDouble();
+            final double candidateMean = candidateSummary.get(MEAN).asDouble();
+            final double change = baselineMean == 0 || candidateMean == 0 ? Double.NaN
+                : baselineMean / candidateMean - 1;
+            regressions += report(baseline, THROUGHPUT + " (1/s)", 1000.0 / baselineMean, 1000.0 / candidateMean,
+                change, -change, thresholds.get(THROUGHPUT),
+                significant(baselineSamples, candidateSamples, SampleStatistics.MEAN));
+        }
+        for (int i = 0; i < ResultsDocument.PERCENTILES.length; i++)
+        {
+            final String percentile = ResultsDocument.PERCENTILES[i];
+            if (!baselineSummary.has(percentile) || !candidateSummary.has(percentile))
+            {
+                continue;
+            }
+            final double before = baselineSummary.get(percentile).asDouble();
+            final double after = candidateSummary.get(percentile).asDouble();
+            final double change = before == 0 && after != 0 ? Double.NaN
+                : SampleStatistics.relativeDifference(before, after);
+            regressions += report(baseline, percentile + " (ms)", before, after, change, change,
+                thresholds.get(percentile), significant(baselineSamples, candidateSamples,
+                    SampleStatistics.percentile(ResultsDocument.PERCENTILE_VALUES[i])));
+        }
+        return regressions;
+    }
+
+    /**
+     * @return whether the bootstrap confidence interval of the relative difference of the statistic excludes zero,
+     *         or null when there are too few samples or the statistic of the baseline is zero, in which case the
+     *         threshold alone decides
+     */
+    private Boolean significant(double[] baselineSamples, double[] candidateSamples,
+        ToDoubleFunction<double[]> statistic)
+    {
+        if (baselineSamples.length < MIN_SAMPLES_FOR_SIGNIFICANCE
+            || candidateSamples.length < MIN_SAMPLES_FOR_SIGNIFICANCE)
+        {
+            return null;
+        }
+        final double[] sortedBaseline = baselineSamples.clone();
+        Arrays.sort(sortedBaseline);
+        if (statistic.applyAsDouble(sortedBaseline) == 0)
+        {
+            return null;
+        }
+        final Interval difference = SampleStatistics.bootstrapRelativeDifference(baselineSamples, candidateSamples,
+            statistic, bootstrapResamples, confidence, random);
+        return !difference.contains(0);
+    }
+
+    /**
+     * @param change
+     *            the relative change, NaN when it is undefined because the baseline is zero
+     * @param slowdown
+     *            the relative change in the direction that is worse
+     * @return one if the change is a regression, otherwise zero
+     */
+    private static int report(JsonNode result, String metric, double before, double after, double change,
+        double slowdown, double threshold, Boolean significant)
+    {
+        final boolean defined = !Double.isNaN(change);
+        if (!defined)
+        {
+            LOG.warn(String.format("%s/%s/%s %s: relative change from a zero baseline is undefined",
+                result.path(ResultsDocument.BENCHMARK).asText(), result.path(ResultsDocument.DATABASE).asText(),
+                result.path(ResultsDocument.OPERATION).asText(), metric));
+        }
+        final boolean regression = defined && slowdown > threshold && (significant == null || significant);
+        System.out.println(String.format("%s,%s,%s,%s,%f,%f,%s,%.2f%%,%s,%b",
+            result.path(ResultsDocument.BENCHMARK).asText(), result.path(ResultsDocument.DATABASE).asText(),
+            result.path(ResultsDocument.OPERATION).asText(), metric, before, after,
+            defined ? String.format("%+.2f%%", 100 * change) : "n/a", 100 * threshold,
+            significant == null ? "n/a" : significant.toString(), regression));
+        return regression ? 1 : 0;
+    }
+
+    private static Map<String, JsonNode> index(JsonNode document)
+    {
+        final Map<String, JsonNode> results = new TreeMap<String, JsonNode>();
+        for (JsonNode result : document.path(ResultsDocument.RESULTS))
+        {
+            results.put(String.format("%s/%s/%s", result.path(ResultsDocument.BENCHMARK).asText(),
+                result.path(ResultsDocument.DATABASE).asText(), result.path(ResultsDocument.OPERATION).asText()),
+                result);
+        }
+        return results;
+    }
+
+    private static double[] samples(JsonNode result)
+    {
+        final List<Double> samples = new ArrayList<Double>();
+        for (JsonNode sample : result.path(ResultsDocument.SAMPLES))
+        {
+            samples.add(sample.asDouble());
+        }
+        final double[] array = new double[samples.size()];
+        for (int i = 0; i < array.length; i++)
+        {
+            array[i] = samples.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Arguments: baseline results document, candidate results document and optionally a properties file.
+     */
+    public static void main(String[] args)
+    {
+        if (args.length < 2 || args.length > 3)
+        {
+            LOG.fatal("usage: ResultsComparison <baseline results.json> <candidate results.json> [properties]");
+            System.exit(2);
+        }
+        final int regressions;
+        try
+        {
+            final Configuration appconfig = args.length == 3 ? new PropertiesConfiguration(new File(args[2]))
+                : GraphDatabaseBenchmark.getAppconfigFromClasspath();
+            final ObjectMapper mapper = new ObjectMapper();
+            regressions = new ResultsComparison(appconfig).compare(mapper.readTree(new File(args[0])),
+                mapper.readTree(new File(args[1])));
+        }
+        catch (IOException | ConfigurationException | IllegalArgumentException e)
+        {
+            LOG.fatal("Unable to compare results: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (regressions > 0)
+        {
+            LOG.error(String.format("%d regressions", regressions));
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+}
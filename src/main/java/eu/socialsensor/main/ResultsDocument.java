@@ -0,0 +1,335 @@
+package eu.socialsensor.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.RuntimeMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import eu.socialsensor.benchmarks.Benchmark;
+import eu.socialsensor.dataset.DatasetFactory;
+import eu.socialsensor.dataset.GeneratedDataset;
+import eu.socialsensor.utils.FlightRecording;
+import eu.socialsensor.utils.Utils;
+
+/**
+ * One JSON document per run with a manifest of the run (configuration, dataset, JVM, host and git revision) and
+ * the raw samples and percentiles of every benchmark, database and operation, with the summaries of flight
+ * recordings where there are any. The document is rewritten after every benchmark so that the results of a run that
+ * fails part way are kept.
+ */
+public class ResultsDocument
+{
+    private static final Logger LOG = LogManager.getLogger();
+    public static final String FILE_NAME = "results.json";
+
+    // fields of the document, shared with the readers of it
+    public static final String MANIFEST = "manifest";
+    public static final String RESULTS = "results";
+    public static final String PROFILES = "profiles";
+    public static final String BENCHMARK = "benchmark";
+    public static final String DATABASE = "database";
+    public static final String OPERATION = "operation";
+    public static final String UNIT = "unit";
+    public static final String SAMPLES = "samples";
+    public static final String SUMMARY = "summary";
+    public static final String[] PERCENTILES = { "p50", "p90", "p99", "p999" };
+    static final double[] PERCENTILE_VALUES = { 50, 90, 99, 99.9 };
+
+    private static final String HIDDEN = "<hidden>";
+    private static final String CREDENTIALS_KEY_PART = "credentials";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ObjectNode document;
+    private final ArrayNode results;
+    private final ArrayNode profiles;
+    private final File file;
+
+    public ResultsDocument(BenchmarkConfiguration bench)
+    {
+        this.file = new File(bench.getResultsPath(), FILE_NAME);
+        this.document = mapper.createObjectNode();
+        final ObjectNode manifest = document.putObject(MANIFEST);
+        manifest.put("startTime", System.currentTimeMillis());
+        manifest.put("gitRevision", gitRevision(new File(System.getProperty("user.dir"))));
+        putConfiguration(manifest.putObject("configuration"), bench.getAppconfig());
+        putDataset(manifest.putObject("dataset"), bench.getDataset());
+        putJvm(manifest.putObject("jvm"));
+        putHost(manifest.putObject("host"));
+        this.results = document.putArray(RESULTS);
+        this.profiles = document.putArray(PROFILES);
+    }
+
+    /**
+     * Adds the samples and profiles of a benchmark that finished to the document and rewrites the document.
+     */
+    public synchronized void addBenchmark(BenchmarkType type, Benchmark benchmark)
+    {
+        for (Map.Entry<GraphDatabaseType, SortedMap<String, List<Double>>> database : benchmark.getSamples()
+            .entrySet())
+        {
+            for (Map.Entry<String, List<Double>> operation : database.getValue().entrySet())
+            {
+                final ObjectNode result = results.addObject();
+                result.put(BENCHMARK, type.name());
+                result.put(DATABASE, database.getKey().getShortname());
+                result.put(OPERATION, operation.getKey());
+                result.put(UNIT, "ms");
+                final ArrayNode values = result.putArray(SAMPLES);
+                for (Double sample : operation.getValue())
+                {
+                    values.add(sample);
+                }
+                putSummary(result.putObject(SUMMARY), operation.getValue());
+            }
+        }
+        for (FlightRecording.Summary summary : benchmark.getProfiles())
+        {
+            final ObjectNode profile = profiles.addObject();
+            profile.put(BENCHMARK, type.name());
+            profile.put(DATABASE, summary.getDatabase().getShortname());
+            profile.put("scenario", summary.getScenario());
+            profile.put("recording", summary.getFile().getAbsolutePath());
+            profile.put("executionSamples", summary.getExecutionSamples());
+            putCounts(profile.putArray("hotMethods"), "method", "samples", summary.getHotMethods());
+            putCounts(profile.putArray("allocationSites"), "site", "bytes", summary.getAllocationSites());
+        }
+        document.with(MANIFEST).put("endTime", System.currentTimeMillis());
+        write();
+    }
+
+    private synchronized void write()
+    {
+        final File partial = new File(file.getAbsolutePath() + ".partial");
+        try
+        {
+            mapper.writerWithDefaultPrettyPrinter().writeValue(partial, document);
+            Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("unable to write results document to " + file, e);
+        }
+        LOG.info("Wrote results document " + file);
+    }
+
+    private static void putCounts(ArrayNode array, String keyField, String countField, Map<String, Long> counts)
+    {
+        for (Map.Entry<String, Long> count : counts.entrySet())
+        {
+            final ObjectNode node = array.addObject();
+            node.put(keyField, count.getKey());
+            node.put(countField, count.getValue());
+        }
+    }
+
+    private static void putSummary(ObjectNode summary, List<Double> samples)
+    {
+        final DescriptiveStatistics stats = new DescriptiveStatistics(Utils.convert(samples));
+        summary.put("count", stats.getN());
+        if (stats.getN() == 0)
+        {
+            return;
+        }
+        summary.put("mean", stats.getMean());
+        summary.put("standardDeviation", stats.getStandardDeviation());
+        summary.put("min", stats.getMin());
+        for (int i = 0; i < PERCENTILES.length; i++)
+        {
+            summary.put(PERCENTILES[i], stats.getPercentile(PERCENTILE_VALUES[i]));
+        }
+        summary.put("max", stats.getMax());
+    }
+
+    /**
+     * Copies every property of the configuration, hiding the ones that configure credentials.
+     */
+    private static void putConfiguration(ObjectNode node, Configuration appconfig)
+    {
+        final List<String> keys = new ArrayList<String>();
+        for (Iterator<?> it = appconfig.getKeys(); it.hasNext();)
+        {
+            keys.add(it.next().toString());
+        }
+        Collections.sort(keys);
+        for (String key : keys)
+        {
+            if (key.contains(CREDENTIALS_KEY_PART))
+            {
+                node.put(key, HIDDEN);
+                continue;
+            }
+            final List<?> values = appconfig.getList(key);
+            if (values.size() == 1)
+            {
+                node.put(key, values.get(0).toString());
+            }
+            else
+            {
+                final ArrayNode array = node.putArray(key);
+                for (Object value : values)
+                {
+                    array.add(value.toString());
+                }
+            }
+        }
+    }
+
+    private static void putDataset(ObjectNode node, File datasetName)
+    {
+        if (GeneratedDataset.isGenerator(datasetName.getPath()))
+        {
+            // the URI names every parameter of the generator, including its seed
+            node.put("generator", datasetName.getPath());
+            return;
+        }
+        final File dataset = DatasetFactory.sourceFile(datasetName);
+        node.put("path", dataset.getAbsolutePath());
+        node.put("fraction", DatasetFactory.fraction(datasetName));
+        node.put("sizeBytes", dataset.length());
+        try (InputStream in = Files.newInputStream(dataset.toPath()))
+        {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            final byte[] buffer = new byte[1 << 16];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer))
+            {
+                digest.update(buffer, 0, read);
+            }
+            final StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest())
+            {
+                hex.append(String.format("%02x", b));
+            }
+            node.put("sha256", hex.toString());
+        }
+        catch (IOException | NoSuchAlgorithmException e)
+        {
+            throw new BenchmarkingException("unable to checksum dataset " + dataset, e);
+        }
+    }
+
+    private static void putJvm(ObjectNode node)
+    {
+        final RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        node.put("vendor", System.getProperty("java.vendor"));
+        node.put("version", System.getProperty("java.version"));
+        node.put("vmName", runtime.getVmName());
+        node.put("vmVersion", runtime.getVmVersion());
+        node.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        final ArrayNode arguments = node.putArray("inputArguments");
+        for (String argument : runtime.getInputArguments())
+        {
+            arguments.add(argument);
+        }
+    }
+
+    private static void putHost(ObjectNode node)
+    {
+        final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        node.put("os", os.getName() + " " + os.getVersion());
+        node.put("arch", os.getArch());
+        node.put("availableProcessors", os.getAvailableProcessors());
+        if (os instanceof com.sun.management.OperatingSystemMXBean)
+        {
+            node.put("totalMemoryBytes", ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize());
+        }
+        node.put("cpuModel", cpuModel());
+    }
+
+    /**
+     * @return the model name of the first cpu in /proc/cpuinfo, or null where there is none
+     */
+    private static String cpuModel()
+    {
+        final File cpuinfo = new File("/proc/cpuinfo");
+        if (!cpuinfo.canRead())
+        {
+            return null;
+        }
+        try
+        {
+            for (String line : Files.readAllLines(cpuinfo.toPath(), StandardCharsets.UTF_8))
+            {
+                if (line.startsWith("model name"))
+                {
+                    return line.substring(line.indexOf(':') + 1).trim();
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            LOG.warn("unable to read " + cpuinfo + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * @return the commit checked out in the git work tree containing the directory, read from the .git directory so
+     *         that git need not be installed, or null outside of a work tree
+     */
+    static String gitRevision(File directory)
+    {
+        for (File dir = directory.getAbsoluteFile(); dir != null; dir = dir.getParentFile())
+        {
+            final File git = new File(dir, ".git");
+            if (!git.isDirectory())
+            {
+                continue;
+            }
+            try
+            {
+                final String head = new String(Files.readAllBytes(new File(git, "HEAD").toPath()),
+                    StandardCharsets.UTF_8).trim();
+                if (!head.startsWith("ref: "))
+                {
+                    return head; // detached
+                }
+                final String ref = head.substring("ref: ".length());
+                final File looseRef = new File(git, ref);
+                if (looseRef.isFile())
+                {
+                    return new String(Files.readAllBytes(looseRef.toPath()), StandardCharsets.UTF_8).trim();
+                }
+                final File packedRefs = new File(git, "packed-refs");
+                if (packedRefs.isFile())
+                {
+                    for (String line : Files.readAllLines(packedRefs.toPath(), StandardCharsets.UTF_8))
+                    {
+                        if (line.endsWith(" " + ref))
+                        {
+                            return line.substring(0, line.indexOf(' '));
+                        }
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                LOG.warn("unable to read git revision from " + git + ": " + e.getMessage());
+            }
+            return null;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,161 @@
+package eu.socialsensor.main;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileDeleteStrategy;
+import org.apache.commons.math3.stat.regression.SimpleRegression;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.socialsensor.benchmarks.Benchmark;
+import eu.socialsensor.dataset.DatasetFactory;
+import eu.socialsensor.utils.SampleStatistics;
+import eu.socialsensor.utils.Utils;
+
+/**
+ * Runs the benchmarks on increasing fractions of the dataset, loading each fraction into fresh databases, and fits
+ * how the median of every benchmark, database and operation grows with the number of edges. The growth exponent is
+ * the slope of the least squares line through log(edges) and log(median), so a cost that doubles when the graph
+ * doubles has an exponent of one. Each step keeps its own results under results-path/sweep-&lt;fraction&gt;; the
+ * sweep writes Scaling.csv with the medians of every step and ScalingExponents.csv with the fits.
+ */
+public class ScalingSweep
+{
+    private static final Logger LOG = LogManager.getLogger();
+    public static final String SCALING_FILE_NAME = "Scaling.csv";
+    public static final String EXPONENTS_FILE_NAME = "ScalingExponents.csv";
+
+    private final BenchmarkConfiguration bench;
+    // benchmark, database and operation to the median in ms at each number of edges
+    private final SortedMap<String, SortedMap<Long, Double>> medians = new TreeMap<String, SortedMap<Long, Double>>();
+    private final List<String> rows = new ArrayList<String>();
+
+    public ScalingSweep(BenchmarkConfiguration bench)
+    {
+        this.bench = bench;
+    }
+
+    public void run()
+    {
+        for (double fraction : bench.getSweepFractions())
+        {
+            final BenchmarkConfiguration step = bench.forSweepStep(fraction);
+            final long edges = DatasetFactory.getInstance().getDataset(step.getDataset()).getEdges();
+            LOG.info(String.format("Sweep step with %s of the dataset, %d edges", fraction, edges));
+            final ResultsDocument results = new ResultsDocument(step);
+            try
+            {
+                for (BenchmarkType type : step.getBenchmarkTypes())
+                {
+                    LOG.info(type.longname() + " Benchmark Selected");
+                    final Benchmark benchmark = GraphDatabaseBenchmark.createBenchmark(type, step);
+                    benchmark.startBenchmark();
+                    results.addBenchmark(type, benchmark);
+                    addMedians(type, benchmark, fraction, edges);
+                }
+            }
+            finally
+            {
+                // the next step loads its fraction into empty databases, and nothing reads this fraction again
+                deleteStorage(step);
+                if (!step.getDataset().equals(bench.getDataset()))
+                {
+                    DatasetFactory.getInstance().removeDataset(step.getDataset());
+                }
+            }
+            write();
+        }
+    }
+
+    private void addMedians(BenchmarkType type, Benchmark benchmark, double fraction, long edges)
+    {
+        for (Map.Entry<GraphDatabaseType, SortedMap<String, List<Double>>> database : benchmark.getSamples()
+            .entrySet())
+        {
+            for (Map.Entry<String, List<Double>> operation : database.getValue().entrySet())
+            {
+                if (operation.getValue().isEmpty())
+                {
+                    continue;
+                }
+                final String key = String.format("%s,%s,%s", type.name(), database.getKey().getShortname(),
+                    operation.getKey());
+                final double median = SampleStatistics.median(Utils.convert(operation.getValue()));
+                if (!medians.containsKey(key))
+                {
+                    medians.put(key, new TreeMap<Long, Double>());
+                }
+                medians.get(key).put(edges, median);
+                rows.add(String.format("%s,%s,%d,%f\n", key, fraction, edges, median));
+            }
+        }
+    }
+
+    private static void deleteStorage(BenchmarkConfiguration step)
+    {
+        try
+        {
+            FileDeleteStrategy.FORCE.delete(step.getDbStorageDirectory());
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("unable to clean up db storage directory between sweep steps", e);
+        }
+    }
+
+    /**
+     * Rewrites both files after every step, so that a sweep that fails part way keeps the steps it ran.
+     */
+    private void write()
+    {
+        final File scalingFile = new File(bench.getResultsPath(), SCALING_FILE_NAME);
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(scalingFile)))
+        {
+            out.write("Benchmark,DB,Operation,Fraction,Edges,Median (ms)\n");
+            for (String row : rows)
+            {
+                out.write(row);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("unable to write scaling results to " + scalingFile, e);
+        }
+
+        final File exponentsFile = new File(bench.getResultsPath(), EXPONENTS_FILE_NAME);
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(exponentsFile)))
+        {
+            out.write("Benchmark,DB,Operation,Steps,Growth Exponent,CI Lower,CI Upper,R Squared\n");
+            for (Map.Entry<String, SortedMap<Long, Double>> series : medians.entrySet())
+            {
+                final SimpleRegression regression = new SimpleRegression();
+                for (Map.Entry<Long, Double> point : series.getValue().entrySet())
+                {
+                    // a median of zero has no logarithm; such operations are too fast to fit
+                    if (point.getKey() > 0 && point.getValue() > 0)
+                    {
+                        regression.addData(Math.log(point.getKey()), Math.log(point.getValue()));
+                    }
+                }
+                // two points fit a line exactly, so only three or more have a confidence interval
+                final double halfWidth = regression.getN() > 2 ? regression.getSlopeConfidenceInterval() : Double.NaN;
+                out.write(String.format("%s,%d,%f,%f,%f,%f\n", series.getKey(), regression.getN(),
+                    regression.getSlope(), regression.getSlope() - halfWidth, regression.getSlope() + halfWidth,
+                    regression.getRSquare()));
+            }
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("unable to write scaling exponents to " + exponentsFile, e);
+        }
+        LOG.info("Wrote scaling results to " + scalingFile + " and " + exponentsFile);
+    }
+}
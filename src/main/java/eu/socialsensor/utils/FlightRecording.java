@@ -0,0 +1,334 @@
+package eu.socialsensor.utils;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.socialsensor.main.BenchmarkingException;
+import eu.socialsensor.main.GraphDatabaseType;
+
+/**
+ * A Java Flight Recorder recording of one phase of a benchmark, and the summary of a recording file: the methods
+ * most often on top of the stack in execution samples and the allocation sites that allocated the most bytes.
+ * The jdk.jfr API only exists on some Java 8 runtimes, OpenJDK 8u262 and later, so it is looked up reflectively and
+ * isAvailable tells whether the running JVM has it.
+ */
+public class FlightRecording
+{
+    private static final String EXECUTION_SAMPLE = "jdk.ExecutionSample";
+    private static final String ALLOCATION_IN_NEW_TLAB = "jdk.ObjectAllocationInNewTLAB";
+    private static final String ALLOCATION_OUTSIDE_TLAB = "jdk.ObjectAllocationOutsideTLAB";
+    // the throttled allocation event of JDK 16 and later, which the JVM profiles enable instead of the TLAB ones
+    private static final String ALLOCATION_SAMPLE = "jdk.ObjectAllocationSample";
+
+    // null when the running JVM has no flight recorder API
+    private static final Jfr JFR = Jfr.load();
+
+    // a jdk.jfr.Recording
+    private final Object recording;
+
+    /**
+     * @return whether the running JVM has the jdk.jfr API
+     */
+    public static boolean isAvailable()
+    {
+        return JFR != null;
+    }
+
+    /**
+     * Starts a recording.
+     *
+     * @param name
+     *            tags the recording, like FIND_NEIGHBOURS-neo4j-1
+     * @param settings
+     *            the name of a settings profile of the JVM, like default or profile, or the path of a .jfc file
+     * @throws UnsupportedOperationException
+     *             if the JVM has no flight recorder API
+     */
+    public FlightRecording(String name, String settings)
+    {
+        if (JFR == null)
+        {
+            throw new UnsupportedOperationException("this JVM has no flight recorder API");
+        }
+        final Object configuration;
+        try
+        {
+            configuration = new File(settings).isFile() ? JFR.createConfiguration.invoke(null,
+                new File(settings).toPath()) : JFR.getConfiguration.invoke(null, settings);
+        }
+        catch (InvocationTargetException e)
+        {
+            throw new IllegalArgumentException("unable to read flight recorder settings " + settings, e.getCause());
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        try
+        {
+            recording = JFR.newRecording.newInstance(configuration);
+            JFR.setName.invoke(recording, name);
+            JFR.setToDisk.invoke(recording, true);
+            JFR.start.invoke(recording);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new BenchmarkingException("unable to start flight recording " + name, e);
+        }
+    }
+
+    /**
+     * Stops the recording and writes it to the file.
+     */
+    public void stop(File file)
+    {
+        try
+        {
+            JFR.stop.invoke(recording);
+            JFR.dump.invoke(recording, file.toPath());
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new BenchmarkingException("unable to write flight recording to " + file, e);
+        }
+        finally
+        {
+            try
+            {
+                JFR.close.invoke(recording);
+            }
+            catch (ReflectiveOperationException e)
+            {
+                // the recording is gone with the JVM at the latest
+            }
+        }
+    }
+
+    /**
+     * Top hot methods and allocation sites of the recording of one database in one scenario.
+     */
+    public static class Summary
+    {
+        private final GraphDatabaseType database;
+        private final int scenario;
+        private final File file;
+        private final long executionSamples;
+        private final Map<String, Long> hotMethods;
+        private final Map<String, Long> allocationSites;
+
+        Summary(GraphDatabaseType database, int scenario, File file, long executionSamples,
+            Map<String, Long> hotMethods, Map<String, Long> allocationSites)
+        {
+            this.database = database;
+            this.scenario = scenario;
+            this.file = file;
+            this.executionSamples = executionSamples;
+            this.hotMethods = hotMethods;
+            this.allocationSites = allocationSites;
+        }
+
+        public GraphDatabaseType getDatabase()
+        {
+            return database;
+        }
+
+        public int getScenario()
+        {
+            return scenario;
+        }
+
+        public File getFile()
+        {
+            return file;
+        }
+
+        public long getExecutionSamples()
+        {
+            return executionSamples;
+        }
+
+        /**
+         * @return method to the number of execution samples with it on top of the stack, most sampled first
+         */
+        public Map<String, Long> getHotMethods()
+        {
+            return hotMethods;
+        }
+
+        /**
+         * @return allocating method and allocated class to the bytes allocated there, most bytes first
+         */
+        public Map<String, Long> getAllocationSites()
+        {
+            return allocationSites;
+        }
+    }
+
+    /**
+     * Reads a recording file and keeps the top most sampled methods and allocation sites.
+     *
+     * @throws UnsupportedOperationException
+     *             if the JVM has no flight recorder API
+     */
+    public static Summary summarize(GraphDatabaseType database, int scenario, File file, int top)
+    {
+        if (JFR == null)
+        {
+            throw new UnsupportedOperationException("this JVM has no flight recorder API");
+        }
+        final Map<String, Long> methods = new HashMap<String, Long>();
+        final Map<String, Long> allocations = new HashMap<String, Long>();
+        long executionSamples = 0;
+        try (AutoCloseable recordingFile = (AutoCloseable) JFR.newRecordingFile.newInstance(file.toPath()))
+        {
+            while ((Boolean) JFR.hasMoreEvents.invoke(recordingFile))
+            {
+                final Object event = JFR.readEvent.invoke(recordingFile);
+                final String eventType = (String) JFR.eventTypeName.invoke(JFR.eventType.invoke(event));
+                if (EXECUTION_SAMPLE.equals(eventType))
+                {
+                    executionSamples++;
+                    methods.merge(topFrame(event), 1L, Long::sum);
+                }
+                else if (ALLOCATION_IN_NEW_TLAB.equals(eventType) || ALLOCATION_OUTSIDE_TLAB.equals(eventType)
+                    || ALLOCATION_SAMPLE.equals(eventType))
+                {
+                    // the size of the new TLAB, or the weight of the sample, stands for the objects allocated until
+                    // the next event
+                    final String field;
+                    if (ALLOCATION_IN_NEW_TLAB.equals(eventType))
+                    {
+                        field = "tlabSize";
+                    }
+                    else if (ALLOCATION_SAMPLE.equals(eventType))
+                    {
+                        field = "weight";
+                    }
+                    else
+                    {
+                        field = "allocationSize";
+                    }
+                    final long bytes = (Long) JFR.getLong.invoke(event, field);
+                    final String objectClass = (String) JFR.className.invoke(JFR.getClass.invoke(event,
+                        "objectClass"));
+                    allocations.merge(topFrame(event) + " " + objectClass, bytes, Long::sum);
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            throw new BenchmarkingException("unable to read flight recording " + file, e);
+        }
+        return new Summary(database, scenario, file, executionSamples, top(methods, top), top(allocations, top));
+    }
+
+    private static String topFrame(Object event) throws ReflectiveOperationException
+    {
+        final Object stackTrace = JFR.stackTrace.invoke(event);
+        final List<?> frames = stackTrace == null ? null : (List<?>) JFR.frames.invoke(stackTrace);
+        if (frames == null || frames.isEmpty())
+        {
+            return "<unknown>";
+        }
+        final Object method = JFR.frameMethod.invoke(frames.get(0));
+        return JFR.className.invoke(JFR.methodType.invoke(method)) + "." + JFR.methodName.invoke(method);
+    }
+
+    private static Map<String, Long> top(Map<String, Long> counts, int top)
+    {
+        final List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(counts.entrySet());
+        Collections.sort(entries, (a, b) -> Long.compare(b.getValue(), a.getValue()));
+        final Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Long> entry : entries.subList(0, Math.min(top, entries.size())))
+        {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * The methods of the jdk.jfr API that recordings and summaries use.
+     */
+    private static final class Jfr
+    {
+        final Method createConfiguration;
+        final Method getConfiguration;
+        final Constructor<?> newRecording;
+        final Method setName;
+        final Method setToDisk;
+        final Method start;
+        final Method stop;
+        final Method dump;
+        final Method close;
+        final Constructor<?> newRecordingFile;
+        final Method hasMoreEvents;
+        final Method readEvent;
+        final Method eventType;
+        final Method eventTypeName;
+        final Method getLong;
+        final Method getClass;
+        final Method className;
+        final Method stackTrace;
+        final Method frames;
+        final Method frameMethod;
+        final Method methodType;
+        final Method methodName;
+
+        private Jfr() throws ReflectiveOperationException
+        {
+            final Class<?> configuration = Class.forName("jdk.jfr.Configuration");
+            final Class<?> recording = Class.forName("jdk.jfr.Recording");
+            final Class<?> recordingFile = Class.forName("jdk.jfr.consumer.RecordingFile");
+            final Class<?> recordedEvent = Class.forName("jdk.jfr.consumer.RecordedEvent");
+            final Class<?> recordedObject = Class.forName("jdk.jfr.consumer.RecordedObject");
+            final Class<?> recordedFrame = Class.forName("jdk.jfr.consumer.RecordedFrame");
+            final Class<?> recordedMethod = Class.forName("jdk.jfr.consumer.RecordedMethod");
+            createConfiguration = configuration.getMethod("create", Path.class);
+            getConfiguration = configuration.getMethod("getConfiguration", String.class);
+            newRecording = recording.getConstructor(configuration);
+            setName = recording.getMethod("setName", String.class);
+            setToDisk = recording.getMethod("setToDisk", boolean.class);
+            start = recording.getMethod("start");
+            stop = recording.getMethod("stop");
+            dump = recording.getMethod("dump", Path.class);
+            close = recording.getMethod("close");
+            newRecordingFile = recordingFile.getConstructor(Path.class);
+            hasMoreEvents = recordingFile.getMethod("hasMoreEvents");
+            readEvent = recordingFile.getMethod("readEvent");
+            eventType = recordedEvent.getMethod("getEventType");
+            eventTypeName = Class.forName("jdk.jfr.EventType").getMethod("getName");
+            getLong = recordedObject.getMethod("getLong", String.class);
+            getClass = recordedObject.getMethod("getClass", String.class);
+            className = Class.forName("jdk.jfr.consumer.RecordedClass").getMethod("getName");
+            stackTrace = recordedEvent.getMethod("getStackTrace");
+            frames = Class.forName("jdk.jfr.consumer.RecordedStackTrace").getMethod("getFrames");
+            frameMethod = recordedFrame.getMethod("getMethod");
+            methodType = recordedMethod.getMethod("getType");
+            methodName = recordedMethod.getMethod("getName");
+        }
+
+        /**
+         * @return the API, or null if the running JVM does not have it
+         */
+        static Jfr load()
+        {
+            try
+            {
+                return new Jfr();
+            }
+            catch (ReflectiveOperationException | LinkageError e)
+            {
+                return null;
+            }
+        }
+    }
+}
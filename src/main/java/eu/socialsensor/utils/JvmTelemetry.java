@@ -0,0 +1,179 @@
+package eu.socialsensor.utils;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Snapshots of JVM counters, taken around each phase of a benchmark so that the time a database spent in GC,
+ * safepoints and JIT compilation, and the memory it allocated, can be reported next to its timing. A snapshot maps
+ * counter names to values; the difference of two snapshots is the telemetry of the phase between them.
+ */
+public final class JvmTelemetry
+{
+    private static final Logger LOG = LogManager.getLogger();
+
+    public static final String GC_PREFIX = "gc.";
+    public static final String COUNT_SUFFIX = ".count";
+    public static final String TIME_MS_SUFFIX = ".timeMs";
+    public static final String GC_TIME_MS = "gc.timeMs";
+    public static final String ALLOCATED_BYTES = "allocatedBytes";
+    public static final String THREAD_ALLOCATED_BYTES_PREFIX = "allocatedBytes.thread.";
+    public static final String SAFEPOINT_COUNT = "safepoint.count";
+    public static final String SAFEPOINT_TIME_MS = "safepoint.timeMs";
+    public static final String JIT_TIME_MS = "jit.timeMs";
+    // a level at the end of the phase rather than a counter, so the difference keeps the value at the end
+    public static final String HEAP_AFTER_GC_BYTES = "heapAfterGcBytes";
+
+    // HotSpot internals for safepoint statistics; null where this JVM does not expose them
+    private static final Object HOTSPOT_RUNTIME;
+    private static final Method SAFEPOINT_COUNT_METHOD;
+    private static final Method SAFEPOINT_TIME_METHOD;
+    static
+    {
+        Object runtime = null;
+        Method count = null;
+        Method time = null;
+        try
+        {
+            final Class<?> helper = Class.forName("sun.management.ManagementFactoryHelper");
+            runtime = helper.getMethod("getHotspotRuntimeMBean").invoke(null);
+            final Class<?> runtimeInterface = Class.forName("sun.management.HotspotRuntimeMBean");
+            count = runtimeInterface.getMethod("getSafepointCount");
+            time = runtimeInterface.getMethod("getTotalSafepointTime");
+        }
+        catch (ReflectiveOperationException | RuntimeException | LinkageError e)
+        {
+            LOG.debug("safepoint statistics are not available: " + e);
+            runtime = null;
+        }
+        HOTSPOT_RUNTIME = runtime;
+        SAFEPOINT_COUNT_METHOD = count;
+        SAFEPOINT_TIME_METHOD = time;
+    }
+
+    private JvmTelemetry()
+    {
+    }
+
+    public static SortedMap<String, Long> snapshot()
+    {
+        final SortedMap<String, Long> snapshot = new TreeMap<String, Long>();
+        long gcTimeMs = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            final String prefix = GC_PREFIX + gc.getName().replace(' ', '_');
+            snapshot.put(prefix + COUNT_SUFFIX, Math.max(0, gc.getCollectionCount()));
+            snapshot.put(prefix + TIME_MS_SUFFIX, Math.max(0, gc.getCollectionTime()));
+            gcTimeMs += Math.max(0, gc.getCollectionTime());
+        }
+        snapshot.put(GC_TIME_MS, gcTimeMs);
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled())
+        {
+            final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+            final long[] ids = threads.getAllThreadIds();
+            final long[] allocated = allocations.getThreadAllocatedBytes(ids);
+            final ThreadInfo[] infos = threads.getThreadInfo(ids);
+            long total = 0;
+            for (int i = 0; i < ids.length; i++)
+            {
+                if (allocated[i] > 0 && infos[i] != null)
+                {
+                    // ids keep threads of the same name apart
+                    snapshot.put(THREAD_ALLOCATED_BYTES_PREFIX + ids[i] + "." + infos[i].getThreadName().replace(' ',
+                        '_'), allocated[i]);
+                    total += allocated[i];
+                }
+            }
+            snapshot.put(ALLOCATED_BYTES, total);
+        }
+
+        long heapAfterGc = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            final MemoryUsage afterGc = pool.getCollectionUsage();
+            if (pool.getType() == MemoryType.HEAP && afterGc != null)
+            {
+                heapAfterGc += afterGc.getUsed();
+            }
+        }
+        snapshot.put(HEAP_AFTER_GC_BYTES, heapAfterGc);
+
+        if (HOTSPOT_RUNTIME != null)
+        {
+            try
+            {
+                snapshot.put(SAFEPOINT_COUNT, (Long) SAFEPOINT_COUNT_METHOD.invoke(HOTSPOT_RUNTIME));
+                snapshot.put(SAFEPOINT_TIME_MS, (Long) SAFEPOINT_TIME_METHOD.invoke(HOTSPOT_RUNTIME));
+            }
+            catch (ReflectiveOperationException e)
+            {
+                LOG.debug("unable to read safepoint statistics: " + e);
+            }
+        }
+
+        final CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+        if (compilation != null && compilation.isCompilationTimeMonitoringSupported())
+        {
+            snapshot.put(JIT_TIME_MS, compilation.getTotalCompilationTime());
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the counters of the phase between the snapshots. Threads that ended during the phase are not
+     *         counted in the allocated bytes.
+     */
+    public static SortedMap<String, Long> difference(SortedMap<String, Long> start, SortedMap<String, Long> end)
+    {
+        final SortedMap<String, Long> difference = new TreeMap<String, Long>();
+        for (Map.Entry<String, Long> counter : end.entrySet())
+        {
+            final String name = counter.getKey();
+            if (HEAP_AFTER_GC_BYTES.equals(name))
+            {
+                difference.put(name, counter.getValue());
+            }
+            else if (!name.startsWith(THREAD_ALLOCATED_BYTES_PREFIX))
+            {
+                difference.put(name, counter.getValue() - (start.containsKey(name) ? start.get(name) : 0));
+            }
+        }
+        // recount the allocations from the threads alive at the end, as those of threads that ended are lost
+        if (end.containsKey(ALLOCATED_BYTES))
+        {
+            long allocated = 0;
+            for (Map.Entry<String, Long> counter : end.tailMap(THREAD_ALLOCATED_BYTES_PREFIX).entrySet())
+            {
+                if (!counter.getKey().startsWith(THREAD_ALLOCATED_BYTES_PREFIX))
+                {
+                    break;
+                }
+                final Long before = start.get(counter.getKey());
+                final long delta = counter.getValue() - (before == null ? 0 : before);
+                if (delta > 0)
+                {
+                    difference.put(counter.getKey(), delta);
+                    allocated += delta;
+                }
+            }
+            difference.put(ALLOCATED_BYTES, allocated);
+        }
+        return difference;
+    }
+}
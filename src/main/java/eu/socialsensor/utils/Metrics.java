@@ -1,111 +1,286 @@
 package eu.socialsensor.utils;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.LongIntHashMap;
+import com.carrotsearch.hppc.cursors.LongIntCursor;
+
 /**
  * This class implements the metrics we use for the evaluation of the predicted
  * clustering. For now we use only the NMI
- * 
+ *
  * @author sbeis
  * @email sotbeis@gmail.com
  *
  */
 public class Metrics
 {
-    public double normalizedMutualInformation(int numberOfNodes, Map<Integer, List<Integer>> actualPartitions,
+    private static final int NO_LABEL = -1;
+
+    public double normalizedMutualInformation(Map<Integer, List<Integer>> actualPartitions,
         Map<Integer, List<Integer>> predictedPartitions)
     {
-        double nmi = 0;
-        double numOfNodes = (double) numberOfNodes;
-        int[][] confusionMatrix = confusionMatrix(actualPartitions, predictedPartitions);
-        int[] confusionMatrixActual = new int[actualPartitions.size()];
-        int[] confusionMatrixPredicted = new int[predictedPartitions.size()];
-        for (int i = 0; i < confusionMatrixActual.length; i++)
-        {
-            int sum = 0;
-            for (int j = 0; j < confusionMatrixPredicted.length; j++)
-            {
-                sum = sum + confusionMatrix[i][j];
-            }
-            confusionMatrixActual[i] = sum;
-        }
-        for (int j = 0; j < confusionMatrixPredicted.length; j++)
+        final IntIntHashMap nodeIndexes = new IntIntHashMap();
+        indexNodes(actualPartitions, nodeIndexes);
+        indexNodes(predictedPartitions, nodeIndexes);
+        return normalizedMutualInformation(labels(actualPartitions, nodeIndexes),
+            labels(predictedPartitions, nodeIndexes));
+    }
+
+    /**
+     * Computes the NMI of two partitions in time linear in the number of nodes. The contingency table is kept
+     * sparse, so only the pairs of communities that share nodes cost anything. Only the nodes labelled on both sides
+     * are counted, and the mutual information and both entropies are taken over just those nodes, so partial ground
+     * truth does not bias the result.
+     *
+     * @param actualLabels
+     *            the actual community of each node, indexed by a dense node index, -1 if the node has none
+     * @param predictedLabels
+     *            the predicted community of each node, indexed the same way, -1 if the node has none
+     */
+    public double normalizedMutualInformation(int[] actualLabels, int[] predictedLabels)
+    {
+        final LongIntHashMap confusionMatrix = new LongIntHashMap();
+        final int[] confusionMatrixActual = new int[maxLabel(actualLabels) + 1];
+        final int[] confusionMatrixPredicted = new int[maxLabel(predictedLabels) + 1];
+        final int nodes = Math.min(actualLabels.length, predictedLabels.length);
+        int labelled = 0;
+        for (int node = 0; node < nodes; node++)
         {
-            int sum = 0;
-            for (int i = 0; i < confusionMatrixActual.length; i++)
+            final int actual = actualLabels[node];
+            final int predicted = predictedLabels[node];
+            if (actual != NO_LABEL && predicted != NO_LABEL)
             {
-                sum = sum + confusionMatrix[i][j];
+                confusionMatrix.addTo(pair(actual, predicted), 1);
+                confusionMatrixActual[actual]++;
+                confusionMatrixPredicted[predicted]++;
+                labelled++;
             }
-            confusionMatrixPredicted[j] = sum;
         }
 
+        final double numOfNodes = (double) labelled;
         double term1 = 0;
-        for (int i = 0; i < confusionMatrixActual.length; i++)
+        for (LongIntCursor cell : confusionMatrix)
         {
-            for (int j = 0; j < confusionMatrixPredicted.length; j++)
+            final int i = (int) (cell.key >>> 32);
+            final int j = (int) cell.key;
+            term1 += -2.0 * cell.value
+                * Math.log((cell.value * numOfNodes) / ((double) confusionMatrixActual[i] * confusionMatrixPredicted[j]));
+        }
+        return term1 / (entropyTerm(confusionMatrixActual, numOfNodes) + entropyTerm(confusionMatrixPredicted, numOfNodes));
+    }
+
+    /**
+     * Overlapping NMI of McDaid, Greene and Hurley (arXiv:1110.2515), normalized by the larger of the two cover
+     * entropies. Every community is a binary variable over the nodes and is matched with the community of the
+     * other cover that explains it best, as in Lancichinetti, Fortunato and Kertesz. Only pairs of communities that
+     * share nodes are compared; disjoint pairs of communities small relative to the graph never pass the matching
+     * constraint.
+     *
+     * @param actualCover
+     *            the actual communities, which may overlap
+     * @param predictedCover
+     *            the predicted communities, which may overlap
+     */
+    public double overlappingNormalizedMutualInformation(int numberOfNodes, Map<Integer, List<Integer>> actualCover,
+        Map<Integer, List<Integer>> predictedCover)
+    {
+        final IntIntHashMap nodeIndexes = new IntIntHashMap();
+        indexNodes(actualCover, nodeIndexes);
+        indexNodes(predictedCover, nodeIndexes);
+        final int[] actualOffsets = new int[nodeIndexes.size() + 1];
+        final int[] predictedOffsets = new int[nodeIndexes.size() + 1];
+        final int[] actualMemberships = memberships(actualCover, nodeIndexes, actualOffsets);
+        final int[] predictedMemberships = memberships(predictedCover, nodeIndexes, predictedOffsets);
+        return overlappingNormalizedMutualInformation(numberOfNodes, actualOffsets, actualMemberships,
+            predictedOffsets, predictedMemberships);
+    }
+
+    /**
+     * Overlapping NMI of two covers given as compressed sparse rows over the same dense node index: the
+     * communities of node i are memberships[offsets[i]] to memberships[offsets[i + 1] - 1]. Community ids are dense
+     * and start at zero. numberOfNodes is the number of nodes of the graph, including the ones in no community.
+     */
+    public double overlappingNormalizedMutualInformation(int numberOfNodes, int[] actualOffsets,
+        int[] actualMemberships, int[] predictedOffsets, int[] predictedMemberships)
+    {
+        final int[] actualSizes = new int[maxLabel(actualMemberships) + 1];
+        final int[] predictedSizes = new int[maxLabel(predictedMemberships) + 1];
+        for (int k : actualMemberships)
+        {
+            actualSizes[k]++;
+        }
+        for (int l : predictedMemberships)
+        {
+            predictedSizes[l]++;
+        }
+
+        // |X_k n Y_l| for every pair of communities that share nodes
+        final LongIntHashMap intersections = new LongIntHashMap();
+        final int nodes = Math.min(actualOffsets.length, predictedOffsets.length) - 1;
+        for (int node = 0; node < nodes; node++)
+        {
+            for (int i = actualOffsets[node]; i < actualOffsets[node + 1]; i++)
             {
-                if (confusionMatrix[i][j] > 0)
+                for (int j = predictedOffsets[node]; j < predictedOffsets[node + 1]; j++)
                 {
-                    term1 += -2.0
-                        * confusionMatrix[i][j]
-                        * Math.log((confusionMatrix[i][j] * numOfNodes)
-                            / (confusionMatrixActual[i] * confusionMatrixPredicted[j]));
+                    intersections.addTo(pair(actualMemberships[i], predictedMemberships[j]), 1);
                 }
             }
         }
-        double term2 = 0;
-        for (int i = 0; i < confusionMatrixActual.length; i++)
+
+        final double n = (double) numberOfNodes;
+        // conditional entropies start at the unconditioned entropy, the value when no community matches
+        final double[] actualConditional = new double[actualSizes.length];
+        final double[] predictedConditional = new double[predictedSizes.length];
+        double actualEntropy = 0;
+        double predictedEntropy = 0;
+        for (int k = 0; k < actualSizes.length; k++)
         {
-            term2 += confusionMatrixActual[i] * Math.log(confusionMatrixActual[i] / numOfNodes);
+            actualConditional[k] = binaryEntropy(actualSizes[k], n);
+            actualEntropy += actualConditional[k];
         }
-        double term3 = 0;
-        for (int j = 0; j < confusionMatrixPredicted.length; j++)
+        for (int l = 0; l < predictedSizes.length; l++)
         {
-            term3 += confusionMatrixPredicted[j] * Math.log(confusionMatrixPredicted[j] / numOfNodes);
+            predictedConditional[l] = binaryEntropy(predictedSizes[l], n);
+            predictedEntropy += predictedConditional[l];
+        }
+        for (LongIntCursor cell : intersections)
+        {
+            final int k = (int) (cell.key >>> 32);
+            final int j = (int) cell.key;
+            final double both = cell.value;
+            final double onlyActual = actualSizes[k] - both;
+            final double onlyPredicted = predictedSizes[j] - both;
+            final double neither = n - both - onlyActual - onlyPredicted;
+            if (h(neither, n) + h(both, n) < h(onlyActual, n) + h(onlyPredicted, n))
+            {
+                continue; // the communities are closer to complements than to each other
+            }
+            final double joint = h(neither, n) + h(both, n) + h(onlyActual, n) + h(onlyPredicted, n);
+            actualConditional[k] = Math.min(actualConditional[k], joint - binaryEntropy(predictedSizes[j], n));
+            predictedConditional[j] = Math.min(predictedConditional[j], joint - binaryEntropy(actualSizes[k], n));
         }
-        nmi = term1 / (term2 + term3);
-        return nmi;
+
+        double actualGivenPredicted = 0;
+        for (double conditional : actualConditional)
+        {
+            actualGivenPredicted += conditional;
+        }
+        double predictedGivenActual = 0;
+        for (double conditional : predictedConditional)
+        {
+            predictedGivenActual += conditional;
+        }
+        final double mutualInformation = 0.5 * (actualEntropy - actualGivenPredicted + predictedEntropy
+            - predictedGivenActual);
+        return mutualInformation / Math.max(actualEntropy, predictedEntropy);
     }
 
-    private int[][] confusionMatrix(Map<Integer, List<Integer>> actualPartitions,
-        Map<Integer, List<Integer>> predictedPartitions)
+    /**
+     * Assigns the next dense index to every node of the partitions that has none yet.
+     */
+    private static void indexNodes(Map<Integer, List<Integer>> partitions, IntIntHashMap nodeIndexes)
+    {
+        for (List<Integer> partition : partitions.values())
+        {
+            for (int node : partition)
+            {
+                nodeIndexes.putIfAbsent(node, nodeIndexes.size());
+            }
+        }
+    }
+
+    /**
+     * @return the position of the partition of each node in the iteration order of the partitions, by node index.
+     *         Partitions are assumed disjoint; a node in several of them keeps the last one.
+     */
+    private static int[] labels(Map<Integer, List<Integer>> partitions, IntIntHashMap nodeIndexes)
     {
-        int actualPartitionsSize = actualPartitions.size();
-        int predictedPartitionsSize = predictedPartitions.size();
-        int[][] confusionMatrix = new int[actualPartitionsSize][];
-        int actualPartitionsKeys[] = new int[actualPartitionsSize];
-        int predictedPartitionsKeys[] = new int[predictedPartitionsSize];
+        final int[] labels = new int[nodeIndexes.size()];
+        Arrays.fill(labels, NO_LABEL);
+        int label = 0;
+        for (List<Integer> partition : partitions.values())
+        {
+            for (int node : partition)
+            {
+                labels[nodeIndexes.get(node)] = label;
+            }
+            label++;
+        }
+        return labels;
+    }
 
-        int actualPartitionsIndex = 0;
-        for (int key : actualPartitions.keySet())
+    /**
+     * @return the communities of each node, by node index, in compressed sparse rows delimited by offsets, which
+     *         must have one more element than there are nodes. Communities are numbered in iteration order.
+     */
+    private static int[] memberships(Map<Integer, List<Integer>> cover, IntIntHashMap nodeIndexes, int[] offsets)
+    {
+        for (List<Integer> community : cover.values())
         {
-            actualPartitionsKeys[actualPartitionsIndex] = key;
-            actualPartitionsIndex++;
+            for (int node : community)
+            {
+                offsets[nodeIndexes.get(node) + 1]++;
+            }
         }
-        int predictedPartitionsIndex = 0;
-        for (int key : predictedPartitions.keySet())
+        for (int node = 0; node + 1 < offsets.length; node++)
         {
-            predictedPartitionsKeys[predictedPartitionsIndex] = key;
-            predictedPartitionsIndex++;
+            offsets[node + 1] += offsets[node];
         }
+        final int[] memberships = new int[offsets[offsets.length - 1]];
+        final int[] filled = new int[offsets.length - 1];
+        int k = 0;
+        for (List<Integer> community : cover.values())
+        {
+            for (int node : community)
+            {
+                final int index = nodeIndexes.get(node);
+                memberships[offsets[index] + filled[index]++] = k;
+            }
+            k++;
+        }
+        return memberships;
+    }
 
-        for (int i = 0; i < actualPartitionsSize; i++)
+    private static long pair(int first, int second)
+    {
+        return ((long) first << 32) | (second & 0xFFFFFFFFL);
+    }
+
+    private static int maxLabel(int[] labels)
+    {
+        int max = NO_LABEL;
+        for (int label : labels)
+        {
+            max = Math.max(max, label);
+        }
+        return max;
+    }
+
+    private static double entropyTerm(int[] sizes, double numOfNodes)
+    {
+        double term = 0;
+        for (int size : sizes)
         {
-            confusionMatrix[i] = new int[predictedPartitionsSize];
-            for (int j = 0; j < predictedPartitionsSize; j++)
+            if (size > 0)
             {
-                int commonNodes = 0;
-                for (int node : predictedPartitions.get(predictedPartitionsKeys[j]))
-                {
-                    if (actualPartitions.get(actualPartitionsKeys[i]).contains(node))
-                    {
-                        commonNodes++;
-                    }
-                }
-                confusionMatrix[i][j] = commonNodes;
+                term += size * Math.log(size / numOfNodes);
             }
         }
-        return confusionMatrix;
+        return term;
+    }
+
+    private static double h(double count, double n)
+    {
+        return count <= 0 ? 0 : -count / n * Math.log(count / n) / Math.log(2);
+    }
+
+    private static double binaryEntropy(double size, double n)
+    {
+        return h(size, n) + h(n - size, n);
     }
 }
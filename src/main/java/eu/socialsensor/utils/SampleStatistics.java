@@ -0,0 +1,239 @@
+package eu.socialsensor.utils;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Robust statistics of benchmark samples: medians, Tukey outlier fences and percentile bootstrap confidence
+ * intervals for the median and for the relative difference of a statistic, like the median, of two sets of samples.
+ */
+public final class SampleStatistics
+{
+    /**
+     * The median of sorted samples.
+     */
+    public static final ToDoubleFunction<double[]> MEDIAN = SampleStatistics::sortedMedian;
+
+    /**
+     * The mean of samples.
+     */
+    public static final ToDoubleFunction<double[]> MEAN = samples -> Arrays.stream(samples).average().getAsDouble();
+
+    private SampleStatistics()
+    {
+    }
+
+    /**
+     * An estimate and its confidence interval.
+     */
+    public static final class Interval
+    {
+        private final double estimate;
+        private final double lower;
+        private final double upper;
+
+        Interval(double estimate, double lower, double upper)
+        {
+            this.estimate = estimate;
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        public double getEstimate()
+        {
+            return estimate;
+        }
+
+        public double getLower()
+        {
+            return lower;
+        }
+
+        public double getUpper()
+        {
+            return upper;
+        }
+
+        /**
+         * @return the width of the interval relative to the magnitude of the estimate
+         */
+        public double relativeWidth()
+        {
+            return (upper - lower) / Math.abs(estimate);
+        }
+
+        public boolean contains(double value)
+        {
+            return lower <= value && value <= upper;
+        }
+    }
+
+    /**
+     * @return the statistic of sorted samples that is their percent percentile, interpolating linearly between order
+     *         statistics
+     */
+    public static ToDoubleFunction<double[]> percentile(double percent)
+    {
+        if (percent < 0 || percent > 100)
+        {
+            throw new IllegalArgumentException("percent must be between zero and one hundred");
+        }
+        return sorted -> quantile(sorted, percent / 100);
+    }
+
+    /**
+     * @return (value - baseline) / baseline, zero if both are zero, and an infinity of the sign of value if only the
+     *         baseline is
+     */
+    public static double relativeDifference(double baseline, double value)
+    {
+        if (baseline == 0)
+        {
+            return value == 0 ? 0 : Math.copySign(Double.POSITIVE_INFINITY, value);
+        }
+        return (value - baseline) / baseline;
+    }
+
+    public static double median(double[] samples)
+    {
+        final double[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sortedMedian(sorted);
+    }
+
+    /**
+     * @return the number of samples outside the Tukey fences, iqrFactor interquartile ranges below the first or above
+     *         the third quartile
+     */
+    public static int countOutliers(double[] samples, double iqrFactor)
+    {
+        if (samples.length < 4)
+        {
+            return 0;
+        }
+        final double[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        final double q1 = quantile(sorted, 0.25);
+        final double q3 = quantile(sorted, 0.75);
+        final double low = q1 - iqrFactor * (q3 - q1);
+        final double high = q3 + iqrFactor * (q3 - q1);
+        int outliers = 0;
+        for (double sample : sorted)
+        {
+            if (sample < low || sample > high)
+            {
+                outliers++;
+            }
+        }
+        return outliers;
+    }
+
+    /**
+     * @return the median with its percentile bootstrap confidence interval
+     */
+    public static Interval bootstrapMedian(double[] samples, int resamples, double confidence, Random random)
+    {
+        checkArguments(samples, resamples, confidence);
+        final double[] medians = new double[resamples];
+        final double[] resample = new double[samples.length];
+        for (int r = 0; r < resamples; r++)
+        {
+            medians[r] = resampled(samples, resample, MEDIAN, random);
+        }
+        return interval(median(samples), medians, confidence);
+    }
+
+    /**
+     * @return the relative difference of the median of the samples from the median of the baseline, (m - m0) / m0,
+     *         with its percentile bootstrap confidence interval
+     * @see #bootstrapRelativeDifference(double[], double[], ToDoubleFunction, int, double, Random)
+     */
+    public static Interval bootstrapRelativeDifference(double[] baseline, double[] samples, int resamples,
+        double confidence, Random random)
+    {
+        return bootstrapRelativeDifference(baseline, samples, MEDIAN, resamples, confidence, random);
+    }
+
+    /**
+     * @param statistic
+     *            the statistic to compare, computed from sorted samples
+     * @return the relative difference of the statistic of the samples from the statistic of the baseline, computed
+     *         as by relativeDifference, with its percentile bootstrap confidence interval. The two sets of samples
+     *         are resampled independently. The difference is significant at the given confidence when the interval
+     *         does not contain zero.
+     */
+    public static Interval bootstrapRelativeDifference(double[] baseline, double[] samples,
+        ToDoubleFunction<double[]> statistic, int resamples, double confidence, Random random)
+    {
+        checkArguments(baseline, resamples, confidence);
+        checkArguments(samples, resamples, confidence);
+        final double[] differences = new double[resamples];
+        final double[] baselineResample = new double[baseline.length];
+        final double[] resample = new double[samples.length];
+        for (int r = 0; r < resamples; r++)
+        {
+            final double baselineStatistic = resampled(baseline, baselineResample, statistic, random);
+            differences[r] = relativeDifference(baselineStatistic, resampled(samples, resample, statistic, random));
+        }
+        return interval(relativeDifference(sortedStatistic(baseline, statistic), sortedStatistic(samples, statistic)),
+            differences, confidence);
+    }
+
+    private static void checkArguments(double[] samples, int resamples, double confidence)
+    {
+        if (samples.length == 0)
+        {
+            throw new IllegalArgumentException("need at least one sample");
+        }
+        if (resamples < 1)
+        {
+            throw new IllegalArgumentException("need at least one resample");
+        }
+        if (confidence <= 0 || confidence >= 1)
+        {
+            throw new IllegalArgumentException("confidence must be between zero and one");
+        }
+    }
+
+    private static double resampled(double[] samples, double[] resample, ToDoubleFunction<double[]> statistic,
+        Random random)
+    {
+        for (int i = 0; i < resample.length; i++)
+        {
+            resample[i] = samples[random.nextInt(samples.length)];
+        }
+        Arrays.sort(resample);
+        return statistic.applyAsDouble(resample);
+    }
+
+    private static double sortedStatistic(double[] samples, ToDoubleFunction<double[]> statistic)
+    {
+        final double[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return statistic.applyAsDouble(sorted);
+    }
+
+    private static Interval interval(double estimate, double[] bootstrapped, double confidence)
+    {
+        Arrays.sort(bootstrapped);
+        final double tail = (1 - confidence) / 2;
+        return new Interval(estimate, quantile(bootstrapped, tail), quantile(bootstrapped, 1 - tail));
+    }
+
+    private static double sortedMedian(double[] sorted)
+    {
+        return quantile(sorted, 0.5);
+    }
+
+    /**
+     * @return the p quantile of sorted values, interpolating linearly between order statistics
+     */
+    static double quantile(double[] sorted, double p)
+    {
+        final double position = p * (sorted.length - 1);
+        final int below = (int) Math.floor(position);
+        final int above = Math.min(below + 1, sorted.length - 1);
+        return sorted[below] + (position - below) * (sorted[above] - sorted[below]);
+    }
+}
@@ -21,8 +21,10 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import eu.socialsensor.graphdatabases.GraphDatabase;
+import eu.socialsensor.graphdatabases.MemoryGraphDatabase;
 import eu.socialsensor.graphdatabases.Neo4jGraphDatabase;
 import eu.socialsensor.graphdatabases.OrientGraphDatabase;
+import eu.socialsensor.graphdatabases.TinkerGraphDatabase;
 import eu.socialsensor.graphdatabases.TitanGraphDatabase;
 import eu.socialsensor.main.BenchmarkConfiguration;
 import eu.socialsensor.main.BenchmarkingException;
@@ -56,37 +58,71 @@ public class Utils
 
     public static final List<String> readlines(File file)
     {
-        if (file == null || !file.exists())
-        {
-            throw new IllegalArgumentException("file object must not be null and must exist: " + file.getAbsolutePath());
-        }
-        if (!file.isFile() || !(file.isFile() && file.canRead()))
-        {
-            throw new IllegalArgumentException("file object must be a readable file: " + file.getAbsolutePath());
-        }
-        LineIterator it;
+        return readlines(file, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the first maxLines lines of the file, reading no further
+     */
+    public static final List<String> readlines(File file, int maxLines)
+    {
+        final LineIterator it = lineIterator(file);
+        List<String> result = new LinkedList<String>();
         try
         {
-            it = FileUtils.lineIterator(file, "UTF-8");
+            while (result.size() < maxLines && it.hasNext())
+            {
+                result.add(it.nextLine());
+            }
         }
-        catch (IOException e)
+        finally
         {
-            throw new BenchmarkingException("Unable to read lines from file: " + file.getAbsolutePath(), e);
+            LineIterator.closeQuietly(it);
         }
-        List<String> result = new LinkedList<String>();
+
+        return result;
+    }
+
+    /**
+     * @return the number of lines of the file, counted without keeping them
+     */
+    public static final long countLines(File file)
+    {
+        final LineIterator it = lineIterator(file);
+        long count = 0;
         try
         {
             while (it.hasNext())
             {
-                result.add(it.nextLine());
+                it.nextLine();
+                count++;
             }
         }
         finally
         {
             LineIterator.closeQuietly(it);
         }
+        return count;
+    }
 
-        return result;
+    private static LineIterator lineIterator(File file)
+    {
+        if (file == null || !file.exists())
+        {
+            throw new IllegalArgumentException("file object must not be null and must exist: " + file.getAbsolutePath());
+        }
+        if (!file.isFile() || !(file.isFile() && file.canRead()))
+        {
+            throw new IllegalArgumentException("file object must be a readable file: " + file.getAbsolutePath());
+        }
+        try
+        {
+            return FileUtils.lineIterator(file, "UTF-8");
+        }
+        catch (IOException e)
+        {
+            throw new BenchmarkingException("Unable to read lines from file: " + file.getAbsolutePath(), e);
+        }
     }
 
     public static final List<List<String>> parseTabulatedLines(List<String> lines, int numberOfLinesToSkip)
@@ -110,6 +146,14 @@ public class Utils
         return parseTabulatedLines(readlines(file), numberOfLinesToSkip);
     }
 
+    /**
+     * @return the first maxLines lines after the skipped ones, split at tabs
+     */
+    public static final List<List<String>> readTabulatedLines(File file, int numberOfLinesToSkip, int maxLines)
+    {
+        return parseTabulatedLines(readlines(file, numberOfLinesToSkip + maxLines), numberOfLinesToSkip);
+    }
+
     public static void deleteRecursively(File file)
     {
         if (!file.exists())
@@ -143,7 +187,7 @@ public class Utils
         {
             for (Double insertionTime : insertionTimes)
             {
-                out.write(String.format("%d\n", String.valueOf(insertionTime)));
+                out.write(String.format("%s\n", String.valueOf(insertionTime)));
             }
         }
         catch (IOException e)
@@ -191,13 +235,20 @@ public class Utils
         }
         else if (GraphDatabaseType.NEO4J == type)
         {
-            graphDatabase = new Neo4jGraphDatabase(dbStorageDirectory, batchLoading, config.getRandomNodeList(),
-                    config.getShortestPathMaxHops());
+            graphDatabase = new Neo4jGraphDatabase(config, dbStorageDirectory, batchLoading);
         }
         else if (GraphDatabaseType.ORIENT_DB == type)
         {
             graphDatabase = new OrientGraphDatabase(config, dbStorageDirectory);
         }
+        else if (GraphDatabaseType.MEMORY == type)
+        {
+            graphDatabase = new MemoryGraphDatabase(config, dbStorageDirectory);
+        }
+        else if (GraphDatabaseType.TINKERGRAPH == type)
+        {
+            graphDatabase = new TinkerGraphDatabase(config, dbStorageDirectory);
+        }
         else
         {
             // For safety, will handle the null case
@@ -0,0 +1,86 @@
+package eu.socialsensor.clustering;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class NeighbourCacheTest
+{
+    @Test
+    public void testHitsAndMisses()
+    {
+        try (NeighbourCache cache = new NeighbourCache(1024))
+        {
+            assertNull(cache.getIfPresent(1));
+            cache.put(1, new int[] { 2, 3, 5 });
+            cache.put(2, new int[0]);
+            assertArrayEquals(new int[] { 2, 3, 5 }, cache.getIfPresent(1));
+            assertArrayEquals(new int[0], cache.getIfPresent(2));
+            assertNull(cache.getIfPresent(3));
+            assertEquals(2, cache.getHits());
+            assertEquals(2, cache.getMisses());
+            assertEquals(2, cache.size());
+            assertEquals(NeighbourCache.entryBytes(3) + NeighbourCache.entryBytes(0), cache.getUsedBytes());
+        }
+    }
+
+    @Test
+    public void testPutReplacesAndInvalidateRemoves()
+    {
+        try (NeighbourCache cache = new NeighbourCache(1024))
+        {
+            cache.put(1, new int[] { 2 });
+            cache.put(1, new int[] { 3, 4 });
+            assertArrayEquals(new int[] { 3, 4 }, cache.getIfPresent(1));
+            assertEquals(1, cache.size());
+            cache.invalidate(1);
+            assertNull(cache.getIfPresent(1));
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    public void testEvictsUnreferencedEntriesFirst()
+    {
+        // room for exactly three entries of two neighbours
+        try (NeighbourCache cache = new NeighbourCache(3 * NeighbourCache.entryBytes(2)))
+        {
+            cache.put(1, new int[] { 10, 11 });
+            cache.put(2, new int[] { 20, 21 });
+            cache.put(3, new int[] { 30, 31 });
+            // node 1 was read, so node 2 is evicted in its place and node 1 wraps around the arena
+            cache.getIfPresent(1);
+            cache.put(4, new int[] { 40, 41 });
+            assertEquals(1, cache.getEvictions());
+            assertNull(cache.getIfPresent(2));
+            assertArrayEquals(new int[] { 10, 11 }, cache.getIfPresent(1));
+            assertArrayEquals(new int[] { 30, 31 }, cache.getIfPresent(3));
+            assertArrayEquals(new int[] { 40, 41 }, cache.getIfPresent(4));
+            assertEquals(cache.getCapacityBytes(), cache.getUsedBytes());
+        }
+    }
+
+    @Test
+    public void testListsLargerThanTheArenaAreNotCached()
+    {
+        try (NeighbourCache cache = new NeighbourCache(NeighbourCache.entryBytes(1)))
+        {
+            cache.put(1, new int[] { 2, 3 });
+            assertNull(cache.getIfPresent(1));
+            assertEquals(0, cache.getUsedBytes());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosedCacheRejectsLookups()
+    {
+        final NeighbourCache cache = new NeighbourCache(1024);
+        cache.put(1, new int[] { 2 });
+        cache.getIfPresent(1);
+        cache.close();
+        assertEquals(1, cache.getHits());
+        cache.getIfPresent(1);
+    }
+}
@@ -0,0 +1,63 @@
+package eu.socialsensor.dataset;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DatasetTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(int edges) throws IOException
+    {
+        final List<String> lines = new ArrayList<String>(Arrays.asList("# header", "# nodes", "# edges", "# from\tto"));
+        for (int i = 0; i < edges; i++)
+        {
+            lines.add(i + "\t" + (i + 1));
+        }
+        final File file = folder.newFile();
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    public void testWholeFile() throws IOException
+    {
+        final Dataset dataset = new Dataset(write(10), new Random(1), 3);
+        assertEquals(10, dataset.getEdges());
+        assertEquals(Arrays.asList("0", "1"), dataset.getList().get(0));
+        assertEquals(Arrays.asList("9", "10"), dataset.getList().get(9));
+    }
+
+    @Test
+    public void testFractionIsThePrefix() throws IOException
+    {
+        final Dataset dataset = new Dataset(write(10), 0.25, new Random(1), 3);
+        // a quarter of ten edges, rounded up
+        assertEquals(3, dataset.getEdges());
+        assertEquals(Arrays.asList("2", "3"), dataset.getList().get(2));
+        assertEquals(3, dataset.getRandomNodes().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRemovedDatasetIsForgotten() throws IOException
+    {
+        final File file = new File(write(10).getPath() + DatasetFactory.FRACTION_SUFFIX + 0.5);
+        final DatasetFactory factory = DatasetFactory.getInstance();
+        assertEquals(5, factory.createAndGetDataset(file, new Random(1), 3).getEdges());
+        factory.removeDataset(file);
+        factory.getDataset(file);
+    }
+}
@@ -0,0 +1,153 @@
+package eu.socialsensor.dataset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GeneratedDatasetTest
+{
+    private static final int NODES = 1000;
+    private static final String RMAT = "generator:rmat?nodes=" + NODES + "&edge-factor=8&seed=3";
+    private static final String BA = "generator:ba?nodes=" + NODES + "&edge-factor=4";
+    private static final String LFR = "generator:lfr?nodes=" + NODES + "&edge-factor=8&max-community=100";
+
+    @Test
+    public void testSameUriGeneratesSameEdges()
+    {
+        for (String uri : new String[] { RMAT, BA, LFR })
+        {
+            final GeneratedDataset dataset = GeneratedDataset.create(uri, new Random(17), 50);
+            assertEquals(uri, dataset.getList(), dataset.getList());
+            assertEquals(uri, dataset.getList(), GeneratedDataset.create(uri, new Random(17), 50).getList());
+            assertEquals(uri, dataset.getRandomNodes(),
+                GeneratedDataset.create(uri, new Random(17), 50).getRandomNodes());
+        }
+    }
+
+    @Test
+    public void testSeedChangesEdges()
+    {
+        assertNotEquals(GeneratedDataset.create(RMAT, new Random(17), 1).getList(),
+            GeneratedDataset.create(RMAT.replace("seed=3", "seed=4"), new Random(17), 1).getList());
+    }
+
+    @Test
+    public void testRmatDegrees()
+    {
+        final int[] degrees = degrees(RMAT);
+        assertEquals(8 * NODES, sum(degrees) / 2);
+        // the recursive quadrants skew the degrees far above the mean of 16
+        assertTrue(max(degrees) > 4 * 16);
+    }
+
+    @Test
+    public void testBarabasiAlbertDegrees()
+    {
+        final GeneratedDataset dataset = GeneratedDataset.create(BA, new Random(17), 50);
+        final int[] degrees = degrees(BA);
+        assertEquals(dataset.getEdges(), sum(degrees) / 2);
+        for (List<String> edge : dataset)
+        {
+            assertFalse("self loop " + edge, edge.get(0).equals(edge.get(1)));
+        }
+        for (int node = 0; node < NODES; node++)
+        {
+            assertTrue("isolated node " + node, degrees[node] > 0);
+        }
+        assertTrue(max(degrees) > 4 * 8);
+    }
+
+    @Test
+    public void testLfrDegrees()
+    {
+        final GeneratedDataset dataset = GeneratedDataset.create(LFR, new Random(17), 50);
+        final int[] degrees = degrees(LFR);
+        // the number of edges is only matched in expectation
+        assertEquals(dataset.getEdges(), sum(degrees) / 2, dataset.getEdges() / 5);
+    }
+
+    @Test
+    public void testRandomNodesHaveEdges()
+    {
+        for (String uri : new String[] { RMAT, BA, LFR })
+        {
+            final GeneratedDataset dataset = GeneratedDataset.create(uri, new Random(17), 50);
+            final int[] degrees = degrees(uri);
+            assertEquals(uri, 50, dataset.getRandomNodes().size());
+            for (int node : dataset.getRandomNodes())
+            {
+                assertTrue(uri + " node " + node, degrees[node] > 0);
+            }
+        }
+    }
+
+    @Test
+    public void testResize()
+    {
+        assertEquals("generator:rmat?edge-factor=8&seed=3&nodes=250", GeneratedDataset.resize(RMAT, 0.25));
+        assertEquals("generator:ba?nodes=500000", GeneratedDataset.resize("generator:ba", 0.5));
+        assertEquals("generator:ba?nodes=2", GeneratedDataset.resize("generator:ba?nodes=10", 0.01));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownParameterIsRejected()
+    {
+        GeneratedDataset.create("generator:rmat?nodez=1000", new Random(17), 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownModelIsRejected()
+    {
+        GeneratedDataset.create("generator:kronecker?nodes=1000", new Random(17), 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutOfRangeParameterIsRejected()
+    {
+        GeneratedDataset.create("generator:ba?nodes=10&edge-factor=10", new Random(17), 1);
+    }
+
+    /**
+     * @return the number of edge ends at every node, checking that every end is a node
+     */
+    private static int[] degrees(String uri)
+    {
+        final int[] degrees = new int[NODES];
+        for (List<String> edge : GeneratedDataset.create(uri, new Random(17), 1))
+        {
+            for (String end : edge)
+            {
+                final int node = Integer.parseInt(end);
+                assertTrue(uri + " node " + node, node >= 0 && node < NODES);
+                degrees[node]++;
+            }
+        }
+        return degrees;
+    }
+
+    private static long sum(int[] values)
+    {
+        long sum = 0;
+        for (int value : values)
+        {
+            sum += value;
+        }
+        return sum;
+    }
+
+    private static int max(int[] values)
+    {
+        int max = 0;
+        for (int value : values)
+        {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+}
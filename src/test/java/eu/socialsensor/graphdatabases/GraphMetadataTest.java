@@ -0,0 +1,68 @@
+package eu.socialsensor.graphdatabases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.socialsensor.main.BenchmarkingException;
+
+public class GraphMetadataTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndRead()
+    {
+        final GraphMetadata metadata = new GraphMetadata(1L << 33, 7);
+        metadata.write(folder.getRoot());
+        final GraphMetadata read = GraphMetadata.read(folder.getRoot());
+        assertEquals(metadata, read);
+        assertEquals(1L << 33, read.getNodes());
+        assertEquals(7, read.getEdges());
+    }
+
+    @Test
+    public void testWriteReplaces()
+    {
+        new GraphMetadata(1, 2).write(folder.getRoot());
+        new GraphMetadata(3, 4).write(folder.getRoot());
+        assertEquals(new GraphMetadata(3, 4), GraphMetadata.read(folder.getRoot()));
+        // nothing partial is left behind
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testMissingFileReadsAsNull()
+    {
+        assertNull(GraphMetadata.read(folder.getRoot()));
+    }
+
+    @Test(expected = BenchmarkingException.class)
+    public void testMalformedFileIsRejected() throws IOException
+    {
+        Files.write(new File(folder.getRoot(), "graph-metadata.properties").toPath(),
+            Collections.singletonList("nodes=many"), StandardCharsets.ISO_8859_1);
+        GraphMetadata.read(folder.getRoot());
+    }
+
+    @Test
+    public void testEquality()
+    {
+        assertEquals(new GraphMetadata(1, 2), new GraphMetadata(1, 2));
+        assertEquals(new GraphMetadata(1, 2).hashCode(), new GraphMetadata(1, 2).hashCode());
+        assertNotEquals(new GraphMetadata(1, 2), new GraphMetadata(2, 1));
+        assertFalse(new GraphMetadata(1, 2).equals(null));
+    }
+}
@@ -0,0 +1,128 @@
+package eu.socialsensor.graphdatabases;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MemoryGraphTest
+{
+    // node ids 10 to 60; 10 -> 20 twice, 10 -> 30, 20 -> 40, 30 -> 40, 40 -> 50, 20 -> 10, and 60 alone
+    private static final int[][] EDGES = { { 10, 20 }, { 20, 40 }, { 10, 30 }, { 30, 40 }, { 40, 50 }, { 20, 10 },
+        { 10, 20 } };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static MemoryGraph fixture()
+    {
+        final MemoryGraph graph = new MemoryGraph();
+        for (int[] edge : EDGES)
+        {
+            graph.addEdge(graph.getOrCreateNode(edge[0]), graph.getOrCreateNode(edge[1]));
+        }
+        graph.getOrCreateNode(60);
+        graph.seal();
+        return graph;
+    }
+
+    private static int[] outNeighbours(MemoryGraph graph, int nodeId)
+    {
+        final int node = graph.indexOf(nodeId);
+        final int[] neighbours = new int[graph.outDegree(node)];
+        for (int e = graph.firstOutEdge(node); e < graph.endOutEdge(node); e++)
+        {
+            assertEquals(node, graph.source(e));
+            neighbours[e - graph.firstOutEdge(node)] = graph.nodeId(graph.target(e));
+        }
+        return neighbours;
+    }
+
+    private static int[] inNeighbours(MemoryGraph graph, int nodeId)
+    {
+        final int node = graph.indexOf(nodeId);
+        final int[] neighbours = new int[graph.endInEdge(node) - graph.firstInEdge(node)];
+        for (int i = graph.firstInEdge(node); i < graph.endInEdge(node); i++)
+        {
+            final int edge = graph.inEdge(i);
+            assertEquals(node, graph.target(edge));
+            neighbours[i - graph.firstInEdge(node)] = graph.nodeId(graph.source(edge));
+        }
+        return neighbours;
+    }
+
+    @Test
+    public void testNodesAreNumberedInCreationOrder()
+    {
+        final MemoryGraph graph = fixture();
+        assertEquals(6, graph.nodeCount());
+        assertEquals(EDGES.length, graph.edgeCount());
+        assertEquals(0, graph.indexOf(10));
+        assertEquals(5, graph.indexOf(60));
+        assertEquals(-1, graph.indexOf(70));
+        assertEquals(40, graph.nodeId(graph.indexOf(40)));
+    }
+
+    @Test
+    public void testRowsBySourceAndTarget()
+    {
+        final MemoryGraph graph = fixture();
+        // the rows keep the order the edges were added in, duplicates included
+        assertArrayEquals(new int[] { 20, 30, 20 }, outNeighbours(graph, 10));
+        assertArrayEquals(new int[] { 40, 10 }, outNeighbours(graph, 20));
+        assertArrayEquals(new int[] { 50 }, outNeighbours(graph, 40));
+        assertArrayEquals(new int[0], outNeighbours(graph, 50));
+        assertArrayEquals(new int[0], outNeighbours(graph, 60));
+        assertArrayEquals(new int[] { 10, 10 }, inNeighbours(graph, 20));
+        assertArrayEquals(new int[] { 20, 30 }, inNeighbours(graph, 40));
+        assertArrayEquals(new int[0], inNeighbours(graph, 60));
+    }
+
+    @Test
+    public void testAddingAnEdgeRebuildsTheRows()
+    {
+        final MemoryGraph graph = fixture();
+        graph.addEdge(graph.indexOf(50), graph.getOrCreateNode(70));
+        graph.seal();
+        assertArrayEquals(new int[] { 70 }, outNeighbours(graph, 50));
+        assertArrayEquals(new int[] { 50 }, inNeighbours(graph, 70));
+        assertArrayEquals(new int[] { 20, 30, 20 }, outNeighbours(graph, 10));
+    }
+
+    @Test
+    public void testShortestPaths()
+    {
+        final MemoryGraph graph = fixture();
+        final MemoryGraph.PathSearch search = new MemoryGraph.PathSearch();
+        assertEquals(1, search.hops(graph, graph.indexOf(10), graph.indexOf(30), 5));
+        assertEquals(2, search.hops(graph, graph.indexOf(10), graph.indexOf(40), 5));
+        assertEquals(3, search.hops(graph, graph.indexOf(10), graph.indexOf(50), 5));
+        assertEquals(2, search.hops(graph, graph.indexOf(10), graph.indexOf(10), 5));
+        // edges are followed from source to target only
+        assertEquals(-1, search.hops(graph, graph.indexOf(50), graph.indexOf(10), 5));
+        assertEquals(-1, search.hops(graph, graph.indexOf(10), graph.indexOf(60), 5));
+        // too far for the hops allowed
+        assertEquals(-1, search.hops(graph, graph.indexOf(10), graph.indexOf(50), 2));
+        assertEquals(3, search.hops(graph, graph.indexOf(10), graph.indexOf(50), 3));
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException
+    {
+        final File file = new File(folder.getRoot(), "graph.bin");
+        assertEquals(0, MemoryGraph.read(file).nodeCount());
+        fixture().write(file);
+        final MemoryGraph read = MemoryGraph.read(file);
+        read.seal();
+        assertEquals(6, read.nodeCount());
+        assertEquals(EDGES.length, read.edgeCount());
+        assertArrayEquals(new int[] { 20, 30, 20 }, outNeighbours(read, 10));
+        assertArrayEquals(new int[] { 20, 30 }, inNeighbours(read, 40));
+        assertEquals(5, read.indexOf(60));
+    }
+}
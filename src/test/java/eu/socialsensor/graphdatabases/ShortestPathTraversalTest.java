@@ -0,0 +1,267 @@
+package eu.socialsensor.graphdatabases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Random;
+
+import org.apache.tinkerpop.gremlin.process.traversal.Path;
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShortestPathTraversalTest
+{
+    private static final int MAX_HOPS = 3;
+    private static final List<String> NO_DISABLED_STRATEGIES = Collections.emptyList();
+
+    private TinkerGraph graph;
+    private final Map<Integer, Vertex> vertices = new HashMap<Integer, Vertex>();
+
+    @Before
+    public void setUp()
+    {
+        graph = TinkerGraph.open();
+    }
+
+    private Vertex vertex(int nodeId)
+    {
+        Vertex vertex = vertices.get(nodeId);
+        if (vertex == null)
+        {
+            vertex = graph.addVertex(GraphDatabaseBase.NODE_ID, nodeId);
+            vertices.put(nodeId, vertex);
+        }
+        return vertex;
+    }
+
+    private void edge(int from, int to)
+    {
+        vertex(from).addEdge(GraphDatabaseBase.SIMILAR, vertex(to));
+    }
+
+    private static ShortestPathTraversal traversal(TinkerGraph graph, boolean reuse)
+    {
+        return new ShortestPathTraversal(graph, MAX_HOPS, reuse, NO_DISABLED_STRATEGIES, "test.");
+    }
+
+    /**
+     * @return the fewest edges of a path of at least one edge from one vertex to the other, or -1 if there is none
+     */
+    private static int bfsHops(Vertex from, Vertex target)
+    {
+        final Map<Vertex, Integer> hops = new HashMap<Vertex, Integer>();
+        final Queue<Vertex> queue = new ArrayDeque<Vertex>();
+        queue.add(from);
+        while (!queue.isEmpty())
+        {
+            final Vertex vertex = queue.remove();
+            final int next = vertex == from ? 1 : hops.get(vertex) + 1;
+            for (Iterator<Vertex> it = vertex.vertices(Direction.OUT, GraphDatabaseBase.SIMILAR); it.hasNext();)
+            {
+                final Vertex neighbour = it.next();
+                if (neighbour.equals(target))
+                {
+                    return next;
+                }
+                if (!hops.containsKey(neighbour))
+                {
+                    hops.put(neighbour, next);
+                    queue.add(neighbour);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of edges of the path, after checking that it follows edges from the vertex to the target
+     */
+    private static int hops(Path path, Vertex from, Integer target)
+    {
+        final List<Object> objects = path.objects();
+        assertEquals(from, objects.get(0));
+        assertEquals(target, ((Vertex) objects.get(objects.size() - 1)).value(GraphDatabaseBase.NODE_ID));
+        for (int i = 1; i < objects.size(); i++)
+        {
+            boolean linked = false;
+            for (Iterator<Vertex> it = ((Vertex) objects.get(i - 1)).vertices(Direction.OUT,
+                GraphDatabaseBase.SIMILAR); it.hasNext();)
+            {
+                linked |= it.next().equals(objects.get(i));
+            }
+            assertTrue("no edge between steps " + (i - 1) + " and " + i + " of " + path, linked);
+        }
+        return objects.size() - 1;
+    }
+
+    private void assertHops(int expected, ShortestPathTraversal traversal, int from, int target)
+    {
+        final Optional<Path> path = traversal.find(vertex(from), target);
+        if (expected < 0)
+        {
+            assertFalse(from + " -> " + target + " found " + path, path.isPresent());
+        }
+        else
+        {
+            assertTrue(from + " -> " + target + " found no path", path.isPresent());
+            assertEquals(from + " -> " + target, expected, hops(path.get(), vertex(from), target));
+        }
+    }
+
+    @Test
+    public void testReusedAndFreshTraversalsAgreeWithBreadthFirstSearch()
+    {
+        final Random random = new Random(7);
+        for (int i = 0; i < 80; i++)
+        {
+            edge(random.nextInt(40), random.nextInt(40));
+        }
+        // vertexes that nothing reaches and that reach nothing
+        vertex(40);
+        vertex(41);
+        final ShortestPathTraversal reused = traversal(graph, true);
+        final ShortestPathTraversal fresh = traversal(graph, false);
+        int found = 0;
+        int missed = 0;
+        // every query on this thread rebinds the same template
+        for (Vertex from : vertices.values())
+        {
+            for (Vertex target : vertices.values())
+            {
+                final int bfs = bfsHops(from, target);
+                final int expected = bfs <= MAX_HOPS ? bfs : -1;
+                final int fromId = from.value(GraphDatabaseBase.NODE_ID);
+                final int targetId = target.value(GraphDatabaseBase.NODE_ID);
+                assertHops(expected, reused, fromId, targetId);
+                assertHops(expected, fresh, fromId, targetId);
+                if (expected < 0)
+                {
+                    missed++;
+                }
+                else
+                {
+                    found++;
+                }
+            }
+        }
+        // the graph has both kinds of pairs
+        assertTrue(found > 0 && missed > 0);
+    }
+
+    @Test
+    public void testTargetsBeyondMaxHopsAreNotFound()
+    {
+        // a chain 0 -> 1 -> 2 -> 3 -> 4 -> 5
+        for (int i = 0; i < 5; i++)
+        {
+            edge(i, i + 1);
+        }
+        for (boolean reuse : new boolean[] { true, false })
+        {
+            final ShortestPathTraversal traversal = traversal(graph, reuse);
+            assertHops(3, traversal, 0, 3);
+            assertHops(-1, traversal, 0, 4);
+            assertHops(-1, traversal, 0, 5);
+            // a query after one that ran out of hops starts afresh
+            assertHops(2, traversal, 2, 4);
+            assertHops(3, traversal, 2, 5);
+            assertHops(-1, traversal, 5, 0);
+        }
+    }
+
+    @Test
+    public void testShortcutsWin()
+    {
+        // 0 -> 1 -> 2 -> 3 and 0 -> 3
+        edge(0, 1);
+        edge(1, 2);
+        edge(2, 3);
+        edge(0, 3);
+        for (boolean reuse : new boolean[] { true, false })
+        {
+            final ShortestPathTraversal traversal = traversal(graph, reuse);
+            assertHops(1, traversal, 0, 3);
+            assertHops(1, traversal, 0, 3);
+            assertHops(2, traversal, 0, 2);
+        }
+    }
+
+    @Test
+    public void testUnreachableTargets()
+    {
+        edge(0, 1);
+        edge(1, 2);
+        vertex(3);
+        for (boolean reuse : new boolean[] { true, false })
+        {
+            final ShortestPathTraversal traversal = traversal(graph, reuse);
+            assertHops(-1, traversal, 0, 3);
+            assertHops(-1, traversal, 3, 0);
+            // edges are followed outwards only
+            assertHops(-1, traversal, 2, 0);
+            // and a node id that no vertex has
+            assertHops(-1, traversal, 0, 99);
+            assertHops(2, traversal, 0, 2);
+        }
+    }
+
+    @Test
+    public void testSourceIsTarget()
+    {
+        // 0 -> 1 -> 0, and 2 -> 3 without a way back
+        edge(0, 1);
+        edge(1, 0);
+        edge(2, 3);
+        for (boolean reuse : new boolean[] { true, false })
+        {
+            final ShortestPathTraversal traversal = traversal(graph, reuse);
+            // the path has at least one edge, so the source is reached again through the cycle
+            assertHops(2, traversal, 0, 0);
+            assertHops(-1, traversal, 2, 2);
+            assertHops(1, traversal, 0, 1);
+        }
+    }
+
+    @Test
+    public void testThreadsHaveTheirOwnTemplates() throws InterruptedException
+    {
+        for (int i = 0; i < 5; i++)
+        {
+            edge(i, i + 1);
+        }
+        final ShortestPathTraversal traversal = traversal(graph, true);
+        assertHops(1, traversal, 0, 1);
+        final AssertionError[] failure = new AssertionError[1];
+        final Thread other = new Thread(() -> {
+            try
+            {
+                assertHops(3, traversal, 1, 4);
+                assertHops(-1, traversal, 1, 5);
+            }
+            catch (AssertionError e)
+            {
+                failure[0] = e;
+            }
+        });
+        other.start();
+        other.join();
+        if (failure[0] != null)
+        {
+            throw failure[0];
+        }
+        // the template of this thread still answers its own queries
+        assertHops(2, traversal, 0, 2);
+    }
+}
@@ -0,0 +1,127 @@
+package eu.socialsensor.graphdatabases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.google.common.primitives.UnsignedLongs;
+import com.thinkaurelius.titan.core.util.TitanId;
+import com.thinkaurelius.titan.graphdb.idmanagement.IDManager;
+import com.thinkaurelius.titan.graphdb.idmanagement.IDManager.VertexIDType;
+
+import eu.socialsensor.graphdatabases.TitanKeyRanges.KeyProbe;
+
+public class TitanKeyRangesTest
+{
+    private static final int SCAN_PARTITIONS = 4;
+    // the benchmark creates its graphs with cluster.max-partitions=2
+    private final IDManager idManager = new IDManager(1);
+
+    private static NavigableSet<Long> newKeys()
+    {
+        return new TreeSet<Long>((a, b) -> UnsignedLongs.compare(a, b));
+    }
+
+    private static KeyProbe probe(NavigableSet<Long> keys)
+    {
+        return (start, end) -> {
+            final Long key = keys.ceiling(start);
+            return key != null && (end == 0 || UnsignedLongs.compare(key, end) < 0);
+        };
+    }
+
+    /**
+     * @return how many keys each scan partition reads, checking that every key is read exactly once
+     */
+    private int[] scan(NavigableSet<Long> keys)
+    {
+        final int[] counts = new int[SCAN_PARTITIONS];
+        int total = 0;
+        for (int partition = 0; partition < SCAN_PARTITIONS; partition++)
+        {
+            for (long[] range : TitanKeyRanges.ranges(idManager.getPartitionBound(), probe(keys), partition,
+                SCAN_PARTITIONS))
+            {
+                counts[partition] += range[1] == 0 ? keys.tailSet(range[0], true).size()
+                    : keys.subSet(range[0], true, range[1], false).size();
+            }
+            total += counts[partition];
+        }
+        assertEquals(keys.size(), total);
+        return counts;
+    }
+
+    private static void assertFairShares(int[] counts, int keys)
+    {
+        for (int count : counts)
+        {
+            assertTrue("scan partition read " + count + " of " + keys + " keys",
+                count >= keys / SCAN_PARTITIONS - 2);
+        }
+    }
+
+    @Test
+    public void testCustomIdsInOneIdPartition()
+    {
+        // the ids TitanMassiveCustomIds assigns, which all land in id partition 1 at the top of the key space
+        final NavigableSet<Long> keys = newKeys();
+        for (long nodeId = 0; nodeId < 1000; nodeId++)
+        {
+            final long vertexId = TitanId.toVertexId(((nodeId + 1) << 1) + 1);
+            assertEquals(1, idManager.getPartitionId(vertexId));
+            keys.add(idManager.getKey(vertexId).getLong(0));
+        }
+        assertFairShares(scan(keys), keys.size());
+    }
+
+    @Test
+    public void testAllocatedIdsInBothIdPartitions()
+    {
+        final NavigableSet<Long> keys = newKeys();
+        for (long count = 1; count <= 300; count++)
+        {
+            keys.add(idManager.getKey(idManager.getVertexID(count, 0, VertexIDType.NormalVertex)).getLong(0));
+        }
+        for (long count = 1; count <= 700; count++)
+        {
+            keys.add(idManager.getKey(idManager.getVertexID(count, 1, VertexIDType.NormalVertex)).getLong(0));
+        }
+        assertFairShares(scan(keys), keys.size());
+    }
+
+    @Test
+    public void testFewerKeysThanScanPartitions()
+    {
+        final NavigableSet<Long> keys = newKeys();
+        keys.add(idManager.getKey(idManager.getVertexID(5, 1, VertexIDType.NormalVertex)).getLong(0));
+        final int[] counts = scan(keys);
+        assertEquals(1, counts[0] + counts[1] + counts[2] + counts[3]);
+    }
+
+    @Test
+    public void testEmptyStore()
+    {
+        assertEquals(0, TitanKeyRanges.ranges(idManager.getPartitionBound(), probe(newKeys()), 0, SCAN_PARTITIONS)
+            .size());
+    }
+
+    @Test
+    public void testHashPartitionsShareConsecutiveKeys()
+    {
+        final int[] counts = new int[SCAN_PARTITIONS];
+        for (long count = 1; count <= 1000; count++)
+        {
+            final long key = idManager.getKey(idManager.getVertexID(count, 1, VertexIDType.NormalVertex)).getLong(0);
+            counts[TitanKeyRanges.hashPartition(key, SCAN_PARTITIONS)]++;
+        }
+        for (int count : counts)
+        {
+            // a quarter would be 250
+            assertTrue("hash partition got " + count + " of 1000 keys", count >= 200);
+        }
+    }
+}
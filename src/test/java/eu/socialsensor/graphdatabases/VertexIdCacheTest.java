@@ -0,0 +1,45 @@
+package eu.socialsensor.graphdatabases;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class VertexIdCacheTest
+{
+    @Test
+    public void testHitsAndMisses()
+    {
+        final VertexIdCache cache = new VertexIdCache();
+        assertEquals(-1, cache.get(7));
+        cache.put(7, 0);
+        cache.put(8, 1L << 40);
+        assertEquals(0, cache.get(7));
+        assertEquals(1L << 40, cache.get(8));
+        assertEquals(-1, cache.get(9));
+        cache.put(7, 42);
+        assertEquals(42, cache.get(7));
+    }
+
+    @Test
+    public void testGrowsForLargerNodeIds()
+    {
+        final VertexIdCache cache = new VertexIdCache();
+        cache.put(3, 30);
+        cache.put(1 << 20, 10);
+        assertEquals(10, cache.get(1 << 20));
+        assertEquals(30, cache.get(3));
+        assertEquals(-1, cache.get((1 << 20) - 1));
+        assertEquals(-1, cache.get((1 << 20) + 1));
+    }
+
+    @Test
+    public void testNodeIdsOutOfRangeAreNotCached()
+    {
+        final VertexIdCache cache = new VertexIdCache();
+        cache.put(-1, 5);
+        cache.put(Integer.MAX_VALUE, 5);
+        assertEquals(-1, cache.get(-1));
+        assertEquals(-1, cache.get(Integer.MAX_VALUE));
+        assertEquals(-1, cache.get(Integer.MIN_VALUE));
+    }
+}
@@ -0,0 +1,136 @@
+package eu.socialsensor.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import eu.socialsensor.utils.SampleStatistics.Interval;
+
+public class SampleStatisticsTest
+{
+    private static final double DELTA = 1e-9;
+    private static final double[] SAMPLES = { 12, 10, 11, 13, 10, 12, 11, 14, 10, 11 };
+
+    @Test
+    public void testMedianAndQuantiles()
+    {
+        assertEquals(11, SampleStatistics.median(SAMPLES), DELTA);
+        assertEquals(2.5, SampleStatistics.median(new double[] { 4, 1, 3, 2 }), DELTA);
+        final double[] sorted = { 0, 10, 20, 30, 40 };
+        assertEquals(0, SampleStatistics.quantile(sorted, 0), DELTA);
+        assertEquals(10, SampleStatistics.quantile(sorted, 0.25), DELTA);
+        assertEquals(36, SampleStatistics.quantile(sorted, 0.9), DELTA);
+        assertEquals(40, SampleStatistics.quantile(sorted, 1), DELTA);
+        assertEquals(7, SampleStatistics.quantile(new double[] { 7 }, 0.5), DELTA);
+    }
+
+    @Test
+    public void testStatistics()
+    {
+        final double[] sorted = { 0, 10, 20, 30, 40 };
+        assertEquals(20, SampleStatistics.MEDIAN.applyAsDouble(sorted), DELTA);
+        assertEquals(20, SampleStatistics.MEAN.applyAsDouble(sorted), DELTA);
+        assertEquals(0, SampleStatistics.percentile(0).applyAsDouble(sorted), DELTA);
+        assertEquals(36, SampleStatistics.percentile(90).applyAsDouble(sorted), DELTA);
+        assertEquals(40, SampleStatistics.percentile(100).applyAsDouble(sorted), DELTA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPercentileOutOfRange()
+    {
+        SampleStatistics.percentile(101);
+    }
+
+    @Test
+    public void testRelativeDifference()
+    {
+        assertEquals(0.5, SampleStatistics.relativeDifference(10, 15), DELTA);
+        assertEquals(0, SampleStatistics.relativeDifference(0, 0), DELTA);
+        assertEquals(Double.POSITIVE_INFINITY, SampleStatistics.relativeDifference(0, 1), DELTA);
+        assertEquals(Double.NEGATIVE_INFINITY, SampleStatistics.relativeDifference(0, -1), DELTA);
+    }
+
+    @Test
+    public void testCountOutliers()
+    {
+        assertEquals(0, SampleStatistics.countOutliers(SAMPLES, 1.5));
+        assertEquals(1, SampleStatistics.countOutliers(new double[] { 10, 11, 12, 11, 10, 100 }, 1.5));
+        // quartiles 11.25 and 12.75, so the fences are at 9 and 15 and both ends are outside
+        assertEquals(2, SampleStatistics.countOutliers(new double[] { 5, 11, 12, 12, 13, 20 }, 1.5));
+        // wider fences keep them
+        assertEquals(0, SampleStatistics.countOutliers(new double[] { 5, 11, 12, 12, 13, 20 }, 5));
+        // too few samples for quartiles
+        assertEquals(0, SampleStatistics.countOutliers(new double[] { 1, 2, 100 }, 1.5));
+    }
+
+    @Test
+    public void testBootstrapMedianBoundsTheEstimate()
+    {
+        final Interval median = SampleStatistics.bootstrapMedian(SAMPLES, 2000, 0.95, new Random(1));
+        assertEquals(11, median.getEstimate(), DELTA);
+        assertTrue(median.getLower() <= median.getEstimate() && median.getEstimate() <= median.getUpper());
+        assertTrue(median.getLower() >= 10 && median.getUpper() <= 14);
+    }
+
+    @Test
+    public void testBootstrapIsReproducibleWithTheSameSeed()
+    {
+        final Interval first = SampleStatistics.bootstrapMedian(SAMPLES, 500, 0.9, new Random(42));
+        final Interval second = SampleStatistics.bootstrapMedian(SAMPLES, 500, 0.9, new Random(42));
+        assertEquals(first.getLower(), second.getLower(), 0);
+        assertEquals(first.getUpper(), second.getUpper(), 0);
+    }
+
+    @Test
+    public void testBootstrapOfConstantSamplesIsExact()
+    {
+        final Interval median = SampleStatistics.bootstrapMedian(new double[] { 5, 5, 5, 5 }, 100, 0.95,
+            new Random(1));
+        assertEquals(5, median.getLower(), DELTA);
+        assertEquals(5, median.getUpper(), DELTA);
+        assertEquals(0, median.relativeWidth(), DELTA);
+    }
+
+    @Test
+    public void testBootstrapRelativeDifferenceOfMedians()
+    {
+        final double[] slower = new double[SAMPLES.length];
+        for (int i = 0; i < slower.length; i++)
+        {
+            slower[i] = 2 * SAMPLES[i];
+        }
+        final Interval same = SampleStatistics.bootstrapRelativeDifference(SAMPLES, SAMPLES.clone(), 2000, 0.95,
+            new Random(1));
+        assertEquals(0, same.getEstimate(), DELTA);
+        assertTrue(same.contains(0));
+        final Interval doubled = SampleStatistics.bootstrapRelativeDifference(SAMPLES, slower, 2000, 0.95,
+            new Random(1));
+        assertEquals(1, doubled.getEstimate(), DELTA);
+        assertFalse(doubled.contains(0));
+    }
+
+    @Test
+    public void testBootstrapRelativeDifferenceOfPercentiles()
+    {
+        final double[] slower = new double[SAMPLES.length];
+        for (int i = 0; i < slower.length; i++)
+        {
+            slower[i] = 2 * SAMPLES[i];
+        }
+        final Interval doubled = SampleStatistics.bootstrapRelativeDifference(SAMPLES, slower,
+            SampleStatistics.percentile(90), 2000, 0.95, new Random(1));
+        assertEquals(1, doubled.getEstimate(), DELTA);
+        assertFalse(doubled.contains(0));
+        assertTrue(doubled.getLower() > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBootstrapNeedsSamples()
+    {
+        SampleStatistics.bootstrapMedian(new double[0], 100, 0.95, new Random(1));
+    }
+}